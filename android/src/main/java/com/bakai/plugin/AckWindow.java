@@ -0,0 +1,94 @@
+package com.bakai.plugin;
+
+/**
+ * Flow control for results pushed to JS: at most {@code size} events may be unacknowledged at
+ * once. While the window is full, new results are not delivered; only the latest one is held and
+ * goes out as soon as an ack opens the window again, so JS never works through a backlog of
+ * stale reads. Acks are cumulative: acknowledging an event id acknowledges every earlier one.
+ *
+ * A size of 0 disables flow control; every result is delivered under event id 0 and nothing is
+ * counted as unacknowledged.
+ */
+final class AckWindow<T> {
+
+    /** A result to deliver now under {@link #eventId}. */
+    static final class Emission<T> {
+
+        final T result;
+        final long eventId;
+
+        Emission(T result, long eventId) {
+            this.result = result;
+            this.eventId = eventId;
+        }
+    }
+
+    // guarded by "this"
+    private int size = 0;
+    private long lastIssued = 0L;
+    private long lastAcked = 0L;
+    private T held;
+    private long coalesced = 0L;
+    private long skippedFrames = 0L;
+
+    /** Turning the window off also forgets outstanding events and the held result. */
+    synchronized void setSize(int size) {
+        this.size = Math.max(0, size);
+        if (this.size == 0) {
+            lastAcked = lastIssued;
+            held = null;
+        }
+    }
+
+    /** True while the window is full and new results would be held instead of delivered. */
+    synchronized boolean isBlocked() {
+        return size > 0 && lastIssued - lastAcked >= size;
+    }
+
+    /** Returns the emission for {@code result}, or null when it was held until the next ack. */
+    synchronized Emission<T> offer(T result) {
+        if (size == 0) return new Emission<>(result, 0L);
+        if (isBlocked()) {
+            if (held != null) coalesced++;
+            held = result;
+            return null;
+        }
+        return new Emission<>(result, ++lastIssued);
+    }
+
+    /**
+     * Acknowledges every event up to {@code eventId}, or all of them when it is not positive, and
+     * returns the held result if the window opened for it.
+     */
+    synchronized Emission<T> ack(long eventId) {
+        long upTo = eventId > 0L ? Math.min(eventId, lastIssued) : lastIssued;
+        if (upTo > lastAcked) lastAcked = upTo;
+        if (held == null || isBlocked()) return null;
+
+        T result = held;
+        held = null;
+        return new Emission<>(result, ++lastIssued);
+    }
+
+    synchronized void countSkippedFrame() {
+        skippedFrames++;
+    }
+
+    synchronized int unacknowledged() {
+        return (int) (lastIssued - lastAcked);
+    }
+
+    synchronized long coalesced() {
+        return coalesced;
+    }
+
+    synchronized long skippedFrames() {
+        return skippedFrames;
+    }
+
+    /** Forgets outstanding events and the held result, e.g. when a new scan starts. */
+    synchronized void reset() {
+        lastAcked = lastIssued;
+        held = null;
+    }
+}
@@ -0,0 +1,72 @@
+package com.bakai.plugin;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide executor for camera frame analysis, shared by every {@link QrCodeScanner}.
+ *
+ * The pool is never shut down, so there is exactly one thread-creation path and every thread gets the same
+ * {@code THREAD_PRIORITY_MORE_FAVORABLE} priority. Threads that sit idle for {@link #KEEP_ALIVE_SECONDS}
+ * exit on their own, so open/close cycles in quick succession reuse warm threads while a closed
+ * scanner costs nothing after a while.
+ */
+final class AnalysisExecutor implements Executor {
+
+    static final int DEFAULT_THREADS = 1;
+    static final int MAX_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static AnalysisExecutor shared;
+
+    private final ThreadPoolExecutor pool;
+
+    private AnalysisExecutor(int threads) {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+            Thread t = new Thread(
+                () -> {
+                    try {
+                        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_MORE_FAVORABLE);
+                    } catch (Exception ignored) {}
+                    r.run();
+                },
+                "QrCodeScannerAnalysis-" + threadIndex.incrementAndGet()
+            );
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Returns the shared executor, growing or shrinking it to {@code threads} (1..{@link #MAX_THREADS}). */
+    static synchronized AnalysisExecutor shared(int threads) {
+        int size = Math.max(1, Math.min(MAX_THREADS, threads));
+        if (shared == null) {
+            shared = new AnalysisExecutor(size);
+        } else {
+            shared.resize(size);
+        }
+        return shared;
+    }
+
+    @Override
+    public void execute(Runnable work) {
+        pool.execute(work);
+    }
+
+    private void resize(int size) {
+        if (size == pool.getMaximumPoolSize()) return;
+        // order matters: core may never exceed max
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+}
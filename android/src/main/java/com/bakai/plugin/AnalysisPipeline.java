@@ -0,0 +1,115 @@
+package com.bakai.plugin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission and ordering for camera frames handed to the detector, lock-free so the analyzer
+ * thread never blocks on the threads delivering results.
+ *
+ * Up to {@code depth} frames may be in flight at once. Each admitted frame gets a sequence
+ * number; a result is delivered only if no newer frame has delivered already, so a slow old frame
+ * can never overwrite a newer answer. Pausing or stopping makes every frame in flight stale.
+ */
+final class AnalysisPipeline {
+
+    static final int MIN_DEPTH = 1;
+    static final int MAX_DEPTH = 3;
+
+    static final int RUNNING = 0;
+    static final int PAUSED = 1;
+    static final int STOPPED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong lastIssued = new AtomicLong(0L);
+    // highest sequence that delivered, or the watermark set by pause/stop
+    private final AtomicLong lastDelivered = new AtomicLong(0L);
+    private final AtomicLong discarded = new AtomicLong(0L);
+    private volatile int depth;
+
+    AnalysisPipeline(int depth) {
+        setDepth(depth);
+    }
+
+    void setDepth(int depth) {
+        this.depth = Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, depth));
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    /** Admits a frame and returns its sequence number, or -1 when not running or already {@code depth} frames are in flight. */
+    long tryBegin() {
+        if (state.get() != RUNNING) return -1L;
+        while (true) {
+            int n = inFlight.get();
+            if (n >= depth) return -1L;
+            if (inFlight.compareAndSet(n, n + 1)) break;
+        }
+        return lastIssued.incrementAndGet();
+    }
+
+    /** Must be called exactly once for every admitted frame, whatever its outcome. */
+    void finish(long seq) {
+        if (seq > 0L) inFlight.decrementAndGet();
+    }
+
+    /** True while a result of {@code seq} would still be delivered; lets multi-step decodes give up early. */
+    boolean isCurrent(long seq) {
+        return state.get() == RUNNING && seq > lastDelivered.get();
+    }
+
+    /** Claims the right to deliver the result of {@code seq}; false (and counted as discarded) when it is stale. */
+    boolean deliver(long seq) {
+        if (state.get() == RUNNING) {
+            while (true) {
+                long last = lastDelivered.get();
+                if (seq <= last) break;
+                if (lastDelivered.compareAndSet(last, seq)) return true;
+            }
+        }
+        discarded.incrementAndGet();
+        return false;
+    }
+
+    boolean pause() {
+        if (!state.compareAndSet(RUNNING, PAUSED)) return false;
+        invalidateInFlight();
+        return true;
+    }
+
+    boolean resume() {
+        return state.compareAndSet(PAUSED, RUNNING);
+    }
+
+    void stop() {
+        state.set(STOPPED);
+        invalidateInFlight();
+    }
+
+    boolean isRunning() {
+        return state.get() == RUNNING;
+    }
+
+    boolean isStopped() {
+        return state.get() == STOPPED;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    long discarded() {
+        return discarded.get();
+    }
+
+    private void invalidateInFlight() {
+        long issued = lastIssued.get();
+        while (true) {
+            long last = lastDelivered.get();
+            if (last >= issued || lastDelivered.compareAndSet(last, issued)) return;
+        }
+    }
+}
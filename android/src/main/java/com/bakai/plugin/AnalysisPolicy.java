@@ -0,0 +1,126 @@
+package com.bakai.plugin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-frame decisions of the live scanner that do not depend on the camera: the analyze
+ * interval, the cooldown after a successful decode, and when to step the zoom in after a run of
+ * misses.
+ *
+ * The clock is injected, so {@link FrameReplay} can drive it with recorded timestamps.
+ */
+final class AnalysisPolicy {
+
+    static final long ANALYZE_INTERVAL_MS = 70L;
+    static final long SUCCESS_COOLDOWN_MS = 350L;
+    // while JS has not acknowledged earlier results (see AckWindow) and slowing down was asked for
+    static final long BLOCKED_INTERVAL_MS = 500L;
+    // with idling on (see SceneChangeDetector), a scene unchanged for IDLE_AFTER_MS is analyzed at the idle rate
+    static final long IDLE_AFTER_MS = 1500L;
+    static final long IDLE_INTERVAL_MS = 1000L;
+
+    static final int AUTO_ZOOM_MISS_THRESHOLD = 8;
+    static final long AUTO_ZOOM_INTERVAL_MS = 500L;
+    static final float AUTO_ZOOM_STEP = 0.18f;
+    static final float AUTO_ZOOM_SOFT_MAX = 3.0f;
+
+    /** Returned by {@link #onMiss} when the zoom should stay as it is. */
+    static final float NO_ZOOM_CHANGE = -1f;
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final ScanTimeline.Clock clock;
+
+    private volatile long lastAnalyzeAtMs = UNSET;
+    private volatile long cooldownUntilMs = UNSET;
+    // frames from the shared analysis pool may finish concurrently (analysisThreads > 1)
+    private final AtomicInteger consecutiveMisses = new AtomicInteger(0);
+    private volatile long lastAutoZoomAtMs = UNSET;
+    private volatile long lastSceneChangeAtMs = UNSET;
+
+    AnalysisPolicy(ScanTimeline.Clock clock) {
+        this.clock = clock;
+    }
+
+    /** Whether a frame arriving now should be analyzed; with {@code depth} frames overlapping the interval shrinks accordingly. */
+    boolean isDue(int depth) {
+        // with frames overlapping, the same interval per frame would cap throughput at depth 1
+        return isDueAfter(ANALYZE_INTERVAL_MS / Math.max(1, depth));
+    }
+
+    /** Like {@link #isDue} at the slow {@link #BLOCKED_INTERVAL_MS} rate, whatever the depth. */
+    boolean isDueWhileBlocked() {
+        return isDueAfter(BLOCKED_INTERVAL_MS);
+    }
+
+    /** Like {@link #isDue} at the {@link #IDLE_INTERVAL_MS} rate, for a scene that stopped changing. */
+    boolean isDueWhileIdle() {
+        return isDueAfter(IDLE_INTERVAL_MS);
+    }
+
+    void onSceneChanged() {
+        lastSceneChangeAtMs = nowMs();
+    }
+
+    /** True once no scene change has been reported for {@link #IDLE_AFTER_MS}; false before the first report. */
+    boolean isIdle() {
+        return lastSceneChangeAtMs != UNSET && (nowMs() - lastSceneChangeAtMs) >= IDLE_AFTER_MS;
+    }
+
+    private boolean isDueAfter(long interval) {
+        final long now = nowMs();
+        if (cooldownUntilMs != UNSET && now < cooldownUntilMs) return false;
+        return lastAnalyzeAtMs == UNSET || interval <= 0 || (now - lastAnalyzeAtMs) >= interval;
+    }
+
+    void markAnalyzed() {
+        lastAnalyzeAtMs = nowMs();
+    }
+
+    void onDecoded() {
+        consecutiveMisses.set(0);
+        cooldownUntilMs = nowMs() + SUCCESS_COOLDOWN_MS;
+    }
+
+    /**
+     * Records a frame without a result and returns the zoom ratio to step to, or
+     * {@link #NO_ZOOM_CHANGE}. {@code zoomLocked} means the app set a ratio, which always wins,
+     * or the camera's zoom state is not known yet.
+     */
+    float onMiss(float currentZoom, float maxZoom, boolean zoomLocked) {
+        final int misses = consecutiveMisses.incrementAndGet();
+        if (zoomLocked || misses < AUTO_ZOOM_MISS_THRESHOLD) return NO_ZOOM_CHANGE;
+
+        float maxAllowed = Math.min(maxZoom, AUTO_ZOOM_SOFT_MAX);
+        if (currentZoom >= (maxAllowed - 0.01f)) return NO_ZOOM_CHANGE;
+
+        // one zoom step per interval, however many misses land at once
+        synchronized (this) {
+            final long now = nowMs();
+            if (lastAutoZoomAtMs != UNSET && (now - lastAutoZoomAtMs) < AUTO_ZOOM_INTERVAL_MS) return NO_ZOOM_CHANGE;
+            lastAutoZoomAtMs = now;
+        }
+        return Math.min(maxAllowed, currentZoom + AUTO_ZOOM_STEP);
+    }
+
+    int consecutiveMisses() {
+        return consecutiveMisses.get();
+    }
+
+    /** Forgets the miss streak, e.g. on pause, so auto-zoom starts over. */
+    void resetMisses() {
+        consecutiveMisses.set(0);
+        lastAutoZoomAtMs = UNSET;
+    }
+
+    void reset() {
+        resetMisses();
+        lastAnalyzeAtMs = UNSET;
+        cooldownUntilMs = UNSET;
+        lastSceneChangeAtMs = UNSET;
+    }
+
+    private long nowMs() {
+        return clock.nanoTime() / 1_000_000L;
+    }
+}
@@ -11,10 +11,22 @@ public final class BarcodeMapper {
     private BarcodeMapper() {}
 
     public static JSObject toJS(List<Barcode> barcodes) {
+        return toJS(barcodes, null, ResultFields.ALL);
+    }
+
+    /** Same as {@link #toJS(List)}, with corner points replaced (e.g. mapped from tile to image space). */
+    public static JSObject toJS(List<Barcode> barcodes, List<Point[]> cornerPoints) {
+        return toJS(barcodes, cornerPoints, ResultFields.ALL);
+    }
+
+    /** Only the {@code fields} asked for are read from the barcode and serialized. */
+    static JSObject toJS(List<Barcode> barcodes, List<Point[]> cornerPoints, ResultFields fields) {
         JSArray array = new JSArray();
         if (barcodes != null) {
-            for (Barcode barcode : barcodes) {
-                if (barcode != null) array.put(toJS(barcode));
+            for (int i = 0; i < barcodes.size(); i++) {
+                Barcode barcode = barcodes.get(i);
+                if (barcode == null) continue;
+                array.put(toJS(new Source(barcode, cornerPoints, i), fields));
             }
         }
 
@@ -24,25 +36,65 @@ public final class BarcodeMapper {
     }
 
     public static JSObject toJS(Barcode b) {
-        JSObject o = new JSObject();
-        if (b == null) return o;
+        if (b == null) return new JSObject();
+        return toJS(new Source(b, null, 0), ResultFields.ALL);
+    }
+
+    private static JSObject toJS(Source source, ResultFields fields) {
+        final JSObject o = new JSObject();
+        fields.write(source, (key, value) -> o.put(key, value));
+        return o;
+    }
+
+    /** Reads an ML Kit barcode for {@link ResultFields#write}, building JS values only when asked. */
+    private static final class Source implements ResultFields.Source {
+
+        private final Barcode b;
+        // replacement corner points by barcode index, e.g. mapped from tile to image space
+        private final List<Point[]> cornerPoints;
+        private final int index;
+
+        Source(Barcode b, List<Point[]> cornerPoints, int index) {
+            this.b = b;
+            this.cornerPoints = cornerPoints;
+            this.index = index;
+        }
+
+        @Override
+        public String displayValue() {
+            return safe(b.getDisplayValue());
+        }
+
+        @Override
+        public String rawValue() {
+            return safe(b.getRawValue());
+        }
 
-        o.put("displayValue", safe(b.getDisplayValue()));
-        o.put("rawValue", safe(b.getRawValue()));
-        o.put("format", mapFormat(b.getFormat()));
-        o.put("valueType", mapValueType(b.getValueType()));
+        @Override
+        public String format() {
+            return mapFormat(b.getFormat());
+        }
+
+        @Override
+        public String valueType() {
+            return mapValueType(b.getValueType());
+        }
 
-        byte[] rawBytes = b.getRawBytes();
-        if (rawBytes != null && rawBytes.length > 0) {
+        @Override
+        public Object bytes() {
+            byte[] rawBytes = b.getRawBytes();
+            if (rawBytes == null || rawBytes.length == 0) return null;
             JSArray bytes = new JSArray();
             for (byte byt : rawBytes) {
                 bytes.put(((int) byt) & 0xff);
             }
-            o.put("bytes", bytes);
+            return bytes;
         }
 
-        Point[] points = b.getCornerPoints();
-        if (points != null && points.length == 4) {
+        @Override
+        public Object cornerPoints() {
+            Point[] points = cornerPoints != null && index < cornerPoints.size() ? cornerPoints.get(index) : b.getCornerPoints();
+            if (points == null || points.length != 4) return null;
             JSArray corners = new JSArray();
             for (Point p : points) {
                 if (p == null) continue;
@@ -51,69 +103,78 @@ public final class BarcodeMapper {
                 point.put(p.y);
                 corners.put(point);
             }
-            o.put("cornerPoints", corners);
+            return corners;
         }
 
-        switch (b.getValueType()) {
-            case Barcode.TYPE_URL:
-                if (b.getUrl() != null) {
+        @Override
+        public int detailField() {
+            switch (b.getValueType()) {
+                case Barcode.TYPE_URL:
+                    return ResultFields.URL_BOOKMARK;
+                case Barcode.TYPE_WIFI:
+                    return ResultFields.WIFI;
+                case Barcode.TYPE_EMAIL:
+                    return ResultFields.EMAIL;
+                case Barcode.TYPE_PHONE:
+                    return ResultFields.PHONE;
+                case Barcode.TYPE_GEO:
+                    return ResultFields.GEO_POINT;
+                case Barcode.TYPE_SMS:
+                    return ResultFields.SMS;
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        public Object detail() {
+            switch (b.getValueType()) {
+                case Barcode.TYPE_URL:
+                    if (b.getUrl() == null) return null;
                     JSObject url = new JSObject();
                     url.put("url", safe(b.getUrl().getUrl()));
                     url.put("title", safe(b.getUrl().getTitle()));
-                    o.put("urlBookmark", url);
-                }
-                break;
-            case Barcode.TYPE_WIFI:
-                if (b.getWifi() != null) {
+                    return url;
+                case Barcode.TYPE_WIFI:
+                    if (b.getWifi() == null) return null;
                     JSObject wifi = new JSObject();
                     wifi.put("ssid", safe(b.getWifi().getSsid()));
                     wifi.put("password", safe(b.getWifi().getPassword()));
                     wifi.put("encryptionType", mapWifiEncryption(b.getWifi().getEncryptionType()));
-                    o.put("wifi", wifi);
-                }
-                break;
-            case Barcode.TYPE_EMAIL:
-                if (b.getEmail() != null) {
+                    return wifi;
+                case Barcode.TYPE_EMAIL:
+                    if (b.getEmail() == null) return null;
                     JSObject email = new JSObject();
                     email.put("address", safe(b.getEmail().getAddress()));
                     email.put("subject", safe(b.getEmail().getSubject()));
                     email.put("body", safe(b.getEmail().getBody()));
                     email.put("type", mapEmailType(b.getEmail().getType()));
-                    o.put("email", email);
-                }
-                break;
-            case Barcode.TYPE_PHONE:
-                if (b.getPhone() != null) {
+                    return email;
+                case Barcode.TYPE_PHONE:
+                    if (b.getPhone() == null) return null;
                     JSObject phone = new JSObject();
                     phone.put("number", safe(b.getPhone().getNumber()));
                     phone.put("type", mapPhoneType(b.getPhone().getType()));
-                    o.put("phone", phone);
-                }
-                break;
-            case Barcode.TYPE_GEO:
-                if (b.getGeoPoint() != null) {
+                    return phone;
+                case Barcode.TYPE_GEO:
+                    if (b.getGeoPoint() == null) return null;
                     JSObject geo = new JSObject();
                     geo.put("latitude", b.getGeoPoint().getLat());
                     geo.put("longitude", b.getGeoPoint().getLng());
-                    o.put("geoPoint", geo);
-                }
-                break;
-            case Barcode.TYPE_SMS:
-                if (b.getSms() != null) {
+                    return geo;
+                case Barcode.TYPE_SMS:
+                    if (b.getSms() == null) return null;
                     JSObject sms = new JSObject();
                     sms.put("phoneNumber", safe(b.getSms().getPhoneNumber()));
                     sms.put("message", safe(b.getSms().getMessage()));
-                    o.put("sms", sms);
-                }
-                break;
-            default:
-                break;
+                    return sms;
+                default:
+                    return null;
+            }
         }
-
-        return o;
     }
 
-    private static String mapFormat(int f) {
+    static String mapFormat(int f) {
         switch (f) {
             case Barcode.FORMAT_QR_CODE:
                 return "QR_CODE";
@@ -0,0 +1,124 @@
+package com.bakai.plugin;
+
+import android.graphics.Bitmap;
+
+/**
+ * Shared pool of mutable ARGB bitmaps and pixel buffers for the still-image pipeline.
+ *
+ * Preprocessing draws into pooled bitmaps (as {@code inBitmap} or {@code Canvas} targets) instead of
+ * allocating a fresh full-size bitmap per step, and hands them back when the call is done, so
+ * repeated imports stop churning the large-object heap. Bitmaps that are too small to be worth
+ * keeping, immutable or recycled are simply recycled.
+ */
+final class BitmapPool {
+
+    private static final int KIND_BITMAP = 0;
+    private static final int KIND_INTS = 1;
+    private static final int KIND_BYTES = 2;
+    private static final long MIN_POOLED_BYTES = 64L * 1024L;
+
+    private final SizeBucketPool pool;
+
+    BitmapPool(long budgetBytes) {
+        pool = new SizeBucketPool(budgetBytes, (kind, value) -> {
+            if (kind == KIND_BITMAP) {
+                try {
+                    ((Bitmap) value).recycle();
+                } catch (Exception ignored) {}
+            }
+        });
+    }
+
+    /** Default budget: an eighth of the heap, at most 64 MB. */
+    static long defaultBudget() {
+        return Math.min(Runtime.getRuntime().maxMemory() / 8L, 64L * 1024L * 1024L);
+    }
+
+    /** A mutable ARGB_8888 bitmap of exactly {@code width}x{@code height}; contents are undefined. */
+    Bitmap acquire(int width, int height) {
+        long needed = (long) width * height * 4L;
+        Object pooled = pool.take(KIND_BITMAP, needed);
+        if (pooled != null) {
+            Bitmap bitmap = (Bitmap) pooled;
+            try {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                return bitmap;
+            } catch (Exception e) {
+                bitmap.recycle();
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /** Resizes {@code current} in place when its allocation allows it, otherwise swaps it for a pooled one. */
+    Bitmap resize(Bitmap current, int width, int height) {
+        if (current != null && !current.isRecycled()) {
+            if (current.getWidth() == width && current.getHeight() == height) return current;
+            if ((long) width * height * 4L <= current.getAllocationByteCount() && current.isMutable()) {
+                try {
+                    current.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                    return current;
+                } catch (Exception ignored) {}
+            }
+        }
+        release(current);
+        return acquire(width, height);
+    }
+
+    void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        long bytes = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bytes < MIN_POOLED_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        pool.give(KIND_BITMAP, bitmap, bytes);
+    }
+
+    /** An int buffer of at least {@code length} elements; contents are undefined. */
+    int[] acquireInts(int length) {
+        Object pooled = pool.take(KIND_INTS, length * 4L);
+        if (pooled != null) return (int[]) pooled;
+        // round up to the bucket so the array is reusable for everything in it
+        return new int[(int) (SizeBucketPool.bucketCapacity(SizeBucketPool.bucketFor(length * 4L)) / 4L)];
+    }
+
+    void releaseInts(int[] buffer) {
+        if (buffer != null && buffer.length * 4L >= MIN_POOLED_BYTES) pool.give(KIND_INTS, buffer, buffer.length * 4L);
+    }
+
+    /** A byte buffer of at least {@code length} elements; contents are undefined. */
+    byte[] acquireBytes(int length) {
+        Object pooled = pool.take(KIND_BYTES, length);
+        if (pooled != null) return (byte[]) pooled;
+        return new byte[(int) SizeBucketPool.bucketCapacity(SizeBucketPool.bucketFor(length))];
+    }
+
+    void releaseBytes(byte[] buffer) {
+        if (buffer != null && buffer.length >= MIN_POOLED_BYTES) pool.give(KIND_BYTES, buffer, buffer.length);
+    }
+
+    void clear() {
+        pool.clear();
+    }
+
+    long getHits() {
+        return pool.getHits();
+    }
+
+    long getMisses() {
+        return pool.getMisses();
+    }
+
+    long getEvictions() {
+        return pool.getEvictions();
+    }
+
+    long getPooledBytes() {
+        return pool.getIdleBytes();
+    }
+
+    long getBudgetBytes() {
+        return pool.getBudgetBytes();
+    }
+}
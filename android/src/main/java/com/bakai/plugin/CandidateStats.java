@@ -0,0 +1,126 @@
+package com.bakai.plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Per-variant hit counts and detector latency for the still-image candidate ladder.
+ *
+ * Candidates are tried one after another until one decodes, so the expected time to a result is
+ * smallest when variants are sorted by success probability per millisecond. Probabilities use a
+ * Laplace prior, which keeps the default order on a cold start and lets rarely tried variants move
+ * up. Variants that keep failing are pruned, but still get retried now and then so the table can
+ * notice when a fleet's images change.
+ */
+final class CandidateStats {
+
+    private static final int PRUNE_MIN_ATTEMPTS = 30;
+    private static final double PRUNE_MAX_HIT_RATE = 0.02;
+    private static final double EXPLORE_PROBABILITY = 0.1;
+    private static final long DEFAULT_LATENCY_MS = 150L;
+    // halve the counters past this point so old behaviour fades out
+    private static final long DECAY_ATTEMPTS = 500L;
+
+    private static final class Entry {
+
+        long attempts;
+        long hits;
+        long totalMs;
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    synchronized void record(String variant, boolean hit, long elapsedMs) {
+        Entry e = entries.get(variant);
+        if (e == null) {
+            e = new Entry();
+            entries.put(variant, e);
+        }
+
+        e.attempts++;
+        if (hit) e.hits++;
+        e.totalMs += Math.max(0L, elapsedMs);
+
+        if (e.attempts > DECAY_ATTEMPTS) {
+            e.attempts /= 2;
+            e.hits /= 2;
+            e.totalMs /= 2;
+        }
+    }
+
+    /** Returns {@code variants} in the order they should be tried, without pruned variants. */
+    synchronized List<String> order(List<String> variants, Random random) {
+        List<String> ranked = new ArrayList<>(variants);
+        final Map<String, Double> scores = new LinkedHashMap<>();
+        List<String> pruned = new ArrayList<>();
+
+        for (String variant : variants) {
+            Entry e = entries.get(variant);
+            long attempts = e != null ? e.attempts : 0L;
+            long hits = e != null ? e.hits : 0L;
+            double latency = attempts > 0 ? Math.max(1.0, e.totalMs / (double) attempts) : DEFAULT_LATENCY_MS;
+            double p = (hits + 1.0) / (attempts + 2.0);
+
+            if (attempts >= PRUNE_MIN_ATTEMPTS && hits / (double) attempts < PRUNE_MAX_HIT_RATE) {
+                if (random == null || random.nextDouble() >= EXPLORE_PROBABILITY) pruned.add(variant);
+            }
+            scores.put(variant, p / latency);
+        }
+
+        // stable: equal scores keep the default order
+        ranked.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        if (pruned.size() < ranked.size()) ranked.removeAll(pruned);
+        return ranked;
+    }
+
+    synchronized String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (sb.length() > 0) sb.append(';');
+            Entry e = item.getValue();
+            sb.append(item.getKey()).append(':').append(e.attempts).append(':').append(e.hits).append(':').append(e.totalMs);
+        }
+        return sb.toString();
+    }
+
+    static CandidateStats parse(String serialized) {
+        CandidateStats stats = new CandidateStats();
+        if (serialized == null || serialized.isEmpty()) return stats;
+
+        for (String item : serialized.split(";")) {
+            String[] parts = item.split(":");
+            if (parts.length != 4) continue;
+            try {
+                Entry e = new Entry();
+                e.attempts = Long.parseLong(parts[1]);
+                e.hits = Long.parseLong(parts[2]);
+                e.totalMs = Long.parseLong(parts[3]);
+                stats.entries.put(parts[0], e);
+            } catch (NumberFormatException ignored) {}
+        }
+        return stats;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            Entry e = item.getValue();
+            sb.append(
+                String.format(
+                    Locale.US,
+                    "%s: %d/%d hits, %.1f ms avg%n",
+                    item.getKey(),
+                    e.hits,
+                    e.attempts,
+                    e.attempts > 0 ? e.totalMs / (double) e.attempts : 0.0
+                )
+            );
+        }
+        return sb.toString();
+    }
+}
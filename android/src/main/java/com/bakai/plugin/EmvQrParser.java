@@ -0,0 +1,164 @@
+package com.bakai.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Validates EMVCo merchant-presented payment QR payloads: two-digit id, two-digit length, value,
+ * repeated, starting with the payload format indicator {@code 000201} and ending with the CRC
+ * {@code 6304XXXX}, a CRC-16/CCITT-FALSE over everything before the four hex digits. Templates
+ * (26-51 merchant account information, 62, 64 and 80-99) are parsed one level down.
+ *
+ * {@link #parse} only records offsets into the payload in reused arrays, so rejecting a read
+ * allocates nothing; strings are created by {@link #describe} for payloads that passed. One
+ * instance per thread.
+ */
+final class EmvQrParser {
+
+    static final int MAX_ENTRIES = 96;
+
+    static final String VALID = "valid";
+    static final String NOT_EMV = "notEmv";
+    static final String MALFORMED = "malformed";
+    static final String BAD_CRC = "badCrc";
+
+    private static final int TAG_CRC = 63;
+
+    private final int[] tags = new int[MAX_ENTRIES];
+    private final int[] starts = new int[MAX_ENTRIES];
+    private final int[] lengths = new int[MAX_ENTRIES];
+    // index of the enclosing template, -1 at the top level
+    private final int[] parents = new int[MAX_ENTRIES];
+    private int count;
+    private CharSequence source;
+    private String status = NOT_EMV;
+
+    /** Parses {@code payload}; true when it is a well-formed EMV payload with a matching CRC. */
+    boolean parse(CharSequence payload) {
+        source = payload;
+        count = 0;
+        status = check(payload);
+        return status == VALID;
+    }
+
+    /** {@link #VALID}, {@link #NOT_EMV}, {@link #MALFORMED} or {@link #BAD_CRC} for the last parse. */
+    String status() {
+        return status;
+    }
+
+    private String check(CharSequence s) {
+        final int length = s != null ? s.length() : 0;
+        if (length < 12 || !startsWithFormatIndicator(s)) return NOT_EMV;
+        if (!entries(s, 0, length, -1)) return MALFORMED;
+
+        // the CRC must be the last top-level entry, four hex digits
+        int last = lastTopLevel();
+        if (last < 0 || tags[last] != TAG_CRC || lengths[last] != 4 || starts[last] + 4 != length) return MALFORMED;
+        int expected = hex(s, starts[last], 4);
+        if (expected < 0) return MALFORMED;
+        return crc16(s, 0, starts[last]) == expected ? VALID : BAD_CRC;
+    }
+
+    private boolean entries(CharSequence s, int from, int to, int parent) {
+        int at = from;
+        while (at < to) {
+            if (to - at < 4 || count >= MAX_ENTRIES) return false;
+            int tag = digits(s, at);
+            int len = digits(s, at + 2);
+            if (tag < 0 || len < 0 || at + 4 + len > to) return false;
+
+            int index = count++;
+            tags[index] = tag;
+            starts[index] = at + 4;
+            lengths[index] = len;
+            parents[index] = parent;
+            if (parent < 0 && isTemplate(tag) && !entries(s, at + 4, at + 4 + len, index)) return false;
+            at += 4 + len;
+        }
+        return true;
+    }
+
+    private int lastTopLevel() {
+        for (int i = count - 1; i >= 0; i--) {
+            if (parents[i] < 0) return i;
+        }
+        return -1;
+    }
+
+    /** The parsed payload as id → value, templates as nested maps. Only meaningful after a valid parse. */
+    Map<String, Object> describe() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Map<Integer, Map<String, Object>> templates = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String id = twoDigits(tags[i]);
+            if (parents[i] >= 0) {
+                templates.get(parents[i]).put(id, value(i));
+            } else if (isTemplate(tags[i])) {
+                Map<String, Object> template = new LinkedHashMap<>();
+                templates.put(i, template);
+                out.put(id, template);
+            } else {
+                out.put(id, value(i));
+            }
+        }
+        return out;
+    }
+
+    private String value(int index) {
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    static boolean isTemplate(int tag) {
+        return (tag >= 26 && tag <= 51) || tag == 62 || tag == 64 || (tag >= 80 && tag <= 99);
+    }
+
+    /** CRC-16/CCITT-FALSE (polynomial 0x1021, initial 0xFFFF) over the UTF-8 bytes of the characters. */
+    static int crc16(CharSequence s, int from, int to) {
+        int crc = 0xffff;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                crc = crcByte(crc, c);
+            } else if (c < 0x800) {
+                crc = crcByte(crcByte(crc, 0xc0 | (c >> 6)), 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                crc = crcByte(crcByte(crcByte(crcByte(crc, 0xf0 | (cp >> 18)), 0x80 | ((cp >> 12) & 0x3f)), 0x80 | ((cp >> 6) & 0x3f)), 0x80 | (cp & 0x3f));
+            } else {
+                crc = crcByte(crcByte(crcByte(crc, 0xe0 | (c >> 12)), 0x80 | ((c >> 6) & 0x3f)), 0x80 | (c & 0x3f));
+            }
+        }
+        return crc;
+    }
+
+    private static int crcByte(int crc, int b) {
+        crc ^= (b & 0xff) << 8;
+        for (int bit = 0; bit < 8; bit++) crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x1021) & 0xffff : (crc << 1) & 0xffff;
+        return crc;
+    }
+
+    private static boolean startsWithFormatIndicator(CharSequence s) {
+        return s.charAt(0) == '0' && s.charAt(1) == '0' && s.charAt(2) == '0' && s.charAt(3) == '2' && s.charAt(4) == '0' && s.charAt(5) == '1';
+    }
+
+    private static int digits(CharSequence s, int at) {
+        char a = s.charAt(at);
+        char b = s.charAt(at + 1);
+        if (a < '0' || a > '9' || b < '0' || b > '9') return -1;
+        return (a - '0') * 10 + (b - '0');
+    }
+
+    private static int hex(CharSequence s, int at, int n) {
+        int v = 0;
+        for (int i = at; i < at + n; i++) {
+            int d = Character.digit(s.charAt(i), 16);
+            if (d < 0) return -1;
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    private static String twoDigits(int tag) {
+        return tag < 10 ? "0" + tag : Integer.toString(tag);
+    }
+}
@@ -0,0 +1,100 @@
+package com.bakai.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Luma-plane helpers for the two-stage camera analyzer: a box-filtered low-resolution copy for
+ * locating codes, full-resolution crops around what was found, and mapping crop coordinates back
+ * to the upright frame the rest of the plugin reports in.
+ *
+ * All coordinates are in the sensor buffer (unrotated) unless stated otherwise.
+ */
+final class FrameCrops {
+
+    // grow located boxes so the quiet zone and slightly misplaced boxes still fit
+    static final float CROP_MARGIN = 0.35f;
+    static final int MIN_CROP_SIDE = 160;
+
+    private FrameCrops() {}
+
+    /** Copies a Y plane ({@code pixelStride} 1) into {@code dst}, dropping row padding. */
+    static void copyPlane(ByteBuffer plane, int rowStride, int width, int height, byte[] dst) {
+        ByteBuffer src = plane.duplicate();
+        if (rowStride == width) {
+            src.position(0);
+            src.get(dst, 0, width * height);
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            src.position(y * rowStride);
+            src.get(dst, y * width, width);
+        }
+    }
+
+    /** Averages {@code factor}x{@code factor} blocks of {@code src} into an {@code outWidth}x{@code outHeight} plane. */
+    static void downsample(byte[] src, int width, int factor, byte[] dst, int outWidth, int outHeight, int[] rowSums) {
+        final int area = factor * factor;
+
+        for (int oy = 0; oy < outHeight; oy++) {
+            Arrays.fill(rowSums, 0, outWidth, 0);
+            for (int dy = 0; dy < factor; dy++) {
+                int x = (oy * factor + dy) * width;
+                for (int ox = 0; ox < outWidth; ox++) {
+                    int s = 0;
+                    for (int dx = 0; dx < factor; dx++) s += src[x++] & 0xff;
+                    rowSums[ox] += s;
+                }
+            }
+            int out = oy * outWidth;
+            for (int ox = 0; ox < outWidth; ox++) dst[out + ox] = (byte) (rowSums[ox] / area);
+        }
+    }
+
+    /**
+     * Scales a box found in the low-resolution copy to the full frame, adds {@link #CROP_MARGIN},
+     * makes it square, even-sized and at least {@link #MIN_CROP_SIDE}, and clamps it to the frame.
+     * Returns {@code {left, top, width, height}}.
+     */
+    static int[] cropFor(int left, int top, int right, int bottom, int factor, int width, int height) {
+        float cx = (left + right) / 2f * factor;
+        float cy = (top + bottom) / 2f * factor;
+        float side = Math.max(right - left, bottom - top) * factor * (1f + 2f * CROP_MARGIN);
+        int s = Math.max(MIN_CROP_SIDE, Math.round(side));
+
+        int cw = Math.min(s, width) & ~1;
+        int ch = Math.min(s, height) & ~1;
+        int l = Math.max(0, Math.min(width - cw, Math.round(cx - cw / 2f)));
+        int t = Math.max(0, Math.min(height - ch, Math.round(cy - ch / 2f)));
+        return new int[] { l, t, cw, ch };
+    }
+
+    /** Copies a luma crop into an NV21 frame with neutral chroma; {@code dst} holds at least {@link #nv21Length}. */
+    static void cropToNv21(byte[] src, int width, int left, int top, int cropWidth, int cropHeight, byte[] dst) {
+        for (int y = 0; y < cropHeight; y++) {
+            System.arraycopy(src, (top + y) * width + left, dst, y * cropWidth, cropWidth);
+        }
+        Arrays.fill(dst, cropWidth * cropHeight, nv21Length(cropWidth, cropHeight), (byte) 128);
+    }
+
+    static int nv21Length(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Maps a point of the sensor buffer ({@code width}x{@code height}) into the frame rotated
+     * clockwise by {@code rotationDegrees}, which is how camera results are reported. Returns {@code {x, y}}.
+     */
+    static int[] toUpright(int x, int y, int width, int height, int rotationDegrees) {
+        switch (((rotationDegrees % 360) + 360) % 360) {
+            case 90:
+                return new int[] { height - y, x };
+            case 180:
+                return new int[] { width - x, height - y };
+            case 270:
+                return new int[] { y, width - x };
+            default:
+                return new int[] { x, y };
+        }
+    }
+}
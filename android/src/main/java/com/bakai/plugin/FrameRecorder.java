@@ -0,0 +1,128 @@
+package com.bakai.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records analysis frames to a {@link FrameRecording} without slowing analysis down: the luma copy
+ * happens on the caller's thread, compression and file writes on a writer thread of their own.
+ * When the writer falls more than {@link #MAX_QUEUED} frames behind, frames are dropped and counted.
+ */
+final class FrameRecorder {
+
+    private static final int MAX_QUEUED = 3;
+    private static final long CLOSE_TIMEOUT_MS = 5000L;
+
+    private final File file;
+    private final float cropFraction;
+    private final int maxFrames;
+    private final FrameRecording.Writer writer;
+    private final ExecutorService io = Executors.newSingleThreadExecutor((r) -> new Thread(r, "QrCodeScannerRecorder"));
+    private final ConcurrentLinkedQueue<byte[]> spareBuffers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger accepted = new AtomicInteger(0);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private volatile boolean closed = false;
+    private volatile String error = null;
+    // only touched on the writer thread; a frame queued just before close() must not hit the closed file
+    private boolean writerClosed = false;
+
+    FrameRecorder(File file, float cropFraction, int maxFrames) throws IOException {
+        this.file = file;
+        this.cropFraction = cropFraction;
+        this.maxFrames = maxFrames;
+        this.writer = new FrameRecording.Writer(file);
+    }
+
+    /** Queues one frame; false when it was dropped or the recording is full or stopped. */
+    boolean offer(long timestampNs, int rotation, float zoomRatio, ByteBuffer plane, int rowStride, int width, int height) {
+        if (closed) return false;
+        if (maxFrames > 0 && accepted.get() >= maxFrames) return false;
+        if (queued.get() >= MAX_QUEUED) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        final int[] crop = cropFraction < 1f ? FrameRecording.centerCrop(width, height, cropFraction) : new int[] { 0, 0, width, height };
+        final int w = crop[2];
+        final int h = crop[3];
+        byte[] buffer = spareBuffers.poll();
+        if (buffer == null || buffer.length != w * h) buffer = new byte[w * h];
+
+        ByteBuffer src = plane.duplicate();
+        for (int row = 0; row < h; row++) {
+            src.position((crop[1] + row) * rowStride + crop[0]);
+            src.get(buffer, row * w, w);
+        }
+
+        final byte[] luma = buffer;
+        queued.incrementAndGet();
+        accepted.incrementAndGet();
+        try {
+            io.execute(() -> {
+                try {
+                    if (error == null && !writerClosed) writer.write(timestampNs, rotation, zoomRatio, luma, w, null);
+                } catch (IOException e) {
+                    error = e.getMessage() != null ? e.getMessage() : "Failed to write frame";
+                    closed = true;
+                } finally {
+                    spareBuffers.offer(luma);
+                    queued.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stop() won the race
+            queued.decrementAndGet();
+            accepted.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** Flushes queued frames, closes the file and describes the recording. */
+    Map<String, Object> stop() {
+        close();
+        try {
+            io.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("path", file.getAbsolutePath());
+        out.put("frames", writer.frames());
+        out.put("droppedFrames", dropped.get());
+        out.put("bytes", file.length());
+        if (error != null) out.put("error", error);
+        return out;
+    }
+
+    /** Stops accepting frames; queued frames are flushed and the file closed on the writer thread, without waiting. */
+    void close() {
+        closed = true;
+        try {
+            io.execute(() -> {
+                writerClosed = true;
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (error == null) error = e.getMessage() != null ? e.getMessage() : "Failed to close recording";
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // already closed
+        }
+        io.shutdown();
+    }
+}
@@ -0,0 +1,149 @@
+package com.bakai.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact file of recorded analysis frames, replayed offline by {@link FrameReplay}.
+ *
+ * File layout (deflated after the magic): [int magic][int version][frames...][int 0]
+ * Frame layout: [int width][int height][long timestampNs][int rotation][float zoomRatio][width * height luma bytes]
+ *
+ * Only the Y plane is kept; the detector reads luma only and chroma would add half again.
+ * Width and height are those of the stored (possibly cropped) plane.
+ */
+final class FrameRecording {
+
+    static final int MAGIC = 0x51524652; // "QRFR"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".qrframes";
+
+    static final class Frame {
+
+        final long timestampNs;
+        final int width;
+        final int height;
+        final int rotation;
+        final float zoomRatio;
+        final byte[] luma;
+
+        Frame(long timestampNs, int width, int height, int rotation, float zoomRatio, byte[] luma) {
+            this.timestampNs = timestampNs;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.zoomRatio = zoomRatio;
+            this.luma = luma;
+        }
+    }
+
+    private FrameRecording() {}
+
+    /** Centered crop {@code [x, y, w, h]} keeping {@code fraction} (0.1..1) of each side, with even sizes. */
+    static int[] centerCrop(int width, int height, float fraction) {
+        float f = Math.max(0.1f, Math.min(1f, fraction));
+        int w = Math.max(2, Math.round(width * f) & ~1);
+        int h = Math.max(2, Math.round(height * f) & ~1);
+        return new int[] { (width - w) / 2, (height - h) / 2, w, h };
+    }
+
+    static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final Deflater deflater;
+        private long frames = 0L;
+
+        Writer(File file) throws IOException {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create recording directory " + parent);
+            }
+            FileOutputStream raw = new FileOutputStream(file);
+            new DataOutputStream(raw).writeInt(MAGIC);
+            // frames arrive at camera rate; ratio matters less than keeping up
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(raw, deflater, 64 * 1024), 64 * 1024));
+            out.writeInt(VERSION);
+        }
+
+        /** Writes the {@code crop} ({@code [x, y, w, h]}, or null for all) of a {@code rowStride}-wide luma plane. */
+        void write(long timestampNs, int rotation, float zoomRatio, byte[] luma, int rowStride, int[] crop) throws IOException {
+            int x = crop != null ? crop[0] : 0;
+            int y = crop != null ? crop[1] : 0;
+            int w = crop != null ? crop[2] : rowStride;
+            int h = crop != null ? crop[3] : luma.length / rowStride;
+            out.writeInt(w);
+            out.writeInt(h);
+            out.writeLong(timestampNs);
+            out.writeInt(rotation);
+            out.writeFloat(zoomRatio);
+            for (int row = 0; row < h; row++) out.write(luma, (y + row) * rowStride + x, w);
+            frames++;
+        }
+
+        long frames() {
+            return frames;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeInt(0);
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        Reader(File file) throws IOException {
+            FileInputStream raw = new FileInputStream(file);
+            try {
+                if (new DataInputStream(raw).readInt() != MAGIC) throw new IOException("Not a frame recording: " + file);
+                in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(raw), 64 * 1024));
+                int version = in.readInt();
+                if (version != VERSION) throw new IOException("Unsupported frame recording version " + version);
+            } catch (IOException e) {
+                raw.close();
+                throw e;
+            }
+        }
+
+        /** The next frame, or null at the end of the recording (including one cut short by a crash). */
+        Frame next() throws IOException {
+            try {
+                int width = in.readInt();
+                if (width <= 0) return null;
+                int height = in.readInt();
+                long timestampNs = in.readLong();
+                int rotation = in.readInt();
+                float zoomRatio = in.readFloat();
+                byte[] luma = new byte[width * height];
+                in.readFully(luma);
+                return new Frame(timestampNs, width, height, rotation, zoomRatio, luma);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
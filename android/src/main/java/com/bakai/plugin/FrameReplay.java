@@ -0,0 +1,113 @@
+package com.bakai.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Feeds a {@link FrameRecording} through the live scanner's {@link AnalysisPolicy} with the
+ * recorded timestamps as the clock, so throttling, cooldown and auto-zoom behave as they did on
+ * the phone, deterministically. The decoder is injected; on a plain JVM any luma decoder will do.
+ *
+ * Frames are analyzed synchronously, one at a time. Zoom steps are reported, not applied: the
+ * recorded pixels cannot change.
+ */
+final class FrameReplay {
+
+    interface Decoder {
+        /** Payloads found in a {@code width x height} luma plane; empty (not null) when there are none. */
+        List<String> decode(byte[] luma, int width, int height, int rotation);
+    }
+
+    static final class Report {
+
+        int frames;
+        int analyzed;
+        int decodedFrames;
+        /** Frames not analyzed because the scene was static; only with {@code idleWhenStatic}. */
+        int skippedIdle;
+        final Set<String> payloads = new LinkedHashSet<>();
+        /** Recorded time from the first frame to the first decode, or -1. */
+        long firstDecodeNs = -1L;
+        /** Wall time spent inside the decoder. */
+        long decodeNanos;
+        /** Frame index and target ratio of every auto-zoom step. */
+        final List<float[]> zoomSteps = new ArrayList<>();
+
+        double decodedFramesPerSecond() {
+            return decodeNanos > 0 ? analyzed * 1e9 / decodeNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return (
+                "frames=" + frames +
+                " analyzed=" + analyzed +
+                " decoded=" + decodedFrames +
+                " skippedIdle=" + skippedIdle +
+                " payloads=" + payloads.size() +
+                " firstDecodeMs=" + (firstDecodeNs >= 0 ? firstDecodeNs / 1e6 : -1) +
+                " decoderFps=" + String.format(java.util.Locale.US, "%.1f", decodedFramesPerSecond()) +
+                " zoomSteps=" + zoomSteps.size()
+            );
+        }
+    }
+
+    private FrameReplay() {}
+
+    /** Replays every frame of {@code reader}; {@code maxZoom} stands in for the camera's zoom range. */
+    static Report run(FrameRecording.Reader reader, Decoder decoder, int depth, float maxZoom) throws IOException {
+        return run(reader, decoder, depth, maxZoom, false);
+    }
+
+    /** Like {@link #run(FrameRecording.Reader, Decoder, int, float)}, idling on static scenes as the scanner does with {@code idleWhenStatic}. */
+    static Report run(FrameRecording.Reader reader, Decoder decoder, int depth, float maxZoom, boolean idleWhenStatic) throws IOException {
+        final long[] now = { 0L };
+        AnalysisPolicy policy = new AnalysisPolicy(() -> now[0]);
+        SceneChangeDetector scene = idleWhenStatic ? new SceneChangeDetector() : null;
+        Report report = new Report();
+
+        long firstTimestampNs = 0L;
+        float zoom = 1f;
+        FrameRecording.Frame frame;
+        while ((frame = reader.next()) != null) {
+            if (report.frames == 0) {
+                firstTimestampNs = frame.timestampNs;
+                zoom = frame.zoomRatio;
+            }
+            report.frames++;
+            now[0] = frame.timestampNs;
+
+            if (scene != null && scene.update(ByteBuffer.wrap(frame.luma), frame.width, frame.width, frame.height)) policy.onSceneChanged();
+            if (!policy.isDue(depth)) continue;
+            if (scene != null && policy.isIdle() && !policy.isDueWhileIdle()) {
+                report.skippedIdle++;
+                continue;
+            }
+            policy.markAnalyzed();
+            report.analyzed++;
+
+            long startedAt = System.nanoTime();
+            List<String> payloads = decoder.decode(frame.luma, frame.width, frame.height, frame.rotation);
+            report.decodeNanos += System.nanoTime() - startedAt;
+
+            if (!payloads.isEmpty()) {
+                policy.onDecoded();
+                report.decodedFrames++;
+                report.payloads.addAll(payloads);
+                if (report.firstDecodeNs < 0) report.firstDecodeNs = frame.timestampNs - firstTimestampNs;
+                continue;
+            }
+
+            float target = policy.onMiss(zoom, maxZoom, false);
+            if (target != AnalysisPolicy.NO_ZOOM_CHANGE) {
+                report.zoomSteps.add(new float[] { report.frames - 1, target });
+                zoom = target;
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,364 @@
+package com.bakai.plugin;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import com.google.mlkit.vision.common.InputImage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Still-image candidates for {@code readBarcodesFromImage}, created lazily by variant name; the
+ * names and what each one reads are defined by {@link LadderVariants}.
+ *
+ * Every variant except {@code file} derives from one normalized bitmap; derived bitmaps are built
+ * the first time a variant needs them, so a ladder that succeeds early never pays for the rest.
+ * All bitmaps and scratch buffers come from a shared {@link BitmapPool} and go back to it on
+ * {@link #release()}. Not thread-safe: one ladder serves one call, driven sequentially.
+ *
+ * The working size and the set of planes follow a {@link MemoryBudget.Plan}; a luma-only plan
+ * skips the boosted, binary and channel variants, and running out of memory while building the
+ * planes drops to luma-only instead of failing the call.
+ */
+final class ImageCandidateLadder {
+
+    /** Default order: file path, normalized at 4 rotations, luma planes, centre crop, pyramid crops. */
+    static final List<String> VARIANTS = LadderVariants.ORDER;
+
+    private final Context context;
+    private final Uri uri;
+    private final BitmapPool pool;
+    private final MemoryBudget.Plan plan;
+    private final Set<Bitmap> pooledBitmaps = new HashSet<>();
+
+    private boolean sourceLoaded = false;
+    private int sourceWidth;
+    private int sourceHeight;
+    private Bitmap normalized;
+    // NV21-sized luma planes from LumaKernel, indexed by LumaKernel.PLANE_*
+    private byte[][] planes;
+    private int planeWidth;
+    private int planeHeight;
+    private boolean lumaOnly;
+    // a candidate could not be built for lack of memory
+    private boolean outOfMemory;
+    private Bitmap centerCrop;
+    private List<Bitmap> pyramidCrops;
+    private Exception firstError;
+
+    ImageCandidateLadder(Context context, Uri uri, BitmapPool pool, MemoryBudget.Plan plan) {
+        this.context = context;
+        this.uri = uri;
+        this.pool = pool;
+        this.plan = plan;
+        this.lumaOnly = plan.lumaOnly;
+    }
+
+    /** Width and height of the image at {@code uri} without decoding it, or null when it cannot be read. */
+    static int[] readBounds(ContentResolver resolver, Uri uri) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) return null;
+            BitmapFactory.decodeStream(input, null, bounds);
+        } catch (Exception ignored) {
+            return null;
+        }
+        return bounds.outWidth > 0 && bounds.outHeight > 0 ? new int[] { bounds.outWidth, bounds.outHeight } : null;
+    }
+
+    /** Returns the input for {@code variant}, or null when the variant does not apply to this image. */
+    InputImage create(String variant) {
+        try {
+            LadderVariants.Variant v = LadderVariants.parse(variant);
+            if (v == null) return null;
+
+            switch (v.source) {
+                case LadderVariants.SOURCE_FILE:
+                    // Native file-path decode (includes EXIF orientation handling in ML Kit).
+                    return InputImage.fromFilePath(context, uri);
+                case LadderVariants.SOURCE_NORMALIZED:
+                    return fromBitmap(normalized(), v.suffix);
+                case LadderVariants.SOURCE_PLANE:
+                    return fromPlane(v.plane, v.suffix);
+                case LadderVariants.SOURCE_CENTER_CROP:
+                    if (centerCrop == null) centerCrop = track(createCenteredSquare(normalized()));
+                    return fromBitmap(centerCrop, v.suffix);
+                case LadderVariants.SOURCE_PYRAMID:
+                    if (pyramidCrops == null) {
+                        pyramidCrops = createPyramidCrops(normalized());
+                        for (Bitmap crop : pyramidCrops) track(crop);
+                    }
+                    return v.suffix < pyramidCrops.size() ? fromBitmap(pyramidCrops.get(v.suffix), 0) : null;
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            if (firstError == null) firstError = e;
+            return null;
+        } catch (OutOfMemoryError e) {
+            outOfMemory = true;
+            return null;
+        }
+    }
+
+    /** True when memory ran short and some candidates were skipped or built luma-only beyond what the plan said. */
+    boolean isDegraded() {
+        return outOfMemory || lumaOnly != plan.lumaOnly;
+    }
+
+    /** First exception raised while creating a candidate, if any. */
+    Exception getFirstError() {
+        return firstError;
+    }
+
+    void release() {
+        for (Bitmap bitmap : pooledBitmaps) {
+            try {
+                pool.release(bitmap);
+            } catch (Exception ignored) {}
+        }
+        pooledBitmaps.clear();
+        if (planes != null) {
+            for (byte[] plane : planes) pool.releaseBytes(plane);
+        }
+        planes = null;
+        normalized = centerCrop = null;
+        pyramidCrops = null;
+    }
+
+    private Bitmap normalized() {
+        if (!sourceLoaded) {
+            sourceLoaded = true;
+            Bitmap source = loadBitmapFromUri();
+            if (source != null) {
+                // loadBitmapFromUri records the file's own size; a sampled decode is smaller
+                if (sourceWidth <= 0 || sourceHeight <= 0) {
+                    sourceWidth = source.getWidth();
+                    sourceHeight = source.getHeight();
+                }
+                normalized = track(normalizeBitmapForDecode(source));
+            }
+        }
+        return normalized;
+    }
+
+    /** Runs the single-pass kernel over the normalized bitmap the first time any plane is needed. */
+    private byte[][] planes() {
+        if (planes != null) return planes;
+        final Bitmap source = normalized();
+        if (source == null || source.isRecycled()) return null;
+
+        try {
+            return buildPlanes(source);
+        } catch (OutOfMemoryError e) {
+            if (lumaOnly) throw e;
+            // what the budget estimated did not hold; the gray and inverted planes are worth more than none
+            lumaOnly = true;
+            pool.clear();
+            return buildPlanes(source);
+        }
+    }
+
+    private byte[][] buildPlanes(Bitmap source) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int lumaLength = width * height;
+        // NV21: the detector only reads the Y plane, the chroma half stays neutral
+        final int frameLength = lumaLength + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+
+        byte[][] out = new byte[LumaKernel.PLANE_COUNT][];
+        int[] stripe = null;
+        try {
+            for (int i = 0; i < out.length; i++) {
+                if (!LadderVariants.buildsPlane(i, lumaOnly)) continue;
+                out[i] = pool.acquireBytes(frameLength);
+                Arrays.fill(out[i], lumaLength, frameLength, (byte) 128);
+            }
+            stripe = pool.acquireInts(LumaKernel.stripeLength(width));
+            LumaKernel.run((top, rows, buffer) -> source.getPixels(buffer, 0, width, 0, top, width, rows), width, height, stripe, out);
+        } catch (Exception | OutOfMemoryError e) {
+            for (byte[] plane : out) pool.releaseBytes(plane);
+            throw e;
+        } finally {
+            pool.releaseInts(stripe);
+        }
+
+        planes = out;
+        planeWidth = width;
+        planeHeight = height;
+        return planes;
+    }
+
+    private InputImage fromPlane(int plane, int rotationDegrees) {
+        byte[][] p = planes();
+        if (p == null || p[plane] == null) return null;
+        return InputImage.fromByteArray(p[plane], planeWidth, planeHeight, rotationDegrees, InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    private Bitmap track(Bitmap bitmap) {
+        if (bitmap != null) pooledBitmaps.add(bitmap);
+        return bitmap;
+    }
+
+    private static InputImage fromBitmap(Bitmap bitmap, int rotationDegrees) {
+        if (bitmap == null || bitmap.isRecycled()) return null;
+        return InputImage.fromBitmap(bitmap, rotationDegrees);
+    }
+
+    private Bitmap loadBitmapFromUri() {
+        ContentResolver resolver = context.getContentResolver();
+        int[] bounds = readBounds(resolver, uri);
+
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        decodeOptions.inMutable = true;
+        // sampling in the decoder keeps a large source from ever being resident at full size
+        final int sample = Math.max(1, plan.sampleSize);
+        decodeOptions.inSampleSize = sample;
+        if (bounds != null) {
+            sourceWidth = bounds[0];
+            sourceHeight = bounds[1];
+            decodeOptions.inBitmap = pool.acquire((bounds[0] + sample - 1) / sample, (bounds[1] + sample - 1) / sample);
+        }
+
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) return null;
+            Bitmap decoded = BitmapFactory.decodeStream(input, null, decodeOptions);
+            if (decoded != decodeOptions.inBitmap) pool.release(decodeOptions.inBitmap);
+            return decoded;
+        } catch (IllegalArgumentException e) {
+            // the decoder could not reuse the pooled bitmap (e.g. an unusual source config)
+            pool.release(decodeOptions.inBitmap);
+            decodeOptions.inBitmap = null;
+        } catch (Exception ignored) {
+            pool.release(decodeOptions.inBitmap);
+            return null;
+        }
+
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) return null;
+            return BitmapFactory.decodeStream(input, null, decodeOptions);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private Bitmap normalizeBitmapForDecode(Bitmap source) {
+        if (source == null) return null;
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // the plan's side already reflects the usual 1200..2200 bounds, shrunk further when memory is short
+        float scale = plan.maxSide / (float) Math.max(width, height);
+
+        if (Math.abs(scale - 1f) < 0.01f) return source;
+
+        int targetWidth = Math.max(1, Math.round(width * scale));
+        int targetHeight = Math.max(1, Math.round(height * scale));
+        try {
+            Bitmap scaled = pool.acquire(targetWidth, targetHeight);
+            new Canvas(scaled).drawBitmap(source, null, new Rect(0, 0, targetWidth, targetHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+            pool.release(source);
+            return scaled;
+        } catch (Exception ignored) {
+            return source;
+        }
+    }
+
+    private Bitmap createCenteredSquare(Bitmap source) {
+        if (source == null || source.isRecycled()) return null;
+        int[] square = LadderVariants.centerSquare(source.getWidth(), source.getHeight());
+        return square != null ? copyRegion(source, square[0], square[1], square[2], square[2]) : null;
+    }
+
+    private Bitmap copyRegion(Bitmap source, int left, int top, int width, int height) {
+        try {
+            Bitmap output = pool.acquire(width, height);
+            new Canvas(output).drawBitmap(source, new Rect(left, top, left + width, top + height), new Rect(0, 0, width, height), null);
+            return output;
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private List<Bitmap> createPyramidCrops(Bitmap normalized) {
+        List<Bitmap> crops = new ArrayList<>();
+        if (normalized == null || normalized.isRecycled()) return crops;
+
+        final int width = normalized.getWidth();
+        final int height = normalized.getHeight();
+
+        List<PyramidLocator.Region> regions;
+        try {
+            byte[][] p = planes();
+            if (p == null) return crops;
+            regions = PyramidLocator.locate(p[LumaKernel.PLANE_GRAY], width, height, LadderVariants.pyramidCrops(plan, lumaOnly));
+        } catch (Exception | OutOfMemoryError ignored) {
+            return crops;
+        }
+        if (regions.isEmpty()) return crops;
+
+        // Prefer re-reading the region from the original file when it has more pixels than the normalized copy.
+        final float toSource = sourceWidth / (float) width;
+        BitmapRegionDecoder regionDecoder = null;
+        if (toSource > 1.05f) {
+            try (InputStream input = context.getContentResolver().openInputStream(uri)) {
+                //noinspection deprecation
+                if (input != null) regionDecoder = BitmapRegionDecoder.newInstance(input, false);
+            } catch (Exception ignored) {}
+        }
+
+        try {
+            for (PyramidLocator.Region region : regions) {
+                Bitmap crop = null;
+                if (regionDecoder != null) {
+                    Rect rect = new Rect(
+                        Math.round(region.left * toSource),
+                        Math.round(region.top * toSource),
+                        Math.min(sourceWidth, Math.round((region.left + region.size) * toSource)),
+                        Math.min(sourceHeight, Math.round((region.top + region.size) * toSource))
+                    );
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                    options.inSampleSize = LadderVariants.regionSampleSize(rect.width());
+                    try {
+                        crop = regionDecoder.decodeRegion(rect, options);
+                    } catch (Exception ignored) {}
+                }
+                if (crop == null) crop = copyRegion(normalized, region.left, region.top, region.size, region.size);
+                if (crop == null) continue;
+
+                if (LadderVariants.needsUpscale(crop.getWidth())) {
+                    Bitmap upscaled = null;
+                    try {
+                        upscaled = pool.acquire(LadderVariants.PYRAMID_CROP_SIDE, LadderVariants.PYRAMID_CROP_SIDE);
+                        new Canvas(upscaled).drawBitmap(crop, null, new Rect(0, 0, LadderVariants.PYRAMID_CROP_SIDE, LadderVariants.PYRAMID_CROP_SIDE), new Paint(Paint.FILTER_BITMAP_FLAG));
+                    } catch (Exception | OutOfMemoryError ignored) {
+                        pool.release(upscaled);
+                        upscaled = null;
+                    }
+                    if (upscaled != null) {
+                        pool.release(crop);
+                        crop = upscaled;
+                    }
+                }
+                crops.add(crop);
+            }
+        } finally {
+            if (regionDecoder != null) regionDecoder.recycle();
+        }
+        return crops;
+    }
+}
@@ -0,0 +1,308 @@
+package com.bakai.plugin;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Base64;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * LRU cache of {@code readBarcodesFromImage} results.
+ *
+ * Keys are the URI plus size and modification time when the provider exposes them, otherwise a
+ * SHA-256 of the content. Misses ("no barcode") are cached too, with a shorter TTL, since retrying
+ * the same unreadable image is the most expensive case. An optional disk tier keeps results across
+ * process restarts.
+ *
+ * Only what the image yielded is cached: the mapped barcodes and the raw value, bytes and format
+ * of each code. Keys that describe one call ({@code completed}, {@code reason},
+ * {@code structuredAppend}) are rebuilt on a hit, and the journal and structured-append steps run
+ * again from the raw codes.
+ */
+final class ImageResultCache {
+
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final int MAX_DISK_ENTRIES = 256;
+    private static final long POSITIVE_TTL_MS = 30L * 60L * 1000L;
+    private static final long NEGATIVE_TTL_MS = 60L * 1000L;
+
+    /** A cached image: barcodes as mapped for the key's fields, and the codes they came from. */
+    static final class Result {
+
+        final JSONArray barcodes;
+        final List<Decoded> decoded;
+
+        Result(JSONArray barcodes, List<Decoded> decoded) {
+            this.barcodes = barcodes;
+            this.decoded = decoded;
+        }
+    }
+
+    /** The parts of a decoded barcode the per-call steps need. */
+    static final class Decoded {
+
+        final int format;
+        final String rawValue;
+        final byte[] rawBytes;
+
+        Decoded(int format, String rawValue, byte[] rawBytes) {
+            this.format = format;
+            this.rawValue = rawValue;
+            this.rawBytes = rawBytes;
+        }
+
+        static List<Decoded> of(List<Barcode> barcodes) {
+            List<Decoded> out = new ArrayList<>(barcodes.size());
+            for (Barcode b : barcodes) out.add(new Decoded(b.getFormat(), b.getRawValue(), b.getRawBytes()));
+            return out;
+        }
+    }
+
+    private static final class Entry {
+
+        final String json;
+        final long expiresAtMs;
+
+        Entry(String json, long expiresAtMs) {
+            this.json = json;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private final File diskDir;
+    private final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    private int diskWrites = 0;
+
+    ImageResultCache(File diskDir) {
+        this.diskDir = diskDir;
+    }
+
+    /** Returns a cache key, or null when the image cannot be identified cheaply or safely. */
+    static String keyFor(ContentResolver resolver, Uri uri, String variant) {
+        if (uri == null) return null;
+
+        try {
+            if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+                File file = new File(uri.getPath());
+                if (!file.isFile()) return null;
+                return variant + "|" + uri + "|" + file.length() + "|" + file.lastModified();
+            }
+
+            if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+                String metadata = contentMetadata(resolver, uri);
+                if (metadata != null) return variant + "|" + uri + "|" + metadata;
+            }
+
+            return variant + "|sha256:" + hashContent(resolver, uri);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    Result get(String key, boolean useDisk) {
+        if (key == null) return null;
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+            if (entry != null && entry.expiresAtMs < now) {
+                memory.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null && useDisk) {
+            entry = readDisk(key, now);
+            if (entry != null) {
+                synchronized (memory) {
+                    memory.put(key, entry);
+                }
+            }
+        }
+
+        if (entry == null) return null;
+        try {
+            JSONObject json = new JSONObject(entry.json);
+            JSONArray records = json.getJSONArray("decoded");
+            List<Decoded> decoded = new ArrayList<>(records.length());
+            for (int i = 0; i < records.length(); i++) {
+                JSONObject record = records.getJSONObject(i);
+                String bytes = record.optString("rawBytes", null);
+                decoded.add(
+                    new Decoded(
+                        record.getInt("format"),
+                        record.has("rawValue") ? record.getString("rawValue") : null,
+                        bytes != null ? Base64.decode(bytes, Base64.NO_WRAP) : null
+                    )
+                );
+            }
+            return new Result(json.getJSONArray("barcodes"), decoded);
+        } catch (Exception ignored) {
+            // including entries written before the raw codes were kept
+            return null;
+        }
+    }
+
+    void put(String key, JSONArray barcodes, List<Decoded> decoded, boolean useDisk) {
+        if (key == null || barcodes == null || decoded == null) return;
+
+        String json;
+        try {
+            JSONArray records = new JSONArray();
+            for (Decoded d : decoded) {
+                JSONObject record = new JSONObject();
+                record.put("format", d.format);
+                if (d.rawValue != null) record.put("rawValue", d.rawValue);
+                if (d.rawBytes != null) record.put("rawBytes", Base64.encodeToString(d.rawBytes, Base64.NO_WRAP));
+                records.put(record);
+            }
+            json = new JSONObject().put("barcodes", barcodes).put("decoded", records).toString();
+        } catch (Exception ignored) {
+            return;
+        }
+
+        boolean found = !decoded.isEmpty();
+        Entry entry = new Entry(json, System.currentTimeMillis() + (found ? POSITIVE_TTL_MS : NEGATIVE_TTL_MS));
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        if (useDisk) writeDisk(key, entry);
+    }
+
+    void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        File[] files = diskDir != null ? diskDir.listFiles() : null;
+        if (files == null) return;
+        for (File f : files) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    // ===== disk tier =====
+
+    private Entry readDisk(String key, long now) {
+        if (diskDir == null) return null;
+        File file = diskFile(key);
+        if (!file.isFile()) return null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String storedKey = reader.readLine();
+            String expires = reader.readLine();
+            String json = reader.readLine();
+            if (!key.equals(storedKey) || expires == null || json == null) return null;
+
+            long expiresAtMs = Long.parseLong(expires);
+            if (expiresAtMs < now) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return null;
+            }
+            return new Entry(json, expiresAtMs);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private synchronized void writeDisk(String key, Entry entry) {
+        if (diskDir == null) return;
+        if (!diskDir.isDirectory() && !diskDir.mkdirs()) return;
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(diskFile(key)), StandardCharsets.UTF_8)) {
+            // JSONObject.toString() is single-line JSON
+            writer.write(key.replace('\n', ' '));
+            writer.write('\n');
+            writer.write(Long.toString(entry.expiresAtMs));
+            writer.write('\n');
+            writer.write(entry.json);
+            writer.write('\n');
+        } catch (Exception ignored) {}
+
+        if (++diskWrites % 16 == 0) trimDisk();
+    }
+
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+
+    private File diskFile(String key) {
+        return new File(diskDir, sha256(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    // ===== keys =====
+
+    private static String contentMetadata(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, null, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) return null;
+
+            int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+            int modifiedIndex = cursor.getColumnIndex("last_modified");
+            if (modifiedIndex < 0) modifiedIndex = cursor.getColumnIndex("date_modified");
+            if (sizeIndex < 0 || modifiedIndex < 0 || cursor.isNull(sizeIndex) || cursor.isNull(modifiedIndex)) return null;
+
+            return cursor.getLong(sizeIndex) + "|" + cursor.getLong(modifiedIndex);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private static String hashContent(ContentResolver resolver, Uri uri) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) throw new IllegalStateException("Unable to open image");
+            int read;
+            while ((read = input.read(buffer)) > 0) digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (Exception e) {
+            return Integer.toHexString(Arrays.hashCode(data));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
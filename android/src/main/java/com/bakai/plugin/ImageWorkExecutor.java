@@ -0,0 +1,151 @@
+package com.bakai.plugin;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, priority-ordered pool for still-image work (bitmap decoding, preprocessing, PDF rendering),
+ * so none of it runs on the plugin call thread.
+ *
+ * New requests go through {@link #submit} and report back through {@link #complete}. At most one
+ * request per worker runs at a time; beyond that {@link Policy#REJECT} refuses new requests while
+ * {@link Policy#QUEUE} keeps up to {@code queueCapacity} of them waiting, highest priority first.
+ * Continuations of running requests ({@link #execute}, also used as the detector callback executor)
+ * are never refused and run ahead of everything else, so running work finishes and frees its
+ * bitmaps first. After {@link #shutdown} admitted work still runs to the end, so every call it
+ * owns settles.
+ */
+final class ImageWorkExecutor implements Executor {
+
+    enum Policy {
+        REJECT,
+        QUEUE
+    }
+
+    static final int PRIORITY_LOW = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_HIGH = 2;
+    private static final int PRIORITY_CONTINUATION = 3;
+
+    private final class Task implements Runnable, Comparable<Task> {
+
+        final int priority;
+        final long sequence;
+        final Runnable body;
+
+        Task(int priority, Runnable body) {
+            this.priority = priority;
+            this.sequence = sequencer.getAndIncrement();
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) return Integer.compare(other.priority, priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Policy policy;
+    private final int queueCapacity;
+    private final AtomicLong sequencer = new AtomicLong(0L);
+    private final int maxRunningRequests;
+
+    // guarded by "this"
+    private final PriorityQueue<Task> waitingRequests = new PriorityQueue<>();
+    private int runningRequests = 0;
+
+    ImageWorkExecutor(int threads, Policy policy, int queueCapacity) {
+        final int size = Math.max(1, threads);
+        this.maxRunningRequests = size;
+        this.policy = policy != null ? policy : Policy.QUEUE;
+        this.queueCapacity = Math.max(0, queueCapacity);
+
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        pool = new ThreadPoolExecutor(size, size, 30L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), (r) -> {
+            Thread t = new Thread(
+                () -> {
+                    try {
+                        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    } catch (Exception ignored) {}
+                    r.run();
+                },
+                "QrCodeScannerImage-" + threadIndex.incrementAndGet()
+            );
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    static Policy parsePolicy(String value) {
+        return "reject".equalsIgnoreCase(value) ? Policy.REJECT : Policy.QUEUE;
+    }
+
+    static int parsePriority(String value) {
+        if ("high".equalsIgnoreCase(value)) return PRIORITY_HIGH;
+        if ("low".equalsIgnoreCase(value)) return PRIORITY_LOW;
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * Admits a new request, or returns false when the pool is saturated under the current policy.
+     * Every admitted request must call {@link #complete} exactly once.
+     */
+    synchronized boolean submit(int priority, Runnable work) {
+        if (pool.isShutdown()) return false;
+
+        Task task = new Task(Math.max(PRIORITY_LOW, Math.min(PRIORITY_HIGH, priority)), work);
+        if (runningRequests < maxRunningRequests) {
+            runningRequests++;
+            pool.execute(task);
+            return true;
+        }
+
+        if (policy == Policy.REJECT || waitingRequests.size() >= queueCapacity) return false;
+        waitingRequests.add(task);
+        return true;
+    }
+
+    synchronized void complete() {
+        Task next = waitingRequests.poll();
+        if (next != null && !pool.isShutdown()) {
+            pool.execute(next);
+            return;
+        }
+        if (runningRequests > 0) runningRequests--;
+    }
+
+    /** Runs a continuation of already admitted work; never refused, once shut down it runs on the caller. */
+    @Override
+    public void execute(Runnable work) {
+        try {
+            if (!pool.isShutdown()) {
+                pool.execute(new Task(PRIORITY_CONTINUATION, work));
+                return;
+            }
+        } catch (RejectedExecutionException ignored) {
+            // shut down between the check and the hand-off
+        }
+        work.run();
+    }
+
+    /** Refuses new requests; running, waiting and continued work still completes. */
+    synchronized void shutdown() {
+        Task next;
+        while ((next = waitingRequests.poll()) != null) pool.execute(next);
+        pool.shutdown();
+    }
+}
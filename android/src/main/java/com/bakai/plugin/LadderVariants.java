@@ -0,0 +1,121 @@
+package com.bakai.plugin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Variant names of the still-image ladder and the choices behind them: which source a variant
+ * reads (the normalized bitmap, a {@link LumaKernel} plane, the centre crop or a pyramid crop),
+ * which planes a plan builds, and the crop geometry. {@link ImageCandidateLadder} turns these into
+ * bitmaps and inputs; nothing here touches Android types, so the corpus test selects candidates
+ * the same way the ladder does.
+ */
+final class LadderVariants {
+
+    static final int SOURCE_FILE = 0;
+    static final int SOURCE_NORMALIZED = 1;
+    static final int SOURCE_PLANE = 2;
+    static final int SOURCE_CENTER_CROP = 3;
+    static final int SOURCE_PYRAMID = 4;
+
+    static final float CENTER_CROP_FRACTION = 0.88f;
+    static final int PYRAMID_CROP_SIDE = 1024;
+
+    /** Default order: file path, normalized at 4 rotations, luma planes, centre crop, pyramid crops. */
+    static final List<String> ORDER = Collections.unmodifiableList(
+        Arrays.asList(
+            "file",
+            "normalized_0",
+            "normalized_90",
+            "normalized_180",
+            "normalized_270",
+            "boosted_0",
+            "boosted_90",
+            "boosted_270",
+            "binary_0",
+            "channel_0",
+            "inverted_0",
+            "crop_0",
+            "crop_90",
+            "pyramid_0",
+            "pyramid_1",
+            "pyramid_2"
+        )
+    );
+
+    static final class Variant {
+
+        final int source;
+        /** {@code LumaKernel.PLANE_*} for {@link #SOURCE_PLANE}, otherwise -1. */
+        final int plane;
+        /** Rotation in degrees, or the crop index for {@link #SOURCE_PYRAMID}. */
+        final int suffix;
+
+        Variant(int source, int plane, int suffix) {
+            this.source = source;
+            this.plane = plane;
+            this.suffix = suffix;
+        }
+    }
+
+    private LadderVariants() {}
+
+    /** Parses a variant name such as {@code boosted_90}; null when the name is not a ladder variant. */
+    static Variant parse(String name) {
+        if ("file".equals(name)) return new Variant(SOURCE_FILE, -1, 0);
+        int split = name.lastIndexOf('_');
+        if (split < 0) return null;
+        int suffix;
+        try {
+            suffix = Integer.parseInt(name.substring(split + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        switch (name.substring(0, split)) {
+            case "normalized":
+                return new Variant(SOURCE_NORMALIZED, -1, suffix);
+            case "boosted":
+                return new Variant(SOURCE_PLANE, LumaKernel.PLANE_STRETCHED, suffix);
+            case "binary":
+                return new Variant(SOURCE_PLANE, LumaKernel.PLANE_BINARY, suffix);
+            case "channel":
+                return new Variant(SOURCE_PLANE, LumaKernel.PLANE_CHANNEL, suffix);
+            case "inverted":
+                return new Variant(SOURCE_PLANE, LumaKernel.PLANE_INVERTED, suffix);
+            case "crop":
+                return new Variant(SOURCE_CENTER_CROP, -1, suffix);
+            case "pyramid":
+                return new Variant(SOURCE_PYRAMID, -1, suffix);
+            default:
+                return null;
+        }
+    }
+
+    /** Whether the kernel writes {@code plane}; a luma-only plan keeps just gray (for the pyramid) and inverted. */
+    static boolean buildsPlane(int plane, boolean lumaOnly) {
+        return !lumaOnly || plane == LumaKernel.PLANE_GRAY || plane == LumaKernel.PLANE_INVERTED;
+    }
+
+    static int pyramidCrops(MemoryBudget.Plan plan, boolean lumaOnly) {
+        return lumaOnly ? MemoryBudget.LUMA_PYRAMID_CROPS : plan.pyramidCrops;
+    }
+
+    /** {@code {left, top, side}} of the centre square of a {@code width x height} image, or null when it would be the whole image. */
+    static int[] centerSquare(int width, int height) {
+        int side = Math.max(1, Math.round(Math.min(width, height) * CENTER_CROP_FRACTION));
+        if (side >= width && side >= height) return null;
+        return new int[] { Math.max(0, (width - side) / 2), Math.max(0, (height - side) / 2), side };
+    }
+
+    /** Pyramid crops smaller than this side are upscaled to it. */
+    static boolean needsUpscale(int cropWidth) {
+        return cropWidth < PYRAMID_CROP_SIDE;
+    }
+
+    /** Sample size for re-reading a pyramid region of {@code regionWidth} source pixels. */
+    static int regionSampleSize(int regionWidth) {
+        return Math.max(1, Integer.highestOneBit(regionWidth / PYRAMID_CROP_SIDE));
+    }
+}
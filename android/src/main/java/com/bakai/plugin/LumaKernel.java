@@ -0,0 +1,154 @@
+package com.bakai.plugin;
+
+/**
+ * Builds every luma candidate of the still-image ladder from one read of the source pixels.
+ *
+ * A sparse sampling pass (every {@link #SAMPLE_STEP}th row and column) estimates the grey level
+ * range, the mean and which of R/G/B has the widest range. The main pass then reads the source
+ * once, in stripes of {@link #STRIPE_ROWS} rows so the stripe stays in cache, and writes all planes
+ * through 256-entry lookup tables:
+ *
+ * - gray: plain luma
+ * - stretched: luma with the 1st..99th percentile stretched to 0..255
+ * - inverted: 255 - luma, for light-on-dark codes
+ * - channel: the single colour channel with the widest range, stretched (coloured modules on
+ *   coloured backgrounds often vanish in luma but not in one channel)
+ * - binary: luma thresholded at the mean
+ */
+final class LumaKernel {
+
+    static final int PLANE_GRAY = 0;
+    static final int PLANE_STRETCHED = 1;
+    static final int PLANE_INVERTED = 2;
+    static final int PLANE_CHANNEL = 3;
+    static final int PLANE_BINARY = 4;
+    static final int PLANE_COUNT = 5;
+
+    static final int STRIPE_ROWS = 16;
+    static final int SAMPLE_STEP = 4;
+
+    /** Fills {@code out} with {@code rows} rows of ARGB pixels starting at {@code top}, {@code width} per row. */
+    interface PixelSource {
+        void read(int top, int rows, int[] out);
+    }
+
+    static final class Stats {
+
+        int low;
+        int high;
+        int mean;
+        // 0 = red, 1 = green, 2 = blue
+        int channel;
+        int channelLow;
+        int channelHigh;
+    }
+
+    private LumaKernel() {}
+
+    /** Smallest int buffer {@link #run} needs for an image {@code width} wide. */
+    static int stripeLength(int width) {
+        return width * STRIPE_ROWS;
+    }
+
+    /**
+     * Writes the requested planes ({@code planes[PLANE_*]}, null entries are skipped; each at least
+     * {@code width * height} long). {@code stripe} is scratch space of {@link #stripeLength} ints.
+     */
+    static Stats run(PixelSource source, int width, int height, int[] stripe, byte[][] planes) {
+        Stats stats = sample(source, width, height, stripe);
+
+        final byte[] stretchLut = stretchTable(stats.low, stats.high);
+        final byte[] channelLut = stretchTable(stats.channelLow, stats.channelHigh);
+        final int threshold = Math.max(80, Math.min(190, stats.mean));
+        final int channelShift = 16 - 8 * stats.channel;
+
+        final byte[] gray = planes[PLANE_GRAY];
+        final byte[] stretched = planes[PLANE_STRETCHED];
+        final byte[] inverted = planes[PLANE_INVERTED];
+        final byte[] channel = planes[PLANE_CHANNEL];
+        final byte[] binary = planes[PLANE_BINARY];
+
+        for (int top = 0; top < height; top += STRIPE_ROWS) {
+            final int rows = Math.min(STRIPE_ROWS, height - top);
+            source.read(top, rows, stripe);
+
+            final int count = rows * width;
+            final int base = top * width;
+            for (int i = 0; i < count; i++) {
+                final int c = stripe[i];
+                final int l = (((c >> 16) & 0xff) * 77 + ((c >> 8) & 0xff) * 150 + (c & 0xff) * 29) >> 8;
+                final int o = base + i;
+                if (gray != null) gray[o] = (byte) l;
+                if (stretched != null) stretched[o] = stretchLut[l];
+                if (inverted != null) inverted[o] = (byte) (255 - l);
+                if (channel != null) channel[o] = channelLut[(c >> channelShift) & 0xff];
+                if (binary != null) binary[o] = l >= threshold ? (byte) 255 : (byte) 0;
+            }
+        }
+        return stats;
+    }
+
+    static Stats sample(PixelSource source, int width, int height, int[] row) {
+        final int[] grayHistogram = new int[256];
+        final int[][] channelHistograms = new int[3][256];
+        long sum = 0L;
+        int samples = 0;
+
+        for (int y = 0; y < height; y += SAMPLE_STEP) {
+            source.read(y, 1, row);
+            for (int x = 0; x < width; x += SAMPLE_STEP) {
+                final int c = row[x];
+                final int r = (c >> 16) & 0xff;
+                final int g = (c >> 8) & 0xff;
+                final int b = c & 0xff;
+                final int l = (r * 77 + g * 150 + b * 29) >> 8;
+                grayHistogram[l]++;
+                channelHistograms[0][r]++;
+                channelHistograms[1][g]++;
+                channelHistograms[2][b]++;
+                sum += l;
+                samples++;
+            }
+        }
+
+        Stats stats = new Stats();
+        stats.mean = samples > 0 ? (int) (sum / samples) : 128;
+        stats.low = percentile(grayHistogram, samples, 0.01f);
+        stats.high = percentile(grayHistogram, samples, 0.99f);
+
+        int bestSpread = -1;
+        for (int ch = 0; ch < 3; ch++) {
+            int low = percentile(channelHistograms[ch], samples, 0.01f);
+            int high = percentile(channelHistograms[ch], samples, 0.99f);
+            if (high - low > bestSpread) {
+                bestSpread = high - low;
+                stats.channel = ch;
+                stats.channelLow = low;
+                stats.channelHigh = high;
+            }
+        }
+        return stats;
+    }
+
+    static int percentile(int[] histogram, int total, float fraction) {
+        if (total <= 0) return fraction < 0.5f ? 0 : 255;
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0L;
+        for (int v = 0; v < 256; v++) {
+            seen += histogram[v];
+            if (seen >= target && seen > 0) return v;
+        }
+        return 255;
+    }
+
+    /** Maps {@code low..high} linearly onto 0..255 and clamps outside it; identity when the range is degenerate. */
+    static byte[] stretchTable(int low, int high) {
+        byte[] lut = new byte[256];
+        int range = high - low;
+        for (int v = 0; v < 256; v++) {
+            int out = range < 8 ? v : ((v - low) * 255 + range / 2) / range;
+            lut[v] = (byte) Math.max(0, Math.min(255, out));
+        }
+        return lut;
+    }
+}
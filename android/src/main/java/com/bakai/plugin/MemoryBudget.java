@@ -0,0 +1,172 @@
+package com.bakai.plugin;
+
+/**
+ * Process-wide byte budget for still-image decoding, shared by concurrent imports like a
+ * semaphore on bytes, plus the per-call choice of working resolution and candidate set.
+ *
+ * Each call asks {@link #reserve} for a {@link Plan} sized from the source dimensions. The plan
+ * is the largest configuration that fits both what the budget has left and what the heap has free:
+ * all ladder planes at the natural working size first, then luma-only planes, then the same two at
+ * smaller sizes. When nothing fits the call waits for others to release, unless it would be the
+ * only holder, so a lone call always makes progress.
+ *
+ * A plan has no candidate concurrency: the ladder tries one variant at a time on one detector
+ * client, which runs its tasks in order anyway, and stops at the first hit. Concurrency is across
+ * calls, which the byte budget already bounds.
+ */
+final class MemoryBudget {
+
+    // normalized ARGB (4) + five NV21 ladder planes (5 * 1.5) + center crop ARGB (0.88^2 * 4)
+    static final float FULL_BYTES_PER_PIXEL = 14.6f;
+    // normalized ARGB (4) + gray and inverted NV21 planes (2 * 1.5) + center crop ARGB
+    static final float LUMA_BYTES_PER_PIXEL = 10.1f;
+    // upscaled pyramid crops, ARGB
+    static final long PYRAMID_CROP_BYTES = 1024L * 1024L * 4L;
+    static final int FULL_PYRAMID_CROPS = 3;
+    static final int LUMA_PYRAMID_CROPS = 1;
+
+    static final int MAX_WORKING_SIDE = 2200;
+    static final int MIN_WORKING_SIDE = 1200;
+    // below this even luma-only decoding is not worth trying
+    static final int FLOOR_WORKING_SIDE = 720;
+    private static final float SHRINK_STEP = 0.8f;
+
+    // share of the heap the budget may use
+    static final float HEAP_FRACTION = 1f / 3f;
+    static final float LOW_RAM_HEAP_FRACTION = 1f / 5f;
+    // share of the currently free heap a single call may take
+    static final float FREE_HEAP_FRACTION = 0.6f;
+
+    static final class Plan {
+
+        /** Longest side of the normalized working bitmap. */
+        final int maxSide;
+        /** Only the gray and inverted planes are built; boosted, binary and channel are skipped. */
+        final boolean lumaOnly;
+        final int pyramidCrops;
+        /** Power-of-two sample size to decode the source with. */
+        final int sampleSize;
+        final long bytes;
+
+        Plan(int maxSide, boolean lumaOnly, int pyramidCrops, int sampleSize, long bytes) {
+            this.maxSide = maxSide;
+            this.lumaOnly = lumaOnly;
+            this.pyramidCrops = pyramidCrops;
+            this.sampleSize = sampleSize;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long capacity;
+    // guarded by "this"
+    private long reserved = 0L;
+    private int holders = 0;
+    private long lumaOnlyPlans = 0L;
+    private long reducedPlans = 0L;
+
+    MemoryBudget(long capacity) {
+        this.capacity = Math.max(1L, capacity);
+    }
+
+    /** Budget for a heap of {@code maxHeapBytes} on a device whose memory class is {@code memoryClassMb}. */
+    static long capacityFor(long maxHeapBytes, int memoryClassMb, boolean lowRam) {
+        long heap = memoryClassMb > 0 ? Math.min(maxHeapBytes, memoryClassMb * 1024L * 1024L) : maxHeapBytes;
+        return (long) (heap * (lowRam ? LOW_RAM_HEAP_FRACTION : HEAP_FRACTION));
+    }
+
+    /**
+     * Reserves bytes for decoding a {@code sourceWidth x sourceHeight} image, or returns null when the
+     * caller should retry after other calls finish. {@code freeHeapBytes} is what the heap can still grow by.
+     */
+    synchronized Plan reserve(int sourceWidth, int sourceHeight, long freeHeapBytes) {
+        long available = Math.min(capacity - reserved, (long) (freeHeapBytes * FREE_HEAP_FRACTION));
+        Plan plan = plan(sourceWidth, sourceHeight, available);
+        if (plan == null) {
+            if (holders > 0) return null;
+            // alone: the smallest plan, even if the estimate says it will be tight
+            plan = smallest(sourceWidth, sourceHeight);
+        }
+
+        reserved += plan.bytes;
+        holders++;
+        if (plan.lumaOnly) lumaOnlyPlans++;
+        if (plan.maxSide < naturalSide(sourceWidth, sourceHeight)) reducedPlans++;
+        return plan;
+    }
+
+    /** True when {@code plan} is what the call would get without a budget: every plane at the natural size. */
+    static boolean isFull(Plan plan, int sourceWidth, int sourceHeight) {
+        return !plan.lumaOnly && plan.maxSide >= naturalSide(sourceWidth, sourceHeight);
+    }
+
+    synchronized void release(Plan plan) {
+        if (plan == null || holders == 0) return;
+        reserved = Math.max(0L, reserved - plan.bytes);
+        holders--;
+    }
+
+    /** The largest plan that fits in {@code available} bytes, or null. */
+    static Plan plan(int sourceWidth, int sourceHeight, long available) {
+        int side = naturalSide(sourceWidth, sourceHeight);
+        while (true) {
+            Plan full = sized(sourceWidth, sourceHeight, side, false);
+            if (full.bytes <= available) return full;
+            Plan luma = sized(sourceWidth, sourceHeight, side, true);
+            if (luma.bytes <= available) return luma;
+            if (side <= FLOOR_WORKING_SIDE) return null;
+            side = Math.max(FLOOR_WORKING_SIDE, Math.round(side * SHRINK_STEP));
+        }
+    }
+
+    static Plan smallest(int sourceWidth, int sourceHeight) {
+        return sized(sourceWidth, sourceHeight, Math.min(naturalSide(sourceWidth, sourceHeight), FLOOR_WORKING_SIDE), true);
+    }
+
+    /** Longest working side without a budget: sources are brought into MIN..MAX_WORKING_SIDE. */
+    static int naturalSide(int sourceWidth, int sourceHeight) {
+        int maxSide = Math.max(sourceWidth, sourceHeight);
+        int minSide = Math.min(sourceWidth, sourceHeight);
+        if (maxSide <= 0 || minSide <= 0) return MAX_WORKING_SIDE;
+        if (maxSide > MAX_WORKING_SIDE) return MAX_WORKING_SIDE;
+        if (minSide < MIN_WORKING_SIDE) return Math.min(MAX_WORKING_SIDE, Math.round(maxSide * (MIN_WORKING_SIDE / (float) minSide)));
+        return maxSide;
+    }
+
+    /** Largest power of two that still decodes the source at least {@code maxSide} long. */
+    static int sampleSizeFor(int sourceWidth, int sourceHeight, int maxSide) {
+        int sourceMax = Math.max(sourceWidth, sourceHeight);
+        int sample = 1;
+        while (sourceMax / (sample * 2) >= maxSide) sample *= 2;
+        return sample;
+    }
+
+    private static Plan sized(int sourceWidth, int sourceHeight, int maxSide, boolean lumaOnly) {
+        int sourceMax = Math.max(1, Math.max(sourceWidth, sourceHeight));
+        float scale = maxSide / (float) sourceMax;
+        long workingPixels = (long) Math.max(1f, sourceWidth * scale) * (long) Math.max(1f, sourceHeight * scale);
+
+        int sample = sampleSizeFor(sourceWidth, sourceHeight, maxSide);
+        long decodedPixels = ((long) sourceWidth / sample) * ((long) sourceHeight / sample);
+        int pyramidCrops = lumaOnly ? LUMA_PYRAMID_CROPS : FULL_PYRAMID_CROPS;
+
+        // the decoded source is released once normalized, but both exist for a moment
+        long bytes = (long) (workingPixels * (lumaOnly ? LUMA_BYTES_PER_PIXEL : FULL_BYTES_PER_PIXEL)) + decodedPixels * 4L + pyramidCrops * PYRAMID_CROP_BYTES;
+        return new Plan(maxSide, lumaOnly, pyramidCrops, sample, bytes);
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    synchronized long getReserved() {
+        return reserved;
+    }
+
+    synchronized long getLumaOnlyPlans() {
+        return lumaOnlyPlans;
+    }
+
+    synchronized long getReducedPlans() {
+        return reducedPlans;
+    }
+}
@@ -0,0 +1,56 @@
+package com.bakai.plugin;
+
+import android.graphics.Point;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payload stage run after {@code filterDecodedBarcodes} when only EMV payment codes are wanted:
+ * barcodes whose raw value is not a well-formed EMV payload with a matching CRC are dropped before
+ * they reach the bridge, and the kept ones carry their parsed fields.
+ */
+final class PaymentPayloadStage {
+
+    private static final ThreadLocal<EmvQrParser> PARSER = new ThreadLocal<EmvQrParser>() {
+        @Override
+        protected EmvQrParser initialValue() {
+            return new EmvQrParser();
+        }
+    };
+
+    final List<Barcode> barcodes;
+    /** Null when the input had no corner overrides. */
+    final List<Point[]> corners;
+    /** Parsed payload of each kept barcode (see {@link EmvQrParser#describe}). */
+    final List<Map<String, Object>> payloads;
+    final int rejected;
+
+    private PaymentPayloadStage(List<Barcode> barcodes, List<Point[]> corners, List<Map<String, Object>> payloads, int rejected) {
+        this.barcodes = barcodes;
+        this.corners = corners;
+        this.payloads = payloads;
+        this.rejected = rejected;
+    }
+
+    static PaymentPayloadStage apply(List<Barcode> decoded, List<Point[]> corners) {
+        final EmvQrParser parser = PARSER.get();
+        List<Barcode> kept = new ArrayList<>(decoded.size());
+        List<Point[]> keptCorners = corners != null ? new ArrayList<>(decoded.size()) : null;
+        List<Map<String, Object>> payloads = new ArrayList<>(decoded.size());
+        int rejected = 0;
+
+        for (int i = 0; i < decoded.size(); i++) {
+            Barcode barcode = decoded.get(i);
+            if (!parser.parse(barcode.getRawValue())) {
+                rejected++;
+                continue;
+            }
+            kept.add(barcode);
+            if (keptCorners != null) keptCorners.add(i < corners.size() ? corners.get(i) : barcode.getCornerPoints());
+            payloads.add(parser.describe());
+        }
+        return new PaymentPayloadStage(kept, keptCorners, payloads, rejected);
+    }
+}
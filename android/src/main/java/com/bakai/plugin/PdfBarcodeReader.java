@@ -0,0 +1,253 @@
+package com.bakai.plugin;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Renders PDF pages with {@link PdfRenderer} and decodes them page by page.
+ *
+ * Two page bitmaps are reused for the whole document: while the detector works on page N
+ * the next page is rendered into the other bitmap, so rendering and decoding overlap.
+ * The renderer itself is only ever used by one render task at a time.
+ *
+ * A page that fails to render or decode is still reported, with its error, so it is not mistaken
+ * for a page without codes. {@link #cancel} stops scheduling pages; the pages in flight finish and
+ * {@link Listener#onComplete} follows.
+ */
+final class PdfBarcodeReader {
+
+    static final int DEFAULT_DPI = 200;
+    private static final int MAX_PAGE_SIDE = 2400;
+    private static final int MIN_PAGE_SIDE = 800;
+    private static final int BUFFER_COUNT = 2;
+
+    interface Listener {
+        /** {@code error} is null for a page that rendered and decoded, with or without codes. */
+        void onPage(int pageIndex, int pageCount, List<Barcode> barcodes, String error);
+        void onComplete(int pageCount);
+        void onError(String message);
+    }
+
+    private static final class RenderedPage {
+
+        final int pageIndex;
+        final Bitmap bitmap;
+
+        RenderedPage(int pageIndex, Bitmap bitmap) {
+            this.pageIndex = pageIndex;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final List<Integer> requestedPages;
+    private final int dpi;
+    private final Executor executor;
+    private final BitmapPool pool;
+
+    private ParcelFileDescriptor descriptor;
+    private PdfRenderer renderer;
+    private BarcodeScanner client;
+    private Listener listener;
+    private int pageCount = 0;
+    private final List<Integer> pages = new ArrayList<>();
+
+    // pipeline state, guarded by "this"
+    private final ArrayDeque<Bitmap> freeBuffers = new ArrayDeque<>();
+    private final ArrayDeque<RenderedPage> rendered = new ArrayDeque<>();
+    private int nextToRender = 0;
+    private boolean rendering = false;
+    private boolean decoding = false;
+    private boolean finished = false;
+    private boolean cancelled = false;
+
+    PdfBarcodeReader(ContentResolver resolver, Uri uri, List<Integer> requestedPages, int dpi, Executor executor, BitmapPool pool) {
+        this.resolver = resolver;
+        this.pool = pool;
+        this.uri = uri;
+        this.requestedPages = requestedPages;
+        this.dpi = dpi > 0 ? dpi : DEFAULT_DPI;
+        this.executor = executor;
+    }
+
+    void start(Listener listener) {
+        this.listener = listener;
+        executor.execute(this::open);
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+    }
+
+    private void open() {
+        try {
+            descriptor = resolver.openFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                listener.onError("Unable to open PDF");
+                return;
+            }
+            renderer = new PdfRenderer(descriptor);
+        } catch (Exception e) {
+            closeRenderer();
+            listener.onError(e.getMessage() != null ? e.getMessage() : "Unable to open PDF");
+            return;
+        }
+
+        pageCount = renderer.getPageCount();
+        if (requestedPages == null || requestedPages.isEmpty()) {
+            for (int i = 0; i < pageCount; i++) pages.add(i);
+        } else {
+            for (Integer page : requestedPages) {
+                if (page != null && page >= 0 && page < pageCount && !pages.contains(page)) pages.add(page);
+            }
+        }
+
+        BarcodeScannerOptions scannerOptions = new BarcodeScannerOptions.Builder().setBarcodeFormats(Barcode.FORMAT_QR_CODE).build();
+        client = BarcodeScanning.getClient(scannerOptions);
+
+        synchronized (this) {
+            // placeholders; render() swaps them for pooled bitmaps of the page size
+            for (int i = 0; i < BUFFER_COUNT; i++) freeBuffers.add(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888));
+        }
+        pump();
+    }
+
+    private void pump() {
+        RenderedPage toDecode = null;
+        Bitmap renderTarget = null;
+        int renderIndex = -1;
+        boolean done = false;
+
+        synchronized (this) {
+            if (finished) return;
+
+            if (cancelled) {
+                // rendered pages nobody will decode go back with the other buffers
+                while (!rendered.isEmpty()) freeBuffers.add(rendered.poll().bitmap);
+                nextToRender = pages.size();
+            }
+            if (!rendering && nextToRender < pages.size() && !freeBuffers.isEmpty()) {
+                rendering = true;
+                renderTarget = freeBuffers.poll();
+                renderIndex = pages.get(nextToRender++);
+            }
+            if (!decoding && !rendered.isEmpty()) {
+                decoding = true;
+                toDecode = rendered.poll();
+            }
+            if (!rendering && !decoding && rendered.isEmpty() && nextToRender >= pages.size()) {
+                finished = true;
+                done = true;
+            }
+        }
+
+        if (renderTarget != null) {
+            final Bitmap target = renderTarget;
+            final int pageIndex = renderIndex;
+            executor.execute(() -> render(pageIndex, target));
+        }
+        if (toDecode != null) decode(toDecode);
+        if (done) finish();
+    }
+
+    private void render(int pageIndex, Bitmap target) {
+        Bitmap bitmap = target;
+        try (PdfRenderer.Page page = renderer.openPage(pageIndex)) {
+            float scale = dpi / 72f;
+            int width = Math.max(1, Math.round(page.getWidth() * scale));
+            int height = Math.max(1, Math.round(page.getHeight() * scale));
+
+            int maxSide = Math.max(width, height);
+            float fit = 1f;
+            if (maxSide > MAX_PAGE_SIDE) fit = MAX_PAGE_SIDE / (float) maxSide;
+            else if (maxSide < MIN_PAGE_SIDE) fit = MIN_PAGE_SIDE / (float) maxSide;
+            width = Math.max(1, Math.round(width * fit));
+            height = Math.max(1, Math.round(height * fit));
+
+            bitmap = pool.resize(target, width, height);
+            // pages are transparent by default
+            bitmap.eraseColor(Color.WHITE);
+            page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+        } catch (Exception e) {
+            synchronized (this) {
+                rendering = false;
+                freeBuffers.add(bitmap);
+            }
+            listener.onPage(pageIndex, pageCount, new ArrayList<>(), e.getMessage() != null ? e.getMessage() : "Failed to render page");
+            pump();
+            return;
+        }
+
+        synchronized (this) {
+            rendering = false;
+            rendered.add(new RenderedPage(pageIndex, bitmap));
+        }
+        pump();
+    }
+
+    private void decode(RenderedPage page) {
+        client
+            .process(InputImage.fromBitmap(page.bitmap, 0))
+            .addOnCompleteListener(executor, (task) -> {
+                List<Barcode> decoded = new ArrayList<>();
+                String error = null;
+                if (!task.isSuccessful()) {
+                    Exception e = task.getException();
+                    error = e != null && e.getMessage() != null ? e.getMessage() : "Failed to decode page";
+                } else if (task.getResult() != null) {
+                    for (Barcode barcode : task.getResult()) {
+                        if (barcode != null && barcode.getRawValue() != null && !barcode.getRawValue().trim().isEmpty()) {
+                            decoded.add(barcode);
+                        }
+                    }
+                }
+
+                synchronized (this) {
+                    decoding = false;
+                    freeBuffers.add(page.bitmap);
+                }
+                listener.onPage(page.pageIndex, pageCount, decoded, error);
+                pump();
+            });
+    }
+
+    private void finish() {
+        synchronized (this) {
+            for (Bitmap bitmap : freeBuffers) pool.release(bitmap);
+            freeBuffers.clear();
+        }
+        try {
+            client.close();
+        } catch (Exception ignored) {}
+        closeRenderer();
+
+        listener.onComplete(pageCount);
+    }
+
+    private void closeRenderer() {
+        if (renderer != null) {
+            try {
+                renderer.close();
+            } catch (Exception ignored) {}
+        }
+        if (descriptor != null) {
+            try {
+                descriptor.close();
+            } catch (Exception ignored) {}
+        }
+    }
+}
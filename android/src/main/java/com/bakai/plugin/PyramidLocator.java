@@ -0,0 +1,301 @@
+package com.bakai.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds small QR codes in a still image so they can be decoded from an upscaled crop.
+ *
+ * A luma pyramid is built incrementally (each level is a 2x box downscale of the previous one) and
+ * every level is scanned for the 1:1:3:1:1 run pattern of QR finder patterns, confirmed by a vertical
+ * cross-check. Hits from all levels are merged in full-image coordinates, grouped into code-sized
+ * regions and ranked by how many finder hits support them.
+ */
+final class PyramidLocator {
+
+    static final int DEFAULT_MAX_REGIONS = 3;
+    private static final int MAX_LEVELS = 4;
+    private static final int MIN_LEVEL_SIDE = 96;
+    // regions this large are already covered by the full-image candidates
+    private static final float MAX_REGION_FRACTION = 0.6f;
+
+    static final class Region {
+
+        final int left;
+        final int top;
+        final int size;
+        final float score;
+
+        Region(int left, int top, int size, float score) {
+            this.left = left;
+            this.top = top;
+            this.size = size;
+            this.score = score;
+        }
+    }
+
+    private static final class Finder {
+
+        float x;
+        float y;
+        float module;
+        int hits;
+
+        Finder(float x, float y, float module) {
+            this.x = x;
+            this.y = y;
+            this.module = module;
+            this.hits = 1;
+        }
+    }
+
+    private PyramidLocator() {}
+
+    static List<Region> locate(byte[] luma, int width, int height, int maxRegions) {
+        List<Finder> finders = new ArrayList<>();
+        if (luma == null || width <= 0 || height <= 0 || luma.length < width * height) return new ArrayList<>();
+
+        byte[] level = luma;
+        int levelWidth = width;
+        int levelHeight = height;
+        for (int l = 0; l < MAX_LEVELS; l++) {
+            scanLevel(level, levelWidth, levelHeight, 1 << l, finders);
+
+            if (Math.min(levelWidth, levelHeight) / 2 < MIN_LEVEL_SIDE) break;
+            int nextWidth = levelWidth / 2;
+            int nextHeight = levelHeight / 2;
+            level = downscale(level, levelWidth, nextWidth, nextHeight);
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+
+        return rank(finders, width, height, maxRegions);
+    }
+
+    /** 2x2 box filter; {@code src} is {@code srcWidth} wide. */
+    static byte[] downscale(byte[] src, int srcWidth, int dstWidth, int dstHeight) {
+        byte[] dst = new byte[dstWidth * dstHeight];
+        for (int y = 0; y < dstHeight; y++) {
+            int row0 = (y * 2) * srcWidth;
+            int row1 = row0 + srcWidth;
+            int out = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int sx = x * 2;
+                int sum = (src[row0 + sx] & 0xff) + (src[row0 + sx + 1] & 0xff) + (src[row1 + sx] & 0xff) + (src[row1 + sx + 1] & 0xff);
+                dst[out + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+        return dst;
+    }
+
+    private static void scanLevel(byte[] px, int width, int height, int scale, List<Finder> finders) {
+        long sum = 0L;
+        for (int i = 0; i < width * height; i++) sum += px[i] & 0xff;
+        final int threshold = (int) (sum / Math.max(1, width * height));
+
+        // finer levels are sampled sparser, coarse levels see every row
+        final int rowStep = scale == 1 ? 2 : 1;
+        final int[] runs = new int[5];
+
+        for (int y = 0; y < height; y += rowStep) {
+            int state = 0;
+            runs[0] = runs[1] = runs[2] = runs[3] = runs[4] = 0;
+            int base = y * width;
+
+            for (int x = 0; x < width; x++) {
+                boolean dark = (px[base + x] & 0xff) < threshold;
+                if (dark) {
+                    if ((state & 1) == 1) state++;
+                    runs[state]++;
+                } else if ((state & 1) == 0) {
+                    if (state == 4) {
+                        if (isFinderRatio(runs)) {
+                            int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+                            int cx = x - runs[4] - runs[3] - runs[2] / 2;
+                            float vertical = crossCheckVertical(px, width, height, threshold, cx, y, runs[2], total);
+                            if (vertical > 0f) {
+                                addFinder(finders, (cx + 0.5f) * scale, vertical * scale, total / 7f * scale);
+                            }
+                            state = 0;
+                            runs[0] = runs[1] = runs[2] = runs[3] = runs[4] = 0;
+                        } else {
+                            runs[0] = runs[2];
+                            runs[1] = runs[3];
+                            runs[2] = runs[4];
+                            runs[3] = 1;
+                            runs[4] = 0;
+                            state = 3;
+                        }
+                    } else {
+                        runs[++state]++;
+                    }
+                } else {
+                    runs[state]++;
+                }
+            }
+        }
+    }
+
+    static boolean isFinderRatio(int[] runs) {
+        int total = 0;
+        for (int r : runs) {
+            if (r == 0) return false;
+            total += r;
+        }
+        if (total < 7) return false;
+
+        float module = total / 7f;
+        float variance = module / 2f;
+        return (
+            Math.abs(module - runs[0]) < variance &&
+            Math.abs(module - runs[1]) < variance &&
+            Math.abs(3f * module - runs[2]) < 3f * variance &&
+            Math.abs(module - runs[3]) < variance &&
+            Math.abs(module - runs[4]) < variance
+        );
+    }
+
+    /** Returns the vertical centre of the pattern at column {@code cx}, or -1 when it does not match. */
+    private static float crossCheckVertical(byte[] px, int width, int height, int threshold, int cx, int cy, int maxCenter, int horizontalTotal) {
+        if (cx < 0 || cx >= width) return -1f;
+        int[] runs = new int[5];
+
+        int y = cy;
+        while (y >= 0 && (px[y * width + cx] & 0xff) < threshold) {
+            runs[2]++;
+            y--;
+        }
+        if (y < 0) return -1f;
+        while (y >= 0 && (px[y * width + cx] & 0xff) >= threshold && runs[1] <= maxCenter) {
+            runs[1]++;
+            y--;
+        }
+        if (y < 0 || runs[1] > maxCenter) return -1f;
+        while (y >= 0 && (px[y * width + cx] & 0xff) < threshold && runs[0] <= maxCenter) {
+            runs[0]++;
+            y--;
+        }
+        if (runs[0] > maxCenter) return -1f;
+
+        y = cy + 1;
+        while (y < height && (px[y * width + cx] & 0xff) < threshold) {
+            runs[2]++;
+            y++;
+        }
+        if (y >= height) return -1f;
+        while (y < height && (px[y * width + cx] & 0xff) >= threshold && runs[3] < maxCenter) {
+            runs[3]++;
+            y++;
+        }
+        if (y >= height || runs[3] >= maxCenter) return -1f;
+        while (y < height && (px[y * width + cx] & 0xff) < threshold && runs[4] < maxCenter) {
+            runs[4]++;
+            y++;
+        }
+        if (runs[4] >= maxCenter) return -1f;
+
+        int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+        if (5 * Math.abs(total - horizontalTotal) >= 2 * horizontalTotal) return -1f;
+        if (!isFinderRatio(runs)) return -1f;
+
+        return (y - runs[4] - runs[3]) - runs[2] / 2f;
+    }
+
+    private static void addFinder(List<Finder> finders, float x, float y, float module) {
+        for (Finder f : finders) {
+            float ratio = f.module > module ? f.module / module : module / f.module;
+            if (ratio > 1.6f) continue;
+            float reach = Math.max(f.module, module) * 3.5f;
+            if (Math.abs(f.x - x) <= reach && Math.abs(f.y - y) <= reach) {
+                // running average keeps the merged centre stable
+                f.x = (f.x * f.hits + x) / (f.hits + 1);
+                f.y = (f.y * f.hits + y) / (f.hits + 1);
+                f.module = (f.module * f.hits + module) / (f.hits + 1);
+                f.hits++;
+                return;
+            }
+        }
+        finders.add(new Finder(x, y, module));
+    }
+
+    private static List<Region> rank(List<Finder> finders, int width, int height, int maxRegions) {
+        List<Region> regions = new ArrayList<>();
+        int limit = maxRegions > 0 ? maxRegions : DEFAULT_MAX_REGIONS;
+        int maxSide = Math.round(Math.min(width, height) * MAX_REGION_FRACTION);
+
+        boolean[] used = new boolean[finders.size()];
+        List<Region> scored = new ArrayList<>();
+
+        // strongest finder first, then pull in finders of similar module size that fit in one symbol
+        while (true) {
+            int seed = -1;
+            for (int i = 0; i < finders.size(); i++) {
+                if (used[i]) continue;
+                if (seed < 0 || finders.get(i).hits > finders.get(seed).hits) seed = i;
+            }
+            if (seed < 0) break;
+
+            Finder s = finders.get(seed);
+            used[seed] = true;
+
+            float minX = s.x, maxX = s.x, minY = s.y, maxY = s.y;
+            float module = s.module;
+            int members = 1;
+            float score = s.hits;
+            // version 10 is 57 modules wide; finder centres are at most ~50 modules apart
+            float reach = s.module * 52f;
+
+            for (int i = 0; i < finders.size(); i++) {
+                if (used[i]) continue;
+                Finder f = finders.get(i);
+                float ratio = f.module > s.module ? f.module / s.module : s.module / f.module;
+                if (ratio > 1.5f) continue;
+                if (Math.abs(f.x - s.x) > reach || Math.abs(f.y - s.y) > reach) continue;
+
+                used[i] = true;
+                minX = Math.min(minX, f.x);
+                maxX = Math.max(maxX, f.x);
+                minY = Math.min(minY, f.y);
+                maxY = Math.max(maxY, f.y);
+                module += f.module;
+                score += f.hits;
+                members++;
+            }
+            module /= members;
+
+            // a lone finder says nothing about where the rest of the symbol is, so look all around it
+            float margin = members >= 3 ? module * 6f : module * 30f;
+            int side = Math.round(Math.max(maxX - minX, maxY - minY) + 2f * margin);
+            if (members >= 3) score *= 2f;
+            if (side > maxSide) continue;
+
+            int cx = Math.round((minX + maxX) / 2f);
+            int cy = Math.round((minY + maxY) / 2f);
+            side = Math.min(side, Math.min(width, height));
+            int left = Math.max(0, Math.min(width - side, cx - side / 2));
+            int top = Math.max(0, Math.min(height - side, cy - side / 2));
+            scored.add(new Region(left, top, side, score));
+        }
+
+        scored.sort((a, b) -> Float.compare(b.score, a.score));
+        for (Region r : scored) {
+            if (regions.size() >= limit) break;
+            boolean overlapping = false;
+            for (Region kept : regions) {
+                if (overlapRatio(kept, r) > 0.5f) {
+                    overlapping = true;
+                    break;
+                }
+            }
+            if (!overlapping) regions.add(r);
+        }
+        return regions;
+    }
+
+    private static float overlapRatio(Region a, Region b) {
+        int ix = Math.max(0, Math.min(a.left + a.size, b.left + b.size) - Math.max(a.left, b.left));
+        int iy = Math.max(0, Math.min(a.top + a.size, b.top + b.size) - Math.max(a.top, b.top));
+        float smaller = Math.min((float) a.size * a.size, (float) b.size * b.size);
+        return smaller > 0f ? (ix * (float) iy) / smaller : 0f;
+    }
+}
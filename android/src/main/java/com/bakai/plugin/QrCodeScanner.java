@@ -2,14 +2,19 @@ package com.bakai.plugin;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Size;
 import android.view.Surface;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.core.TorchState;
 import androidx.camera.core.ZoomState;
@@ -18,33 +23,73 @@ import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.Observer;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
 import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class QrCodeScanner {
 
     private final Context context;
+    private final BarcodeScannerOptions detectorOptions;
+    // the first frame slot and the warm-up use this client; further slots get their own (see takeFrame)
     private final BarcodeScanner scanner;
+    // guarded by detectorTasks
+    private final List<BarcodeScanner> slotDetectors = new ArrayList<>();
 
-    private ExecutorService cameraExecutor;
+    // shared across sessions, never shut down (see AnalysisExecutor)
+    private final AnalysisExecutor analysisExecutor;
     private final Executor mainExecutor;
+    // ML Kit result listeners run here, not on the main thread; the time they take is what the main thread no longer spends
+    private final Executor resultExecutor;
+    private final AtomicLong resultTasks = new AtomicLong(0L);
+    private final AtomicLong resultNanos = new AtomicLong(0L);
+
+    // detector calls still running; stop() defers closing the detector until they finish
+    private final AtomicInteger detectorTasks = new AtomicInteger(0);
+    private boolean detectorClosed = false;
+    private boolean usedPrimaryDetector = false;
+
+    // running/paused/stopped state and frame admission (see AnalysisPipeline); ML Kit runs one
+    // client's tasks in order, so every frame slot beyond the first brings its own detector client,
+    // which costs memory and CPU, hence opt-in
+    static final int DEFAULT_PIPELINE_DEPTH = 1;
+    private final AnalysisPipeline pipeline = new AnalysisPipeline(DEFAULT_PIPELINE_DEPTH);
+    // per-frame buffers, recycled once a frame has finished
+    private final ConcurrentLinkedQueue<Frame> spareFrames = new ConcurrentLinkedQueue<>();
 
     private ProcessCameraProvider provider;
-    private Camera camera;
+    // requested early by prepare(); start() reuses it
+    private volatile ListenableFuture<ProcessCameraProvider> providerFuture;
+    // guarded by "this"
+    private boolean prepareStarted = false;
+    private long preparedInMs = -1L;
+    private final List<PrepareCallback> prepareWaiters = new ArrayList<>();
+    private static final int WARMUP_FRAME_WIDTH = 320;
+    private static final int WARMUP_FRAME_HEIGHT = 240;
+    private volatile Camera camera;
     private ImageAnalysis analysis;
     private Preview preview;
 
-    private volatile boolean paused = false;
+    // optional audit trail, appended for every emitted barcode
+    private volatile ScanJournal journal = null;
 
     // zoom
     private volatile Float pendingZoomRatio = null;
@@ -54,22 +99,46 @@ public class QrCodeScanner {
     private ImageAnalysis.Analyzer analyzer;
     private boolean analyzerAttached = false;
 
-    // MLKit guard
-    private volatile boolean processing = false;
+    // throttle, success cooldown and auto-zoom decisions (see AnalysisPolicy)
+    private final AnalysisPolicy policy = new AnalysisPolicy(SystemClock::elapsedRealtimeNanos);
 
-    // perf throttle
-    private volatile long lastAnalyzeAtMs = 0L;
-    private volatile long cooldownUntilMs = 0L;
-    private static final long ANALYZE_INTERVAL_MS = 70L;
-    private static final long SUCCESS_COOLDOWN_MS = 350L;
+    // results JS has not acknowledged yet (see AckWindow); off unless startScan asks for it
+    private final AckWindow<Result> ackWindow = new AckWindow<>();
+    // with a full window: true keeps analyzing at the slow rate, false stops analyzing until an ack
+    private volatile boolean slowWhenUnacknowledged = false;
 
-    // adaptive zoom for difficult/blurred QRs
-    private volatile int consecutiveDecodeMisses = 0;
-    private volatile long lastAutoZoomAtMs = 0L;
-    private static final int AUTO_ZOOM_MISS_THRESHOLD = 8;
-    private static final long AUTO_ZOOM_INTERVAL_MS = 500L;
-    private static final float AUTO_ZOOM_STEP = 0.18f;
-    private static final float AUTO_ZOOM_SOFT_MAX = 3.0f;
+    // only EMV payment payloads with a valid CRC are emitted (see PaymentPayloadStage)
+    private volatile boolean paymentPayloads = false;
+    private final AtomicLong paymentRejected = new AtomicLong(0L);
+
+    // compares each frame with the previous one so a static scene is analyzed at the idle rate; null when off
+    private volatile SceneChangeDetector sceneDetector = null;
+    private final AtomicLong framesSkippedIdle = new AtomicLong(0L);
+
+    // structured-append parts are collected here instead of being emitted one by one; null when off
+    private volatile StructuredAppendBuffer structuredAppend = null;
+
+    // optional dump of analysis frames for offline replay (see FrameReplay)
+    private final AtomicReference<FrameRecorder> recorder = new AtomicReference<>(null);
+
+    // Camera2 capture settings for scanning instead of photography (see ScanProfile)
+    private volatile boolean scanProfile = false;
+
+    // startup milestones, also emitted as async trace sections "QrScan.<milestone>" starting at start()
+    private final ScanTimeline timeline = new ScanTimeline(SystemClock::elapsedRealtimeNanos);
+    private int timelineCookie = 0;
+    private boolean startedWarm = false;
+    private PreviewView timelinePreviewView = null;
+    private Observer<PreviewView.StreamState> streamObserver = null;
+
+    // two-stage analysis: locate on a downsampled copy, decode only crops of the full frame
+    private volatile boolean twoStage = true;
+    private static final int LOCATE_MAX_SIDE = 640;
+    private static final int MAX_CROPS_PER_FRAME = 2;
+    // codes too small to be located at low resolution still get a full-frame pass now and then
+    private static final int FULL_FRAME_EVERY = 6;
+    // analyze() may run on several pool threads at once (analysisThreads > 1)
+    private final AtomicInteger framesSinceFullFrame = new AtomicInteger(0);
 
     // zoom observer
     private LifecycleOwner lastOwner = null;
@@ -104,35 +173,48 @@ public class QrCodeScanner {
         }
     };
 
+    public interface PrepareCallback {
+        void onPrepared(long elapsedMs);
+    }
+
     public interface Callback {
-        void onBarcodes(List<Barcode> barcodes);
+        /**
+         * {@code cornerPoints} overrides each barcode's own corner points when not null. {@code payments}
+         * holds the parsed EMV payload of each barcode when only payment codes are emitted, else null.
+         * {@code eventId} is what {@link #acknowledge} takes, or 0 when flow control is off.
+         */
+        void onBarcodes(List<Barcode> barcodes, List<Point[]> cornerPoints, List<Map<String, Object>> payments, long eventId);
         void onError(String message);
         void onZoomReady(float minRatio, float maxRatio, float currentRatio);
+        void onScanProfile(Map<String, Object> applied);
+        /** Startup milestones in ms since {@code start}, sent once the first barcode is emitted. */
+        void onTimeline(Map<String, Object> timeline);
+        /** A structured-append set completed (see {@link StructuredAppendBuffer.Completed#describe}). */
+        void onStructuredAppend(Map<String, Object> completed);
     }
 
     public QrCodeScanner(Context context) {
+        this(context, AnalysisExecutor.DEFAULT_THREADS);
+    }
+
+    public QrCodeScanner(Context context, int analysisThreads) {
         this.context = context.getApplicationContext();
 
-        BarcodeScannerOptions options = new BarcodeScannerOptions.Builder().setBarcodeFormats(Barcode.FORMAT_QR_CODE).enableAllPotentialBarcodes().build();
+        detectorOptions = new BarcodeScannerOptions.Builder().setBarcodeFormats(Barcode.FORMAT_QR_CODE).enableAllPotentialBarcodes().build();
 
-        scanner = BarcodeScanning.getClient(options);
+        scanner = BarcodeScanning.getClient(detectorOptions);
 
-        cameraExecutor = Executors.newSingleThreadExecutor(
-            new ThreadFactory() {
-                @Override
-                public Thread newThread(Runnable r) {
-                    return new Thread(
-                        () -> {
-                            try {
-                                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_MORE_FAVORABLE);
-                            } catch (Exception ignored) {}
-                            r.run();
-                        },
-                        "QrCodeScannerAnalysis"
-                    );
+        analysisExecutor = AnalysisExecutor.shared(analysisThreads);
+        resultExecutor = (work) ->
+            analysisExecutor.execute(() -> {
+                long startedAt = SystemClock.elapsedRealtimeNanos();
+                try {
+                    work.run();
+                } finally {
+                    resultNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - startedAt);
+                    resultTasks.incrementAndGet();
                 }
-            }
-        );
+            });
 
         mainExecutor = ContextCompat.getMainExecutor(this.context);
     }
@@ -143,17 +225,16 @@ public class QrCodeScanner {
 
         lastOwner = owner;
         lastCallback = callback;
+        beginTimeline();
 
-        if (cameraExecutor == null || cameraExecutor.isShutdown()) {
-            cameraExecutor = Executors.newSingleThreadExecutor();
-        }
-
-        final ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(context);
+        final ListenableFuture<ProcessCameraProvider> prepared = providerFuture;
+        final ListenableFuture<ProcessCameraProvider> future = prepared != null ? prepared : ProcessCameraProvider.getInstance(context);
 
         future.addListener(
             () -> {
                 try {
                     provider = future.get();
+                    markTimeline(ScanTimeline.PROVIDER_READY);
 
                     Size targetSize;
                     switch (resolution) {
@@ -171,7 +252,15 @@ public class QrCodeScanner {
                         ? CameraSelector.DEFAULT_FRONT_CAMERA
                         : CameraSelector.DEFAULT_BACK_CAMERA;
 
-                    preview = new Preview.Builder().build();
+                    Preview.Builder previewBuilder = new Preview.Builder();
+                    ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder();
+                    ScanProfile profile = scanProfile ? ScanProfile.resolve(provider, selector) : null;
+                    if (profile != null) {
+                        profile.applyTo(previewBuilder);
+                        profile.applyTo(analysisBuilder);
+                    }
+
+                    preview = previewBuilder.build();
                     preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
                     int rotation = Surface.ROTATION_0;
@@ -179,92 +268,91 @@ public class QrCodeScanner {
                         if (previewView.getDisplay() != null) rotation = previewView.getDisplay().getRotation();
                     } catch (Exception ignored) {}
 
-                    analysis = new ImageAnalysis.Builder()
+                    analysis = analysisBuilder
                         .setTargetResolution(targetSize)
                         .setTargetRotation(rotation)
                         .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                         .setImageQueueDepth(1)
                         .build();
 
-                    processing = false;
-                    lastAnalyzeAtMs = 0L;
-                    cooldownUntilMs = 0L;
-                    consecutiveDecodeMisses = 0;
-                    lastAutoZoomAtMs = 0L;
+                    policy.reset();
+                    ackWindow.reset();
+                    framesSinceFullFrame.set(0);
 
                     analyzer = (imageProxy) -> {
+                        markTimeline(ScanTimeline.FIRST_ANALYZED_FRAME);
+                        Frame frame = null;
                         try {
-                            if (paused || imageProxy.getImage() == null) {
+                            if (!pipeline.isRunning() || imageProxy.getImage() == null) {
                                 imageProxy.close();
                                 return;
                             }
 
-                            final long now = SystemClock.elapsedRealtime();
+                            // every delivered frame is recorded, so a replay sees what the throttle saw
+                            record(imageProxy);
+
+                            // every frame is compared, so motion restores the full rate on the very next frame
+                            final SceneChangeDetector scene = sceneDetector;
+                            if (scene != null) {
+                                ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+                                if (scene.update(luma.getBuffer(), luma.getRowStride(), imageProxy.getWidth(), imageProxy.getHeight())) policy.onSceneChanged();
+                            }
 
-                            if (now < cooldownUntilMs) {
+                            final boolean blocked = ackWindow.isBlocked();
+                            if (blocked && !slowWhenUnacknowledged) {
+                                ackWindow.countSkippedFrame();
                                 imageProxy.close();
                                 return;
                             }
-
-                            if (ANALYZE_INTERVAL_MS > 0 && (now - lastAnalyzeAtMs) < ANALYZE_INTERVAL_MS) {
+                            if (blocked ? !policy.isDueWhileBlocked() : !policy.isDue(pipeline.depth())) {
                                 imageProxy.close();
                                 return;
                             }
-
-                            if (processing) {
+                            if (scene != null && policy.isIdle() && !policy.isDueWhileIdle()) {
+                                framesSkippedIdle.incrementAndGet();
                                 imageProxy.close();
                                 return;
                             }
 
-                            processing = true;
-                            lastAnalyzeAtMs = now;
-
-                            InputImage inputImage = InputImage.fromMediaImage(
-                                imageProxy.getImage(),
-                                imageProxy.getImageInfo().getRotationDegrees()
-                            );
-
-                            scanner
-                                .process(inputImage)
-                                .addOnSuccessListener((barcodes) -> {
-                                    List<Barcode> decoded = filterDecodedBarcodes(barcodes);
-                                    if (!decoded.isEmpty()) {
-                                        consecutiveDecodeMisses = 0;
-                                        cooldownUntilMs = SystemClock.elapsedRealtime() + SUCCESS_COOLDOWN_MS;
-                                        callback.onBarcodes(decoded);
-                                        return;
-                                    }
-
-                                    consecutiveDecodeMisses++;
-                                    maybeAutoZoom();
-                                })
-                                .addOnFailureListener((e) -> {
-                                    consecutiveDecodeMisses++;
-                                    maybeAutoZoom();
-                                    callback.onError(e != null ? String.valueOf(e.getMessage()) : "Unknown error");
-                                })
-                                .addOnCompleteListener((t) -> {
-                                    try {
-                                        imageProxy.close();
-                                    } catch (Exception ignored) {}
-                                    processing = false;
-                                });
+                            final long seq = pipeline.tryBegin();
+                            if (seq < 0) {
+                                imageProxy.close();
+                                return;
+                            }
+                            policy.markAnalyzed();
+                            frame = takeFrame(seq);
+
+                            final int factor = twoStage ? locateFactor(imageProxy.getWidth(), imageProxy.getHeight()) : 1;
+                            if (factor < 2 || framesSinceFullFrame.incrementAndGet() >= FULL_FRAME_EVERY) {
+                                framesSinceFullFrame.set(0);
+                                decodeFullFrame(imageProxy, frame, callback);
+                            } else {
+                                locateAndDecode(imageProxy, frame, factor, callback);
+                            }
                         } catch (Exception e) {
                             try {
                                 imageProxy.close();
                             } catch (Exception ignored) {}
-                            processing = false;
+                            if (frame != null) releaseFrame(frame);
                             callback.onError(e.getMessage() != null ? e.getMessage() : "Unknown error");
                         }
                     };
 
-                    analysis.setAnalyzer(cameraExecutor, analyzer);
+                    analysis.setAnalyzer(analysisExecutor, analyzer);
                     analyzerAttached = true;
 
-                    provider.unbindAll();
-                    camera = provider.bindToLifecycle(owner, selector, preview, analysis);
+                    Trace.beginSection("QrScan.bindToLifecycle");
+                    try {
+                        provider.unbindAll();
+                        camera = provider.bindToLifecycle(owner, selector, preview, analysis);
+                    } finally {
+                        Trace.endSection();
+                    }
+                    markTimeline(ScanTimeline.USE_CASES_BOUND);
+                    observePreviewStream(owner, previewView);
 
                     observeZoomState(owner, callback);
+                    if (profile != null) callback.onScanProfile(profile.describe());
 
                     // ✅ если zoom уже просили раньше — попробуем применить сразу
                     if (pendingZoomRatio != null) {
@@ -279,6 +367,432 @@ public class QrCodeScanner {
         );
     }
 
+    @SuppressLint("UnsafeOptInUsageError")
+    private void decodeFullFrame(ImageProxy imageProxy, Frame frame, Callback callback) {
+        final InputImage inputImage;
+        if (pipeline.depth() > 1) {
+            // CameraX delivers no new frame while this one is open, so a deeper pipeline decodes a luma copy
+            final int width = imageProxy.getWidth();
+            final int height = imageProxy.getHeight();
+            final int length = FrameCrops.nv21Length(width, height);
+            if (frame.luma == null || frame.luma.length < length) frame.luma = new byte[length];
+            ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+            FrameCrops.copyPlane(luma.getBuffer(), luma.getRowStride(), width, height, frame.luma);
+            Arrays.fill(frame.luma, width * height, length, (byte) 128);
+            inputImage = InputImage.fromByteArray(frame.luma, width, height, imageProxy.getImageInfo().getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+            imageProxy.close();
+        } else {
+            inputImage = InputImage.fromMediaImage(imageProxy.getImage(), imageProxy.getImageInfo().getRotationDegrees());
+        }
+
+        detect(frame, inputImage)
+            .addOnSuccessListener(resultExecutor, (barcodes) -> {
+                // before emit, which may send the timeline with the first barcode
+                markTimeline(ScanTimeline.FIRST_DETECTOR_RESULT);
+                List<Barcode> decoded = filterDecodedBarcodes(barcodes);
+                if (!decoded.isEmpty()) {
+                    emit(decoded, null, frame, callback);
+                    return;
+                }
+
+                onMiss();
+            })
+            .addOnFailureListener(resultExecutor, (e) -> {
+                markTimeline(ScanTimeline.FIRST_DETECTOR_RESULT);
+                onMiss();
+                callback.onError(e != null ? String.valueOf(e.getMessage()) : "Unknown error");
+            })
+            .addOnCompleteListener(resultExecutor, (t) -> {
+                try {
+                    imageProxy.close();
+                } catch (Exception ignored) {}
+                releaseFrame(frame);
+            });
+    }
+
+    /**
+     * Stage one runs the detector on a box-filtered copy {@code factor} times smaller. Codes it can
+     * already read are emitted; codes it only sees as potential barcodes are cropped from the
+     * full-resolution luma and decoded in stage two. Frames without candidates cost one small pass.
+     */
+    private void locateAndDecode(ImageProxy imageProxy, Frame frame, int factor, Callback callback) {
+        final int width = imageProxy.getWidth();
+        final int height = imageProxy.getHeight();
+        final int rotation = imageProxy.getImageInfo().getRotationDegrees();
+
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        if (frame.luma == null || frame.luma.length < width * height) frame.luma = new byte[width * height];
+        FrameCrops.copyPlane(luma.getBuffer(), luma.getRowStride(), width, height, frame.luma);
+        // everything below works on the copy, so the camera can reuse the buffer right away
+        imageProxy.close();
+
+        final int locateWidth = (width / factor) & ~1;
+        final int locateHeight = (height / factor) & ~1;
+        final int locateLength = FrameCrops.nv21Length(locateWidth, locateHeight);
+        if (frame.locate == null || frame.locate.length < locateLength) frame.locate = new byte[locateLength];
+        if (frame.rowSums == null || frame.rowSums.length < locateWidth) frame.rowSums = new int[locateWidth];
+        FrameCrops.downsample(frame.luma, width, factor, frame.locate, locateWidth, locateHeight, frame.rowSums);
+        Arrays.fill(frame.locate, locateWidth * locateHeight, locateLength, (byte) 128);
+
+        detect(frame, InputImage.fromByteArray(frame.locate, locateWidth, locateHeight, 0, InputImage.IMAGE_FORMAT_NV21))
+            .addOnSuccessListener(resultExecutor, (barcodes) -> {
+                markTimeline(ScanTimeline.FIRST_DETECTOR_RESULT);
+                List<Barcode> decoded = new ArrayList<>();
+                List<Point[]> corners = new ArrayList<>();
+                List<int[]> crops = new ArrayList<>();
+
+                if (barcodes != null) {
+                    for (Barcode barcode : barcodes) {
+                        if (barcode == null) continue;
+                        if (hasPayload(barcode)) {
+                            decoded.add(barcode);
+                            corners.add(toFrame(barcode.getCornerPoints(), factor, 0, 0, width, height, rotation));
+                            continue;
+                        }
+                        Rect box = barcode.getBoundingBox();
+                        if (box != null && crops.size() < MAX_CROPS_PER_FRAME) {
+                            crops.add(FrameCrops.cropFor(box.left, box.top, box.right, box.bottom, factor, width, height));
+                        }
+                    }
+                }
+
+                if (!decoded.isEmpty()) {
+                    emit(decoded, corners, frame, callback);
+                    releaseFrame(frame);
+                } else if (crops.isEmpty()) {
+                    onMiss();
+                    releaseFrame(frame);
+                } else {
+                    decodeCrop(crops, 0, width, height, rotation, frame, callback);
+                }
+            })
+            .addOnFailureListener(resultExecutor, (e) -> {
+                markTimeline(ScanTimeline.FIRST_DETECTOR_RESULT);
+                onMiss();
+                releaseFrame(frame);
+                callback.onError(e != null ? String.valueOf(e.getMessage()) : "Unknown error");
+            })
+            .addOnCanceledListener(resultExecutor, () -> releaseFrame(frame));
+    }
+
+    private void decodeCrop(List<int[]> crops, int index, int width, int height, int rotation, Frame frame, Callback callback) {
+        // a newer frame already answered, or the scanner paused: the remaining crops cannot be delivered
+        if (index >= crops.size() || !pipeline.isCurrent(frame.seq)) {
+            onMiss();
+            releaseFrame(frame);
+            return;
+        }
+
+        final int[] crop = crops.get(index);
+        final int length = FrameCrops.nv21Length(crop[2], crop[3]);
+        if (frame.crop == null || frame.crop.length < length) frame.crop = new byte[length];
+        FrameCrops.cropToNv21(frame.luma, width, crop[0], crop[1], crop[2], crop[3], frame.crop);
+
+        detect(frame, InputImage.fromByteArray(frame.crop, crop[2], crop[3], 0, InputImage.IMAGE_FORMAT_NV21))
+            .addOnSuccessListener(resultExecutor, (barcodes) -> {
+                List<Barcode> decoded = filterDecodedBarcodes(barcodes);
+                if (decoded.isEmpty()) {
+                    decodeCrop(crops, index + 1, width, height, rotation, frame, callback);
+                    return;
+                }
+
+                List<Point[]> corners = new ArrayList<>();
+                for (Barcode barcode : decoded) corners.add(toFrame(barcode.getCornerPoints(), 1, crop[0], crop[1], width, height, rotation));
+                emit(decoded, corners, frame, callback);
+                releaseFrame(frame);
+            })
+            .addOnFailureListener(resultExecutor, (e) -> decodeCrop(crops, index + 1, width, height, rotation, frame, callback))
+            .addOnCanceledListener(resultExecutor, () -> releaseFrame(frame));
+    }
+
+    /**
+     * Frames are only created while fewer than {@code depth} are in flight and none is spare, so
+     * there is one per pipeline slot; each holds its own detector client so slots decode in parallel.
+     */
+    private Frame takeFrame(long seq) {
+        Frame frame = spareFrames.poll();
+        if (frame == null) {
+            frame = new Frame();
+            synchronized (detectorTasks) {
+                if (!usedPrimaryDetector || detectorClosed) {
+                    usedPrimaryDetector = true;
+                    frame.detector = scanner;
+                } else {
+                    frame.detector = BarcodeScanning.getClient(detectorOptions);
+                    slotDetectors.add(frame.detector);
+                }
+            }
+        }
+        frame.seq = seq;
+        return frame;
+    }
+
+    private void releaseFrame(Frame frame) {
+        final long seq = frame.seq;
+        frame.seq = -1L;
+        // spare before the slot opens, so the next admitted frame reuses it instead of creating one
+        spareFrames.offer(frame);
+        pipeline.finish(seq);
+    }
+
+    /**
+     * Every detector call goes through here so {@link #stop()} can wait for the ones in flight
+     * instead of closing the client underneath them. Calls made after stop are cancelled, which
+     * runs completion listeners but not failure listeners.
+     */
+    private Task<List<Barcode>> detect(Frame frame, InputImage image) {
+        synchronized (detectorTasks) {
+            if (detectorClosed) return Tasks.forCanceled();
+            detectorTasks.incrementAndGet();
+        }
+        Task<List<Barcode>> task = (frame != null && frame.detector != null ? frame.detector : scanner).process(image);
+        task.addOnCompleteListener(analysisExecutor, (t) -> {
+            detectorTasks.decrementAndGet();
+            if (pipeline.isStopped()) closeDetectorIfIdle();
+        });
+        return task;
+    }
+
+    private void closeDetectorIfIdle() {
+        final List<BarcodeScanner> slots;
+        synchronized (detectorTasks) {
+            if (detectorClosed || detectorTasks.get() > 0) return;
+            detectorClosed = true;
+            slots = new ArrayList<>(slotDetectors);
+        }
+        try {
+            scanner.close();
+        } catch (Exception ignored) {}
+        for (BarcodeScanner detector : slots) {
+            try {
+                detector.close();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    private void emit(List<Barcode> decoded, List<Point[]> corners, Frame frame, Callback callback) {
+        // an older frame finishing after a newer one was delivered would report stale codes
+        if (!pipeline.deliver(frame.seq)) return;
+
+        List<Map<String, Object>> payments = null;
+        if (paymentPayloads) {
+            PaymentPayloadStage stage = PaymentPayloadStage.apply(decoded, corners);
+            paymentRejected.addAndGet(stage.rejected);
+            // corrupted or foreign codes count as nothing read: no cooldown, no event
+            if (stage.barcodes.isEmpty()) return;
+            decoded = stage.barcodes;
+            corners = stage.corners;
+            payments = stage.payloads;
+        }
+
+        policy.onDecoded();
+        appendToJournal(journal, decoded);
+
+        final StructuredAppendBuffer parts = structuredAppend;
+        if (parts != null) {
+            List<Barcode> rest = new ArrayList<>();
+            List<Point[]> restCorners = corners != null ? new ArrayList<>() : null;
+            List<Map<String, Object>> restPayments = payments != null ? new ArrayList<>() : null;
+            for (int i = 0; i < decoded.size(); i++) {
+                Barcode barcode = decoded.get(i);
+                StructuredAppendBuffer.Header header = StructuredAppendBuffer.parse(barcode.getRawBytes());
+                if (header == null) {
+                    rest.add(barcode);
+                    if (restCorners != null) restCorners.add(i < corners.size() ? corners.get(i) : barcode.getCornerPoints());
+                    if (restPayments != null) restPayments.add(payments.get(i));
+                    continue;
+                }
+                StructuredAppendBuffer.Completed completed = parts.offer(header, barcode.getRawValue(), SystemClock.elapsedRealtime());
+                if (completed != null) callback.onStructuredAppend(completed.describe());
+            }
+            // partial reads never cross the bridge
+            if (rest.isEmpty()) return;
+            decoded = rest;
+            corners = restCorners;
+            payments = restPayments;
+        }
+
+        AckWindow.Emission<Result> emission = ackWindow.offer(new Result(decoded, corners, payments, callback));
+        if (emission != null) deliver(emission);
+    }
+
+    private void deliver(AckWindow.Emission<Result> emission) {
+        final Result result = emission.result;
+        result.callback.onBarcodes(result.barcodes, result.corners, result.payments, emission.eventId);
+        if (markTimeline(ScanTimeline.FIRST_BARCODE)) result.callback.onTimeline(describeTimeline());
+    }
+
+    /** Decoded barcodes waiting in {@link #ackWindow}. */
+    private static final class Result {
+
+        final List<Barcode> barcodes;
+        final List<Point[]> corners;
+        final List<Map<String, Object>> payments;
+        final Callback callback;
+
+        Result(List<Barcode> barcodes, List<Point[]> corners, List<Map<String, Object>> payments, Callback callback) {
+            this.barcodes = barcodes;
+            this.corners = corners;
+            this.payments = payments;
+            this.callback = callback;
+        }
+    }
+
+    /** Emits only EMV payment codes with a valid CRC, each with its parsed payload. */
+    public void setPaymentPayloads(boolean paymentPayloads) {
+        this.paymentPayloads = paymentPayloads;
+    }
+
+    /**
+     * Drops to one analyzed frame per {@link AnalysisPolicy#IDLE_INTERVAL_MS} while the scene does
+     * not change, and back to the full rate on the first frame that does.
+     */
+    public void setIdleWhenStatic(boolean idleWhenStatic) {
+        sceneDetector = idleWhenStatic ? new SceneChangeDetector() : null;
+    }
+
+    /** Collects structured-append parts into {@code buffer} instead of emitting them; null emits them as they are. */
+    public void setStructuredAppend(StructuredAppendBuffer buffer) {
+        structuredAppend = buffer;
+    }
+
+    // ===== Flow control =====
+
+    /**
+     * At most {@code maxUnacknowledged} barcodesScanned events may wait for {@link #acknowledge};
+     * 0 turns flow control off. With a full window the analyzer stops, or with {@code slow} keeps
+     * going at {@link AnalysisPolicy#BLOCKED_INTERVAL_MS}, and only the latest result is kept.
+     */
+    public void setFlowControl(int maxUnacknowledged, boolean slow) {
+        ackWindow.setSize(maxUnacknowledged);
+        slowWhenUnacknowledged = slow;
+    }
+
+    /** Acknowledges events up to {@code eventId} (all when not positive); returns how many remain unacknowledged. */
+    public int acknowledge(long eventId) {
+        final AckWindow.Emission<Result> emission = ackWindow.ack(eventId);
+        // delivered from the analysis executor like every other result
+        if (emission != null) analysisExecutor.execute(() -> {
+            if (pipeline.isRunning()) deliver(emission);
+        });
+        return ackWindow.unacknowledged();
+    }
+
+    // ===== Startup timeline =====
+
+    private void beginTimeline() {
+        endOpenTraceSections();
+        timeline.begin();
+        synchronized (this) {
+            startedWarm = preparedInMs >= 0L;
+        }
+        timelineCookie++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            for (String milestone : ScanTimeline.MILESTONES) Trace.beginAsyncSection("QrScan." + milestone, timelineCookie);
+        }
+    }
+
+    /** Records a milestone once and closes its trace section; returns true the first time. */
+    private boolean markTimeline(String milestone) {
+        if (!timeline.mark(milestone)) return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.endAsyncSection("QrScan." + milestone, timelineCookie);
+        return true;
+    }
+
+    private void endOpenTraceSections() {
+        if (!timeline.isStarted() || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+        for (String milestone : ScanTimeline.MILESTONES) {
+            if (!timeline.has(milestone)) Trace.endAsyncSection("QrScan." + milestone, timelineCookie);
+        }
+    }
+
+    private Map<String, Object> describeTimeline() {
+        Map<String, Object> out = new LinkedHashMap<>(timeline.toMillis());
+        out.put("warm", startedWarm);
+        out.put("scanProfile", scanProfile);
+        out.put("twoStage", twoStage);
+        out.put("pipelineDepth", pipeline.depth());
+        return out;
+    }
+
+    private void observePreviewStream(LifecycleOwner owner, PreviewView previewView) {
+        removePreviewStreamObserver();
+        streamObserver = (state) -> {
+            if (state == PreviewView.StreamState.STREAMING) markTimeline(ScanTimeline.FIRST_PREVIEW_FRAME);
+        };
+        timelinePreviewView = previewView;
+        previewView.getPreviewStreamState().observe(owner, streamObserver);
+    }
+
+    private void removePreviewStreamObserver() {
+        try {
+            if (timelinePreviewView != null && streamObserver != null) {
+                timelinePreviewView.getPreviewStreamState().removeObserver(streamObserver);
+            }
+        } catch (Exception ignored) {}
+        timelinePreviewView = null;
+        streamObserver = null;
+    }
+
+    private static int locateFactor(int width, int height) {
+        return (Math.max(width, height) + LOCATE_MAX_SIDE - 1) / LOCATE_MAX_SIDE;
+    }
+
+    /** Maps detector points of a scaled or cropped buffer to the upright full frame. */
+    private static Point[] toFrame(Point[] points, int scale, int offsetX, int offsetY, int width, int height, int rotation) {
+        if (points == null) return null;
+        Point[] out = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            int[] p = FrameCrops.toUpright(points[i].x * scale + scale / 2 + offsetX, points[i].y * scale + scale / 2 + offsetY, width, height, rotation);
+            out[i] = new Point(p[0], p[1]);
+        }
+        return out;
+    }
+
+    /**
+     * Does the cold-start work ahead of {@link #start}. It requests the camera provider, starts the
+     * analysis thread, and runs the detector once on a blank frame so its model is loaded.
+     * {@code callback} runs on the main thread once all three are done; later calls only wait for
+     * (or immediately get) the same result.
+     */
+    public void prepare(PrepareCallback callback) {
+        synchronized (this) {
+            if (preparedInMs >= 0L) {
+                final long elapsed = preparedInMs;
+                if (callback != null) mainExecutor.execute(() -> callback.onPrepared(elapsed));
+                return;
+            }
+            if (callback != null) prepareWaiters.add(callback);
+            if (prepareStarted) return;
+            prepareStarted = true;
+        }
+
+        final long startedAt = SystemClock.elapsedRealtime();
+        final AtomicInteger pending = new AtomicInteger(3);
+        final Runnable step = () -> {
+            if (pending.decrementAndGet() != 0) return;
+            List<PrepareCallback> waiters;
+            synchronized (this) {
+                preparedInMs = SystemClock.elapsedRealtime() - startedAt;
+                waiters = new ArrayList<>(prepareWaiters);
+                prepareWaiters.clear();
+            }
+            for (PrepareCallback waiter : waiters) waiter.onPrepared(preparedInMs);
+        };
+
+        ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(context);
+        providerFuture = future;
+        future.addListener(step, mainExecutor);
+
+        // the first task creates (and prioritizes) the analysis thread if it has timed out
+        analysisExecutor.execute(() -> mainExecutor.execute(step));
+
+        byte[] blank = new byte[FrameCrops.nv21Length(WARMUP_FRAME_WIDTH, WARMUP_FRAME_HEIGHT)];
+        Arrays.fill(blank, (byte) 128);
+        detect(null, InputImage.fromByteArray(blank, WARMUP_FRAME_WIDTH, WARMUP_FRAME_HEIGHT, 0, InputImage.IMAGE_FORMAT_NV21))
+            .addOnCompleteListener(mainExecutor, (t) -> step.run());
+    }
+
     private void observeZoomState(LifecycleOwner owner, Callback callback) {
         if (camera == null) return;
 
@@ -333,8 +847,8 @@ public class QrCodeScanner {
     }
 
     public void stop() {
-        paused = true;
-        processing = false;
+        pipeline.stop();
+        endOpenTraceSections();
 
         // остановить zoom retry
         try {
@@ -351,6 +865,7 @@ public class QrCodeScanner {
                     }
                 } catch (Exception ignored) {}
                 zoomObserver = null;
+                removePreviewStreamObserver();
 
                 if (analysis != null) {
                     try {
@@ -370,31 +885,25 @@ public class QrCodeScanner {
 
             pendingZoomRatio = null;
             lastRequestedZoomRatio = null;
-            consecutiveDecodeMisses = 0;
-            lastAutoZoomAtMs = 0L;
+            policy.reset();
 
             lastOwner = null;
             lastCallback = null;
-
-            lastAnalyzeAtMs = 0L;
-            cooldownUntilMs = 0L;
         });
 
-        try {
-            scanner.close();
-        } catch (Exception ignored) {}
+        // flushing can take a moment; the file is complete once the recorder's writer thread is done
+        final FrameRecorder activeRecorder = recorder.getAndSet(null);
+        if (activeRecorder != null) activeRecorder.close();
 
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
-            cameraExecutor = null;
-        }
+        closeDetectorIfIdle();
     }
 
     /** PAUSE: останавливаем анализатор */
     public void pause() {
-        paused = true;
-        processing = false;
-        consecutiveDecodeMisses = 0;
+        pipeline.pause();
+        policy.resetMisses();
+        // a paused scan owes JS nothing; the held result is dropped and the window starts over on resume
+        ackWindow.reset();
 
         final ImageAnalysis localAnalysis = analysis;
         if (localAnalysis != null && analyzerAttached) {
@@ -416,12 +925,13 @@ public class QrCodeScanner {
 
     /** RESUME: возвращаем анализатор и перезапускаем применение zoom */
     public void resume() {
-        paused = false;
-        consecutiveDecodeMisses = 0;
-        lastAutoZoomAtMs = 0L;
+        pipeline.resume();
+        policy.resetMisses();
+        // the scene may have changed while paused; start over at the full rate
+        policy.onSceneChanged();
 
         final ImageAnalysis localAnalysis = analysis;
-        final ExecutorService localExecutor = cameraExecutor;
+        final Executor localExecutor = analysisExecutor;
         final ImageAnalysis.Analyzer localAnalyzer = analyzer;
 
         mainExecutor.execute(() -> {
@@ -447,6 +957,60 @@ public class QrCodeScanner {
         });
     }
 
+    void setJournal(ScanJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setScanProfile(boolean scanProfile) {
+        this.scanProfile = scanProfile;
+    }
+
+    public void setTwoStage(boolean twoStage) {
+        this.twoStage = twoStage;
+    }
+
+    /**
+     * Result handling counters for {@code getScanStats}: {@code resultHandlingMs} is the time ML Kit
+     * listeners, frame release and event delivery took on the analysis executor instead of the main thread.
+     */
+    public Map<String, Object> getAnalysisStats() {
+        long tasks = resultTasks.get();
+        double ms = resultNanos.get() / 1e6;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("resultTasks", tasks);
+        out.put("resultHandlingMs", ms);
+        out.put("averageResultMs", tasks > 0 ? ms / tasks : 0.0);
+        out.put("staleResultsDiscarded", pipeline.discarded());
+        out.put("pipelineDepth", pipeline.depth());
+        out.put("unacknowledgedEvents", ackWindow.unacknowledged());
+        out.put("framesSkippedUnacknowledged", ackWindow.skippedFrames());
+        out.put("resultsCoalesced", ackWindow.coalesced());
+        out.put("paymentPayloadsRejected", paymentRejected.get());
+        final SceneChangeDetector scene = sceneDetector;
+        out.put("sceneIdle", scene != null && policy.isIdle());
+        out.put("sceneChanges", scene != null ? scene.changes() : 0L);
+        out.put("framesSkippedIdle", framesSkippedIdle.get());
+        return out;
+    }
+
+    /** Frames allowed in the detector at once, 1..3; takes effect for the next admitted frame. */
+    public void setPipelineDepth(int depth) {
+        pipeline.setDepth(depth);
+    }
+
+    static void appendToJournal(ScanJournal journal, List<Barcode> barcodes) {
+        if (journal == null || barcodes == null) return;
+
+        long now = System.currentTimeMillis();
+        for (Barcode barcode : barcodes) {
+            String raw = barcode.getRawValue() != null ? barcode.getRawValue() : barcode.getDisplayValue();
+            byte[] payload = raw != null ? raw.getBytes(StandardCharsets.UTF_8) : barcode.getRawBytes();
+            try {
+                journal.append(now, barcode.getFormat(), payload);
+            } catch (Exception ignored) {}
+        }
+    }
+
     // ===== Torch =====
 
     public boolean isTorchAvailable() {
@@ -539,31 +1103,72 @@ public class QrCodeScanner {
         return display != null && !display.trim().isEmpty();
     }
 
-    private void maybeAutoZoom() {
-        if (lastRequestedZoomRatio != null) return; // user-controlled zoom has priority
-        if (consecutiveDecodeMisses < AUTO_ZOOM_MISS_THRESHOLD) return;
-        if (camera == null) return;
+    private void onMiss() {
+        // runs on the analysis executor, while stop() may clear the field on the main thread
+        final Camera camera = this.camera;
+        ZoomState zs = null;
+        try {
+            if (camera != null) zs = camera.getCameraInfo().getZoomState().getValue();
+        } catch (Exception ignored) {}
 
-        long now = SystemClock.elapsedRealtime();
-        if ((now - lastAutoZoomAtMs) < AUTO_ZOOM_INTERVAL_MS) return;
+        // user-controlled zoom has priority
+        boolean zoomLocked = lastRequestedZoomRatio != null || zs == null;
+        float target = policy.onMiss(zs != null ? zs.getZoomRatio() : 1f, zs != null ? zs.getMaxZoomRatio() : 1f, zoomLocked);
+        if (target == AnalysisPolicy.NO_ZOOM_CHANGE) return;
 
-        ZoomState zs;
         try {
-            zs = camera.getCameraInfo().getZoomState().getValue();
-        } catch (Exception ignored) {
-            return;
-        }
-        if (zs == null) return;
+            camera.getCameraControl().setZoomRatio(target);
+        } catch (Exception ignored) {}
+    }
+
+    // ===== Frame recording =====
+
+    /**
+     * Starts dumping the luma plane of every frame the analyzer receives to {@code file}, centered
+     * and cropped to {@code cropFraction} of each side, until {@code maxFrames} (0 = unlimited)
+     * or {@link #stopRecording()}.
+     */
+    public void startRecording(File file, float cropFraction, int maxFrames) throws IOException {
+        FrameRecorder previous = recorder.getAndSet(new FrameRecorder(file, cropFraction, maxFrames));
+        if (previous != null) previous.close();
+    }
 
-        float maxAllowed = Math.min(zs.getMaxZoomRatio(), AUTO_ZOOM_SOFT_MAX);
-        float current = zs.getZoomRatio();
+    /** Finishes the recording and describes it, or returns null when none was running. */
+    public Map<String, Object> stopRecording() {
+        FrameRecorder active = recorder.getAndSet(null);
+        return active != null ? active.stop() : null;
+    }
 
-        if (current >= (maxAllowed - 0.01f)) return;
+    private void record(ImageProxy imageProxy) {
+        final FrameRecorder active = recorder.get();
+        if (active == null) return;
 
-        float target = Math.min(maxAllowed, current + AUTO_ZOOM_STEP);
+        float zoom = 1f;
         try {
-            camera.getCameraControl().setZoomRatio(target);
-            lastAutoZoomAtMs = now;
+            final Camera camera = this.camera;
+            ZoomState zs = camera != null ? camera.getCameraInfo().getZoomState().getValue() : null;
+            if (zs != null) zoom = zs.getZoomRatio();
         } catch (Exception ignored) {}
+
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        active.offer(
+            imageProxy.getImageInfo().getTimestamp(),
+            imageProxy.getImageInfo().getRotationDegrees(),
+            zoom,
+            luma.getBuffer(),
+            luma.getRowStride(),
+            imageProxy.getWidth(),
+            imageProxy.getHeight()
+        );
+    }
+
+    /** Buffers of one admitted frame; owned by that frame until {@link #releaseFrame(Frame)}. */
+    private static final class Frame {
+        long seq = -1L;
+        BarcodeScanner detector;
+        byte[] luma;
+        byte[] locate;
+        byte[] crop;
+        int[] rowSums;
     }
 }
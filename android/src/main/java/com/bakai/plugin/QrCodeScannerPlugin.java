@@ -1,21 +1,24 @@
 package com.bakai.plugin;
 
 import android.Manifest;
+import android.app.ActivityManager;
 import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
+import android.graphics.Point;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import androidx.camera.view.PreviewView;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PermissionState;
 import com.getcapacitor.Plugin;
@@ -33,19 +36,34 @@ import com.google.mlkit.vision.codescanner.GmsBarcodeScannerOptions;
 import com.google.mlkit.vision.codescanner.GmsBarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
 import java.io.File;
-import java.io.InputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.json.JSONArray;
 
 @CapacitorPlugin(name = "QrCodeScanner", permissions = { @Permission(strings = Manifest.permission.CAMERA, alias = "camera") })
 public class QrCodeScannerPlugin extends Plugin {
 
-    private static final int IMAGE_MIN_SIDE_FOR_DECODE = 1200;
-    private static final int IMAGE_MAX_SIDE_FOR_DECODE = 2200;
+    private static final String SCAN_JOURNAL_DIR = "qr-scan-journal";
+    private static final int DEFAULT_IMAGE_THREADS = 2;
+    private static final int DEFAULT_IMAGE_QUEUE_CAPACITY = 4;
+    private static final String RESULT_CACHE_DIR = "qr-result-cache";
+    private static final String FRAME_RECORDING_DIR = "qr-frame-recordings";
+    private static final String CANDIDATE_STATS_PREFS = "qr_code_scanner_candidate_stats";
+    private static final String CANDIDATE_STATS_KEY = "stats";
+    private static final long MEMORY_RETRY_MS = 50L;
 
     private QrCodeScanner scanner;
+    // warmed by prepare() and handed to the next startScan; guarded by "this"
+    private QrCodeScanner preparedScanner;
+    private volatile boolean keepWarm = false;
     private PreviewView previewView;
     private FrameLayout cameraContainer;
     private QRScanLineOverlayView scanOverlay;
@@ -53,12 +71,98 @@ public class QrCodeScannerPlugin extends Plugin {
     // ✅ слой “заморозки”
     private ImageView freezeView;
 
+    private ScanJournal scanJournal;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, ImageRequest> activeImageRequests = new ConcurrentHashMap<>();
+
+    private CandidateStats candidateStats;
+    private ImageResultCache resultCache;
+    private final Random random = new Random();
+
+    // still-image work (bitmap decoding, preprocessing, PDF rendering); never the plugin call thread
+    private ImageWorkExecutor imageWork;
+    // bitmaps and pixel buffers shared by all still-image calls
+    private BitmapPool bitmapPool;
+    // bytes all still-image calls may hold at once
+    private MemoryBudget memoryBudget;
+    // structured-append parts from live scans and image reads alike
+    private StructuredAppendBuffer structuredAppend;
+
     @Override
     public void load() {
         super.load();
         if (getBridge() != null && getBridge().getWebView() != null) {
             getBridge().getWebView().setBackgroundColor(Color.TRANSPARENT);
         }
+        if (getConfig().getBoolean("prepareOnLoad", false)) {
+            keepWarm = true;
+            warmUp(null);
+        }
+    }
+
+    @PluginMethod
+    public void prepare(PluginCall call) {
+        keepWarm = call.getBoolean("keepWarm", true);
+        warmUp(call);
+    }
+
+    /** Creates the scanner the next startScan will use and starts its cold-start work. */
+    private void warmUp(PluginCall call) {
+        final QrCodeScanner warm;
+        synchronized (this) {
+            if (preparedScanner == null) preparedScanner = newScanner();
+            warm = preparedScanner;
+        }
+
+        try {
+            warm.prepare(
+                call == null
+                    ? null
+                    : (elapsedMs) -> {
+                        JSObject ret = new JSObject();
+                        ret.put("warmupMs", elapsedMs);
+                        call.resolve(ret);
+                    }
+            );
+        } catch (Exception e) {
+            if (call != null) call.reject(e.getMessage() != null ? e.getMessage() : "Failed to prepare scanner");
+        }
+    }
+
+    private QrCodeScanner newScanner() {
+        return new QrCodeScanner(getContext(), getConfig().getInt("analysisThreads", AnalysisExecutor.DEFAULT_THREADS));
+    }
+
+    private synchronized QrCodeScanner takePreparedScanner() {
+        QrCodeScanner warm = preparedScanner;
+        preparedScanner = null;
+        return warm;
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        synchronized (this) {
+            if (scanJournal != null) {
+                scanJournal.close();
+                scanJournal = null;
+            }
+            if (imageWork != null) {
+                imageWork.shutdown();
+                imageWork = null;
+            }
+            if (bitmapPool != null) {
+                bitmapPool.clear();
+                bitmapPool = null;
+            }
+            if (preparedScanner != null) {
+                try {
+                    preparedScanner.stop();
+                } catch (Exception ignored) {}
+                preparedScanner = null;
+            }
+        }
+        super.handleOnDestroy();
     }
 
     @PluginMethod
@@ -70,6 +174,23 @@ public class QrCodeScannerPlugin extends Plugin {
         // 1080p by default gives better recognition for branded/partially-occluded QR codes.
         final int resolution = options != null ? options.getInteger("resolution", 2) : 2;
 
+        final boolean journal = options != null && options.optBoolean("journal", false);
+        final boolean twoStage = options == null || options.optBoolean("twoStage", true);
+        final boolean scanProfile = options != null && options.optBoolean("scanProfile", false);
+        final int pipelineDepth = options != null ? options.getInteger("pipelineDepth", QrCodeScanner.DEFAULT_PIPELINE_DEPTH) : QrCodeScanner.DEFAULT_PIPELINE_DEPTH;
+        final int maxUnacknowledged = options != null ? options.getInteger("maxUnacknowledged", 0) : 0;
+        final boolean slowWhenUnacknowledged = options != null && "slow".equals(options.getString("whenUnacknowledged", "stop"));
+        final boolean structuredAppend = options != null && options.optBoolean("structuredAppend", false);
+        final boolean idleWhenStatic = options != null && options.optBoolean("idleWhenStatic", false);
+        final boolean paymentPayloads = options != null && "emv".equals(options.getString("payloadFormat"));
+        final ResultFields fields;
+        try {
+            fields = ResultFields.parse(stringList(options != null ? options.optJSONArray("fields") : null));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+
         if (getActivity() == null) {
             call.reject("Activity is null");
             return;
@@ -119,7 +240,16 @@ public class QrCodeScannerPlugin extends Plugin {
 
                 scanOverlay.start();
 
-                scanner = new QrCodeScanner(getContext());
+                scanner = takePreparedScanner();
+                if (scanner == null) scanner = newScanner();
+                if (journal) scanner.setJournal(getScanJournal());
+                scanner.setTwoStage(twoStage);
+                scanner.setScanProfile(scanProfile);
+                scanner.setPipelineDepth(pipelineDepth);
+                scanner.setFlowControl(maxUnacknowledged, slowWhenUnacknowledged);
+                scanner.setStructuredAppend(structuredAppend ? getStructuredAppendBuffer() : null);
+                scanner.setIdleWhenStatic(idleWhenStatic);
+                scanner.setPaymentPayloads(paymentPayloads);
                 scanner.start(
                     getActivity(),
                     previewView,
@@ -127,9 +257,12 @@ public class QrCodeScannerPlugin extends Plugin {
                     resolution,
                     new QrCodeScanner.Callback() {
                         @Override
-                        public void onBarcodes(List<Barcode> barcodes) {
+                        public void onBarcodes(List<Barcode> barcodes, List<Point[]> cornerPoints, List<Map<String, Object>> payments, long eventId) {
                             if (barcodes == null || barcodes.isEmpty()) return;
-                            notifyListeners("barcodesScanned", BarcodeMapper.toJS(barcodes));
+                            JSObject event = BarcodeMapper.toJS(barcodes, cornerPoints, fields);
+                            attachPayments(event, payments);
+                            if (eventId > 0L) event.put("eventId", eventId);
+                            notifyListeners("barcodesScanned", event);
                         }
 
                         @Override
@@ -147,6 +280,25 @@ public class QrCodeScannerPlugin extends Plugin {
                             data.put("maxZoomRatio", maxRatio);
                             notifyListeners("zoomReady", data);
                         }
+
+                        @Override
+                        public void onScanProfile(Map<String, Object> applied) {
+                            JSObject data = new JSObject();
+                            for (Map.Entry<String, Object> e : applied.entrySet()) data.put(e.getKey(), e.getValue());
+                            notifyListeners("scanProfileApplied", data);
+                        }
+
+                        @Override
+                        public void onTimeline(Map<String, Object> timeline) {
+                            JSObject data = new JSObject();
+                            for (Map.Entry<String, Object> e : timeline.entrySet()) data.put(e.getKey(), e.getValue());
+                            notifyListeners("scanTimeline", data);
+                        }
+
+                        @Override
+                        public void onStructuredAppend(Map<String, Object> completed) {
+                            notifyStructuredAppend(completed);
+                        }
                     }
                 );
 
@@ -169,6 +321,8 @@ public class QrCodeScannerPlugin extends Plugin {
                 cleanupScanner();
                 cleanupUi();
                 previewView = null;
+                // the next scan opens warm again
+                if (keepWarm) warmUp(null);
                 call.resolve();
             } catch (Exception e) {
                 call.reject(e.getMessage() != null ? e.getMessage() : "Failed to stop scan");
@@ -267,67 +421,389 @@ public class QrCodeScannerPlugin extends Plugin {
             return;
         }
 
-        final List<InputImage> candidates = new ArrayList<>();
-        final Set<Bitmap> recyclableBitmaps = new HashSet<>();
+        final ImageRequest request = new ImageRequest(call);
+        try {
+            request.fields = ResultFields.parse(stringList(call.getArray("fields")));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        request.journal = call.getBoolean("journal", false) ? getScanJournal() : null;
+        request.requestId = call.getString("requestId");
+        request.structuredAppend = call.getBoolean("structuredAppend", false);
+        request.paymentPayloads = "emv".equals(call.getString("payloadFormat"));
+
+        final boolean tiled = call.getBoolean("tiled", false);
+        final int tileSize = call.getInt("tileSize", TiledBarcodeReader.DEFAULT_TILE_SIZE);
+        final String cacheMode = call.getString("cache", "memory");
+        final boolean adaptive = call.getBoolean("adaptiveOrder", true);
+
+        // From here on the request can be cancelled or time out, including while it waits for a worker.
+        if (request.requestId != null) {
+            ImageRequest previous = activeImageRequests.put(request.requestId, request);
+            if (previous != null) stopImageRequest(previous, "cancelled");
+        }
+        final Integer timeoutMs = call.getInt("timeoutMs");
+        if (timeoutMs != null && timeoutMs > 0) {
+            request.timeoutRunnable = () -> stopImageRequest(request, "timeout");
+            mainHandler.postDelayed(request.timeoutRunnable, timeoutMs);
+        }
+
+        final int priority = ImageWorkExecutor.parsePriority(call.getString("priority", "normal"));
+        boolean admitted = getImageExecutor().submit(priority, () -> {
+            synchronized (request) {
+                request.started = true;
+            }
+            if (request.stopReason != null) {
+                releaseImageSlot(request);
+                return;
+            }
+
+            // Retries of the same image are answered from the result cache.
+            if (!"none".equals(cacheMode)) {
+                request.cacheToDisk = "disk".equals(cacheMode);
+                request.cacheKey = ImageResultCache.keyFor(getContext().getContentResolver(), uri, (tiled ? "tiled:" + tileSize : "ladder") + (request.fields.isAll() ? "" : "|" + request.fields.key()) + (request.paymentPayloads ? "|emv" : ""));
+                ImageResultCache.Result cached = getResultCache().get(request.cacheKey, request.cacheToDisk);
+                if (cached != null) {
+                    // the image is known; what this call asked for beyond its barcodes still happens
+                    if (request.stopReason != null) return;
+                    appendToJournal(request.journal, cached.decoded);
+                    JSObject result = new JSObject();
+                    result.put("barcodes", cached.barcodes);
+                    if (request.structuredAppend) collectStructuredAppend(cached.decoded, result);
+                    result.put("cached", true);
+                    resolveImageRequest(request, result, null);
+                    return;
+                }
+            }
+
+            // a cancel while the cache key was hashed has already resolved the call
+            if (request.stopReason != null) return;
+
+            if (tiled) {
+                readBarcodesTiled(uri, tileSize, request);
+                return;
+            }
+
+            startImageLadder(uri, request, adaptive);
+        });
+
+        if (!admitted && request.settle()) {
+            finishImageRequest(request);
+            call.reject("Image decoder is busy");
+        }
+    }
+
+    /**
+     * Reserves memory for the ladder and starts it. When other imports hold the budget the request keeps
+     * its worker slot and tries again shortly, rather than blocking a thread their continuations need.
+     */
+    private void startImageLadder(Uri uri, ImageRequest request, boolean adaptive) {
+        if (request.stopReason != null) return;
+
+        int[] bounds = ImageCandidateLadder.readBounds(getContext().getContentResolver(), uri);
+        final int side = MemoryBudget.MAX_WORKING_SIDE;
+        startImageLadder(uri, request, adaptive, bounds != null ? bounds[0] : side, bounds != null ? bounds[1] : side);
+    }
+
+    /** Retries land here, with the source size read once by the first attempt. */
+    private void startImageLadder(Uri uri, ImageRequest request, boolean adaptive, int width, int height) {
+        if (request.stopReason != null) return;
+
+        final Runtime runtime = Runtime.getRuntime();
+        final long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+
+        MemoryBudget budget = getMemoryBudget();
+        MemoryBudget.Plan plan = budget.reserve(width, height, freeHeap);
+        if (plan == null) {
+            mainHandler.postDelayed(() -> getImageExecutor().execute(() -> startImageLadder(uri, request, adaptive, width, height)), MEMORY_RETRY_MS);
+            return;
+        }
 
         BarcodeScannerOptions scannerOptions = new BarcodeScannerOptions.Builder()
             .setBarcodeFormats(Barcode.FORMAT_QR_CODE)
             .enableAllPotentialBarcodes()
             .build();
 
-        final BarcodeScanner imageScanner = BarcodeScanning.getClient(scannerOptions);
+        synchronized (request) {
+            request.budget = budget;
+            request.plan = plan;
+            request.fullPlan = MemoryBudget.isFull(plan, width, height);
+            request.imageScanner = BarcodeScanning.getClient(scannerOptions);
+            request.ladder = new ImageCandidateLadder(getContext(), uri, getBitmapPool(), plan);
+        }
 
-        try {
-            // 1) Native file-path decode (includes EXIF orientation handling in ML Kit).
-            candidates.add(InputImage.fromFilePath(getContext(), uri));
-
-            // 2) Fallback variants for stylized/low-contrast/angled QR codes.
-            Bitmap source = loadBitmapFromUri(uri);
-            if (source != null) {
-                Bitmap normalized = normalizeBitmapForDecode(source);
-                recyclableBitmaps.add(normalized);
-
-                addCandidate(candidates, normalized, 0);
-                addCandidate(candidates, normalized, 90);
-                addCandidate(candidates, normalized, 180);
-                addCandidate(candidates, normalized, 270);
-
-                Bitmap boosted = createHighContrastBitmap(normalized);
-                if (boosted != null) {
-                    recyclableBitmaps.add(boosted);
-                    addCandidate(candidates, boosted, 0);
-                    addCandidate(candidates, boosted, 90);
-                    addCandidate(candidates, boosted, 270);
-                }
+        // Variants are tried in the order that has paid off on this device so far (see CandidateStats).
+        request.stats = adaptive ? getCandidateStats() : null;
+        request.order = request.stats != null ? request.stats.order(ImageCandidateLadder.VARIANTS, random) : ImageCandidateLadder.VARIANTS;
+
+        processImageCandidates(request, 0, false);
+    }
+
+    /**
+     * Adds the structured-append parts among {@code decoded} to the shared buffer. The call still
+     * returns every barcode it read; a set this image completed is added to {@code result} as well.
+     */
+    private void collectStructuredAppend(List<ImageResultCache.Decoded> decoded, JSObject result) {
+        StructuredAppendBuffer buffer = getStructuredAppendBuffer();
+        for (ImageResultCache.Decoded barcode : decoded) {
+            StructuredAppendBuffer.Header header = StructuredAppendBuffer.parse(barcode.rawBytes);
+            if (header == null) continue;
+            StructuredAppendBuffer.Completed completed = buffer.offer(header, barcode.rawValue, SystemClock.elapsedRealtime());
+            if (completed != null) result.put("structuredAppend", notifyStructuredAppend(completed.describe()));
+        }
+    }
+
+    /** {@link QrCodeScanner#appendToJournal} for results answered from the cache. */
+    private static void appendToJournal(ScanJournal journal, List<ImageResultCache.Decoded> decoded) {
+        if (journal == null) return;
+
+        long now = System.currentTimeMillis();
+        for (ImageResultCache.Decoded barcode : decoded) {
+            byte[] payload = barcode.rawValue != null ? barcode.rawValue.getBytes(StandardCharsets.UTF_8) : barcode.rawBytes;
+            try {
+                journal.append(now, barcode.format, payload);
+            } catch (Exception ignored) {}
+        }
+    }
 
-                Bitmap binary = createBinaryBitmap(normalized);
-                if (binary != null) {
-                    recyclableBitmaps.add(binary);
-                    addCandidate(candidates, binary, 0);
+    private JSObject notifyStructuredAppend(Map<String, Object> completed) {
+        JSObject data = new JSObject();
+        for (Map.Entry<String, Object> e : completed.entrySet()) data.put(e.getKey(), e.getValue());
+        notifyListeners("structuredAppendComplete", data);
+        return data;
+    }
+
+    private void readBarcodesTiled(Uri uri, int tileSize, ImageRequest request) {
+        TiledBarcodeReader reader = new TiledBarcodeReader(getContext().getContentResolver(), uri, getImageExecutor(), getBitmapPool(), tileSize);
+        synchronized (request) {
+            // a stop that did not see the reader has resolved the call already
+            if (request.stopReason != null) return;
+            request.tiledReader = reader;
+        }
+        reader.start(
+            new TiledBarcodeReader.Listener() {
+                @Override
+                public void onComplete(List<Barcode> barcodes, List<Point[]> cornerPoints) {
+                    List<Map<String, Object>> payments = null;
+                    if (request.paymentPayloads) {
+                        PaymentPayloadStage stage = PaymentPayloadStage.apply(barcodes, cornerPoints);
+                        barcodes = stage.barcodes;
+                        cornerPoints = stage.corners;
+                        payments = stage.payloads;
+                    }
+                    QrCodeScanner.appendToJournal(request.journal, barcodes);
+                    JSObject result = BarcodeMapper.toJS(barcodes, cornerPoints, request.fields);
+                    attachPayments(result, payments);
+                    resolveImageRequest(request, result, ImageResultCache.Decoded.of(barcodes));
                 }
 
-                Bitmap centerCrop = createCenteredSquare(normalized, 0.88f);
-                if (centerCrop != null) {
-                    recyclableBitmaps.add(centerCrop);
-                    addCandidate(candidates, centerCrop, 0);
-                    addCandidate(candidates, centerCrop, 90);
+                @Override
+                public void onError(String message) {
+                    if (!request.settle()) return;
+                    finishImageRequest(request);
+                    request.call.reject(message != null ? message : "Failed to read barcodes");
                 }
             }
-        } catch (Exception e) {
-            imageScanner.close();
-            recycleBitmaps(recyclableBitmaps);
-            call.reject(e.getMessage() != null ? e.getMessage() : "Failed to read barcodes");
+        );
+    }
+
+    @PluginMethod
+    public void cancelReadBarcodes(PluginCall call) {
+        String requestId = call.getString("requestId");
+        int cancelled = 0;
+
+        if (requestId != null) {
+            ImageRequest request = activeImageRequests.get(requestId);
+            if (request != null && stopImageRequest(request, "cancelled")) cancelled++;
+        } else {
+            for (ImageRequest request : new ArrayList<>(activeImageRequests.values())) {
+                if (stopImageRequest(request, "cancelled")) cancelled++;
+            }
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("cancelled", cancelled > 0);
+        call.resolve(ret);
+    }
+
+    /**
+     * Cuts a request short. The call resolves right away with whatever was found; the ladder may be
+     * building a variant or waiting on the detector, so its bitmaps are released by the worker when
+     * it next looks at {@code stopReason}.
+     */
+    private boolean stopImageRequest(ImageRequest request, String reason) {
+        if (request.stopReason != null || request.isSettled()) return false;
+        request.stopReason = reason;
+
+        final TiledBarcodeReader tiledReader;
+        final PdfBarcodeReader pdfReader;
+        synchronized (request) {
+            tiledReader = request.tiledReader;
+            pdfReader = request.pdfReader;
+        }
+        if (tiledReader != null) {
+            // partial tile results are reported through onComplete
+            tiledReader.cancel();
+            return true;
+        }
+        if (pdfReader != null) {
+            // the pages in flight finish, then onComplete resolves with the pages read so far
+            pdfReader.cancel();
+            return true;
+        }
+
+        resolveImageRequest(request, request.pdf ? emptyPdfResult() : BarcodeMapper.toJS(new ArrayList<>()), null);
+        return true;
+    }
+
+    /** {@code decoded} are the codes behind {@code result}, kept in the result cache when not null. */
+    private void resolveImageRequest(ImageRequest request, JSObject result, List<ImageResultCache.Decoded> decoded) {
+        if (!request.settle()) return;
+        finishImageRequest(request);
+
+        boolean completed = request.stopReason == null;
+        result.put("completed", completed);
+        if (!completed) result.put("reason", request.stopReason);
+
+        // truncated runs say nothing definite about the image
+        if (completed && decoded != null && request.cacheKey != null) {
+            try {
+                getResultCache().put(request.cacheKey, result.getJSONArray("barcodes"), decoded, request.cacheToDisk);
+            } catch (Exception ignored) {}
+        }
+        request.call.resolve(result);
+    }
+
+    private void finishImageRequest(ImageRequest request) {
+        if (request.timeoutRunnable != null) mainHandler.removeCallbacks(request.timeoutRunnable);
+        if (request.requestId != null) activeImageRequests.remove(request.requestId, request);
+        releaseImageSlot(request);
+    }
+
+    /** Hands the worker slot back once; requests still waiting for a slot give it back when they start. */
+    private void releaseImageSlot(ImageRequest request) {
+        synchronized (request) {
+            if (!request.started || request.slotReleased) return;
+            request.slotReleased = true;
+        }
+        getImageExecutor().complete();
+    }
+
+    @PluginMethod
+    public void readBarcodesFromPdf(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.trim().isEmpty()) {
+            call.reject("path is required");
             return;
         }
 
-        if (candidates.isEmpty()) {
-            imageScanner.close();
-            recycleBitmaps(recyclableBitmaps);
-            call.resolve(BarcodeMapper.toJS(new ArrayList<>()));
+        final Uri uri = normalizePathToUri(path);
+        if (uri == null) {
+            call.reject("Invalid PDF path");
             return;
         }
 
-        processImageCandidates(imageScanner, candidates, 0, recyclableBitmaps, call);
+        List<Integer> pages = new ArrayList<>();
+        JSArray pagesArray = call.getArray("pages");
+        if (pagesArray != null) {
+            for (int i = 0; i < pagesArray.length(); i++) {
+                int page = pagesArray.optInt(i, -1);
+                if (page >= 0) pages.add(page);
+            }
+        }
+
+        final ImageRequest request = new ImageRequest(call);
+        request.pdf = true;
+        request.journal = call.getBoolean("journal", false) ? getScanJournal() : null;
+        request.requestId = call.getString("requestId");
+        final JSArray results = new JSArray();
+
+        final ImageWorkExecutor work = getImageExecutor();
+        final PdfBarcodeReader reader = new PdfBarcodeReader(
+            getContext().getContentResolver(),
+            uri,
+            pages,
+            call.getInt("dpi", PdfBarcodeReader.DEFAULT_DPI),
+            work,
+            getBitmapPool()
+        );
+        final PdfBarcodeReader.Listener listener = new PdfBarcodeReader.Listener() {
+            @Override
+            public void onPage(int pageIndex, int pageCount, List<Barcode> barcodes, String error) {
+                QrCodeScanner.appendToJournal(request.journal, barcodes);
+
+                JSObject event = BarcodeMapper.toJS(barcodes);
+                event.put("page", pageIndex);
+                event.put("pageCount", pageCount);
+                if (error != null) event.put("error", error);
+                notifyListeners("pdfPageScanned", event);
+
+                if (!barcodes.isEmpty() || error != null) {
+                    synchronized (results) {
+                        results.put(event);
+                    }
+                }
+            }
+
+            @Override
+            public void onComplete(int pageCount) {
+                JSObject ret = new JSObject();
+                ret.put("pageCount", pageCount);
+                synchronized (results) {
+                    ret.put("pages", results);
+                }
+                resolveImageRequest(request, ret, null);
+            }
+
+            @Override
+            public void onError(String message) {
+                if (request.stopReason != null) {
+                    // cut short while the document was opening
+                    resolveImageRequest(request, emptyPdfResult(), null);
+                    return;
+                }
+                if (!request.settle()) return;
+                finishImageRequest(request);
+                call.reject(message != null ? message : "Failed to read PDF");
+            }
+        };
+
+        // From here on the request can be cancelled or time out, including while it waits for a worker.
+        if (request.requestId != null) {
+            ImageRequest previous = activeImageRequests.put(request.requestId, request);
+            if (previous != null) stopImageRequest(previous, "cancelled");
+        }
+        final Integer timeoutMs = call.getInt("timeoutMs");
+        if (timeoutMs != null && timeoutMs > 0) {
+            request.timeoutRunnable = () -> stopImageRequest(request, "timeout");
+            mainHandler.postDelayed(request.timeoutRunnable, timeoutMs);
+        }
+
+        final int priority = ImageWorkExecutor.parsePriority(call.getString("priority", "normal"));
+        boolean admitted = work.submit(priority, () -> {
+            synchronized (request) {
+                request.started = true;
+                if (request.stopReason == null) request.pdfReader = reader;
+            }
+            if (request.stopReason != null) {
+                releaseImageSlot(request);
+                return;
+            }
+            reader.start(listener);
+        });
+
+        if (!admitted && request.settle()) {
+            finishImageRequest(request);
+            call.reject("Image decoder is busy");
+        }
+    }
+
+    private static JSObject emptyPdfResult() {
+        JSObject ret = new JSObject();
+        ret.put("pageCount", 0);
+        ret.put("pages", new JSArray());
+        return ret;
     }
 
     @PluginMethod
@@ -352,6 +828,32 @@ public class QrCodeScannerPlugin extends Plugin {
             .addOnFailureListener((e) -> call.reject(e.getMessage() != null ? e.getMessage() : "Scan cancelled/failed"));
     }
 
+    /** Adds each barcode's parsed EMV payload as {@code emv}; {@code payments} is aligned with the mapped barcodes. */
+    private static void attachPayments(JSObject event, List<Map<String, Object>> payments) {
+        if (payments == null) return;
+        try {
+            JSONArray barcodes = event.getJSONArray("barcodes");
+            for (int i = 0; i < barcodes.length() && i < payments.size(); i++) barcodes.getJSONObject(i).put("emv", toJSObject(payments.get(i)));
+        } catch (Exception ignored) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSObject toJSObject(Map<String, Object> map) {
+        JSObject out = new JSObject();
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            Object value = e.getValue();
+            out.put(e.getKey(), value instanceof Map ? toJSObject((Map<String, Object>) value) : value);
+        }
+        return out;
+    }
+
+    private static List<String> stringList(JSONArray array) {
+        if (array == null) return null;
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) out.add(array.optString(i));
+        return out;
+    }
+
     private JSObject getOptions(PluginCall call) {
         JSObject nested = call.getObject("options");
         if (nested != null) return nested;
@@ -370,220 +872,391 @@ public class QrCodeScannerPlugin extends Plugin {
         return uri;
     }
 
-    private Bitmap loadBitmapFromUri(Uri uri) {
-        if (uri == null) return null;
-
-        ContentResolver resolver = getContext().getContentResolver();
-        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
-        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    private List<Barcode> filterDecodedBarcodes(List<Barcode> barcodes) {
+        List<Barcode> decoded = new ArrayList<>();
+        if (barcodes == null || barcodes.isEmpty()) return decoded;
 
-        try (InputStream input = resolver.openInputStream(uri)) {
-            if (input == null) return null;
-            return BitmapFactory.decodeStream(input, null, decodeOptions);
-        } catch (Exception ignored) {
-            return null;
+        for (Barcode barcode : barcodes) {
+            if (barcode == null) continue;
+            if (!hasBarcodePayload(barcode)) continue;
+            decoded.add(barcode);
         }
+        return decoded;
     }
 
-    private Bitmap normalizeBitmapForDecode(Bitmap source) {
-        if (source == null) return null;
+    private boolean hasBarcodePayload(Barcode barcode) {
+        String raw = barcode.getRawValue();
+        if (raw != null && !raw.trim().isEmpty()) return true;
 
-        int width = source.getWidth();
-        int height = source.getHeight();
-        int minSide = Math.min(width, height);
-        int maxSide = Math.max(width, height);
+        String display = barcode.getDisplayValue();
+        return display != null && !display.trim().isEmpty();
+    }
 
-        float scale = 1f;
-        if (maxSide > IMAGE_MAX_SIDE_FOR_DECODE) {
-            scale = IMAGE_MAX_SIDE_FOR_DECODE / (float) maxSide;
-        } else if (minSide < IMAGE_MIN_SIDE_FOR_DECODE) {
-            scale = IMAGE_MIN_SIDE_FOR_DECODE / (float) minSide;
+    private void processImageCandidates(ImageRequest request, int index, boolean attempted) {
+        if (request.stopReason != null) {
+            request.release();
+            saveCandidateStats(request.stats);
+            return;
         }
 
-        if (Math.abs(scale - 1f) < 0.01f) return source;
+        if (index >= request.order.size()) {
+            request.release();
+            saveCandidateStats(request.stats);
 
-        int targetWidth = Math.max(1, Math.round(width * scale));
-        int targetHeight = Math.max(1, Math.round(height * scale));
+            Exception error = request.ladder.getFirstError();
+            if (!attempted && error != null) {
+                if (!request.settle()) return;
+                finishImageRequest(request);
+                request.call.reject(error.getMessage() != null ? error.getMessage() : "Failed to read barcodes");
+                return;
+            }
+            // a miss under a reduced plan may be a hit once memory is back; only a full ladder's miss is definite
+            boolean definite = request.fullPlan && !request.ladder.isDegraded();
+            resolveImageRequest(request, BarcodeMapper.toJS(new ArrayList<>()), definite ? new ArrayList<>() : null);
+            return;
+        }
+
+        final String variant = request.order.get(index);
+        synchronized (request) {
+            request.preparing = true;
+        }
+        final InputImage image;
         try {
-            Bitmap scaled = Bitmap.createScaledBitmap(source, targetWidth, targetHeight, true);
-            if (scaled != source) {
-                try {
-                    source.recycle();
-                } catch (Exception ignored) {}
+            image = request.ladder.create(variant);
+        } finally {
+            synchronized (request) {
+                request.preparing = false;
             }
-            return scaled;
-        } catch (Exception ignored) {
-            return source;
         }
-    }
+        if (image == null) {
+            processImageCandidates(request, index + 1, attempted);
+            return;
+        }
 
-    private Bitmap createHighContrastBitmap(Bitmap source) {
-        if (source == null || source.isRecycled()) return null;
+        synchronized (request) {
+            if (request.stopReason != null) {
+                request.release();
+                saveCandidateStats(request.stats);
+                return;
+            }
+            request.inFlight = true;
+        }
 
-        try {
-            Bitmap output = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(output);
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-
-            ColorMatrix matrix = new ColorMatrix();
-            matrix.setSaturation(0f);
-
-            float contrast = 1.55f;
-            float translate = (-0.5f * contrast + 0.5f) * 255f;
-            ColorMatrix contrastMatrix = new ColorMatrix(
-                new float[] {
-                    contrast, 0, 0, 0, translate,
-                    0, contrast, 0, 0, translate,
-                    0, 0, contrast, 0, translate,
-                    0, 0, 0, 1, 0
+        // only the detector is timed: lazily built planes and crops are shared by later variants and
+        // would otherwise be charged to whichever variant happened to need them first
+        final long startedAt = SystemClock.elapsedRealtime();
+        request.imageScanner
+            .process(image)
+            .addOnCompleteListener(getImageExecutor(), (task) -> {
+                final long decodeMs = SystemClock.elapsedRealtime() - startedAt;
+                synchronized (request) {
+                    request.inFlight = false;
+                    if (request.stopReason != null) {
+                        request.release();
+                        return;
+                    }
+                }
+
+                List<Barcode> decoded = task.isSuccessful() ? filterDecodedBarcodes(task.getResult()) : new ArrayList<>();
+                // the stats rank variants by whether they read a code at all, whatever this call keeps of it
+                if (request.stats != null && !task.isCanceled()) {
+                    request.stats.record(variant, !decoded.isEmpty(), decodeMs);
+                }
+                List<Map<String, Object>> payments = null;
+                if (request.paymentPayloads && !decoded.isEmpty()) {
+                    // a corrupted or foreign read is no answer; later variants may still find the payment code
+                    PaymentPayloadStage stage = PaymentPayloadStage.apply(decoded, null);
+                    decoded = stage.barcodes;
+                    payments = stage.payloads;
                 }
-            );
-            matrix.postConcat(contrastMatrix);
 
-            paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-            canvas.drawBitmap(source, 0f, 0f, paint);
-            return output;
-        } catch (Exception ignored) {
-            return null;
+                if (!decoded.isEmpty()) {
+                    request.release();
+                    saveCandidateStats(request.stats);
+                    QrCodeScanner.appendToJournal(request.journal, decoded);
+                    JSObject result = BarcodeMapper.toJS(decoded, null, request.fields);
+                    attachPayments(result, payments);
+                    List<ImageResultCache.Decoded> codes = ImageResultCache.Decoded.of(decoded);
+                    if (request.structuredAppend) collectStructuredAppend(codes, result);
+                    resolveImageRequest(request, result, codes);
+                    return;
+                }
+
+                processImageCandidates(request, index + 1, true);
+            });
+    }
+
+    private synchronized CandidateStats getCandidateStats() {
+        if (candidateStats == null) {
+            SharedPreferences prefs = getContext().getSharedPreferences(CANDIDATE_STATS_PREFS, Context.MODE_PRIVATE);
+            candidateStats = CandidateStats.parse(prefs.getString(CANDIDATE_STATS_KEY, null));
         }
+        return candidateStats;
     }
 
-    private Bitmap createBinaryBitmap(Bitmap source) {
-        if (source == null || source.isRecycled()) return null;
+    private void saveCandidateStats(CandidateStats stats) {
+        if (stats == null) return;
+        try {
+            getContext()
+                .getSharedPreferences(CANDIDATE_STATS_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putString(CANDIDATE_STATS_KEY, stats.serialize())
+                .apply();
+        } catch (Exception ignored) {}
+    }
 
-        final int width = source.getWidth();
-        final int height = source.getHeight();
-        final int total = width * height;
-        if (total <= 0) return null;
+    // ===== Scan journal =====
 
-        try {
-            int[] pixels = new int[total];
-            source.getPixels(pixels, 0, width, 0, 0, width, height);
+    @PluginMethod
+    public void queryScanJournal(PluginCall call) {
+        runJournalTask(call, () -> queryJournal(call));
+    }
+
+    @PluginMethod
+    public void exportScanJournal(PluginCall call) {
+        runJournalTask(call, () -> exportJournal(call));
+    }
 
-            long sum = 0L;
-            for (int i = 0; i < total; i++) {
-                int c = pixels[i];
-                int r = (c >> 16) & 0xff;
-                int g = (c >> 8) & 0xff;
-                int b = c & 0xff;
-                int luma = (int) (0.299f * r + 0.587f * g + 0.114f * b);
-                sum += luma;
+    // opening, scanning and exporting the journal touch the disk, so they run with the image reads
+    private void runJournalTask(PluginCall call, Runnable work) {
+        final ImageWorkExecutor executor = getImageExecutor();
+        boolean admitted = executor.submit(ImageWorkExecutor.PRIORITY_LOW, () -> {
+            try {
+                work.run();
+            } finally {
+                executor.complete();
             }
+        });
+        if (!admitted) call.reject("Image decoder is busy");
+    }
+
+    private void queryJournal(PluginCall call) {
+        ScanJournal journal = getScanJournal();
+        if (journal == null) {
+            call.reject("Scan journal unavailable");
+            return;
+        }
 
-            int threshold = (int) (sum / total);
-            threshold = Math.max(80, Math.min(190, threshold));
+        Double since = call.getDouble("since");
+        Double until = call.getDouble("until");
+        String rawValue = call.getString("rawValue");
+        int limit = call.getInt("limit", 100);
 
-            for (int i = 0; i < total; i++) {
-                int c = pixels[i];
-                int r = (c >> 16) & 0xff;
-                int g = (c >> 8) & 0xff;
-                int b = c & 0xff;
-                int luma = (int) (0.299f * r + 0.587f * g + 0.114f * b);
-                pixels[i] = luma >= threshold ? Color.WHITE : Color.BLACK;
+        try {
+            byte[] filter = rawValue != null ? rawValue.getBytes(StandardCharsets.UTF_8) : null;
+            List<ScanJournal.Entry> entries = journal.query(
+                since != null ? since.longValue() : Long.MIN_VALUE,
+                until != null ? until.longValue() : Long.MAX_VALUE,
+                filter,
+                limit
+            );
+
+            JSArray array = new JSArray();
+            for (ScanJournal.Entry e : entries) {
+                JSObject o = new JSObject();
+                o.put("timestamp", e.timestampMs);
+                o.put("format", BarcodeMapper.mapFormat(e.format));
+                o.put("rawValue", e.payloadAsString());
+                o.put("payloadHash", Long.toHexString(e.payloadHash));
+                array.put(o);
             }
 
-            Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            output.setPixels(pixels, 0, width, 0, 0, width, height);
-            return output;
-        } catch (Exception ignored) {
-            return null;
+            JSObject ret = new JSObject();
+            ret.put("entries", array);
+            ret.put("total", journal.size());
+            if (filter != null) ret.put("occurrences", journal.countDuplicates(filter));
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject(e.getMessage() != null ? e.getMessage() : "Failed to query scan journal");
         }
     }
 
-    private Bitmap createCenteredSquare(Bitmap source, float ratio) {
-        if (source == null || source.isRecycled()) return null;
-        if (ratio <= 0f || ratio > 1f) return null;
-
-        int width = source.getWidth();
-        int height = source.getHeight();
-        int side = Math.max(1, Math.round(Math.min(width, height) * ratio));
+    private void exportJournal(PluginCall call) {
+        ScanJournal journal = getScanJournal();
+        if (journal == null) {
+            call.reject("Scan journal unavailable");
+            return;
+        }
 
-        if (side >= width && side >= height) return null;
+        // files only inside app storage; anything else must be a content:// URI the app was granted
+        Uri uri = normalizePathToUri(call.getString("path"));
+        File target = null;
+        if (uri == null) {
+            target = new File(getContext().getCacheDir(), "qr-scan-journal-" + System.currentTimeMillis() + ".jsonl");
+        } else if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            target = new File(uri.getPath());
+            if (!isInAppStorage(target)) {
+                call.reject("Export path must be inside app storage");
+                return;
+            }
+        } else if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            call.reject("Unsupported export path");
+            return;
+        }
 
-        int left = Math.max(0, (width - side) / 2);
-        int top = Math.max(0, (height - side) / 2);
+        try (OutputStream out = target != null ? new FileOutputStream(target) : getContext().getContentResolver().openOutputStream(uri, "wt")) {
+            if (out == null) throw new IOException("Unable to open " + uri);
+            long count = journal.exportJsonLines(out, BarcodeMapper::mapFormat);
+            JSObject ret = new JSObject();
+            ret.put("path", target != null ? Uri.fromFile(target).toString() : uri.toString());
+            ret.put("count", count);
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject(e.getMessage() != null ? e.getMessage() : "Failed to export scan journal");
+        }
+    }
 
+    private boolean isInAppStorage(File file) {
         try {
-            return Bitmap.createBitmap(source, left, top, side, side);
-        } catch (Exception ignored) {
-            return null;
+            String path = file.getCanonicalPath();
+            Context context = getContext();
+            File[] roots = { context.getFilesDir(), context.getCacheDir(), context.getNoBackupFilesDir(), context.getExternalFilesDir(null), context.getExternalCacheDir() };
+            for (File root : roots) {
+                if (root != null && path.startsWith(root.getCanonicalPath() + File.separator)) return true;
+            }
+        } catch (Exception ignored) {}
+        return false;
+    }
+
+    @PluginMethod
+    public void getImagePoolStats(PluginCall call) {
+        BitmapPool pool = getBitmapPool();
+        JSObject ret = new JSObject();
+        ret.put("hits", pool.getHits());
+        ret.put("misses", pool.getMisses());
+        ret.put("evictions", pool.getEvictions());
+        ret.put("pooledBytes", pool.getPooledBytes());
+        ret.put("budgetBytes", pool.getBudgetBytes());
+        MemoryBudget budget = getMemoryBudget();
+        ret.put("memoryBudgetBytes", budget.getCapacity());
+        ret.put("memoryReservedBytes", budget.getReserved());
+        ret.put("lumaOnlyDecodes", budget.getLumaOnlyPlans());
+        ret.put("reducedDecodes", budget.getReducedPlans());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getScanStats(PluginCall call) {
+        QrCodeScanner current = scanner;
+        if (current == null) {
+            call.reject("Scanner not started");
+            return;
+        }
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Object> e : current.getAnalysisStats().entrySet()) ret.put(e.getKey(), e.getValue());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void ackBarcodes(PluginCall call) {
+        QrCodeScanner current = scanner;
+        if (current == null) {
+            call.reject("Scanner not started");
+            return;
         }
+        Long eventId = call.getLong("eventId");
+        JSObject ret = new JSObject();
+        ret.put("unacknowledged", current.acknowledge(eventId != null ? eventId : 0L));
+        call.resolve(ret);
     }
 
-    private void addCandidate(List<InputImage> candidates, Bitmap bitmap, int rotationDegrees) {
-        if (bitmap == null || bitmap.isRecycled()) return;
-        if (candidates == null) return;
+    @PluginMethod
+    public void startFrameRecording(PluginCall call) {
+        QrCodeScanner current = scanner;
+        if (current == null) {
+            call.reject("Scanner not started");
+            return;
+        }
+
+        String name = call.getString("name", "frames-" + System.currentTimeMillis());
+        // only a file name: recordings always go to the app's files directory
+        File file = new File(new File(getContext().getFilesDir(), FRAME_RECORDING_DIR), new File(name).getName() + FrameRecording.SUFFIX);
+        Double cropFraction = call.getDouble("cropFraction");
 
         try {
-            candidates.add(InputImage.fromBitmap(bitmap, rotationDegrees));
-        } catch (Exception ignored) {}
+            current.startRecording(file, cropFraction != null ? cropFraction.floatValue() : 1f, call.getInt("maxFrames", 0));
+            JSObject ret = new JSObject();
+            ret.put("path", Uri.fromFile(file).toString());
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject(e.getMessage() != null ? e.getMessage() : "Failed to start frame recording");
+        }
     }
 
-    private List<Barcode> filterDecodedBarcodes(List<Barcode> barcodes) {
-        List<Barcode> decoded = new ArrayList<>();
-        if (barcodes == null || barcodes.isEmpty()) return decoded;
+    @PluginMethod
+    public void stopFrameRecording(PluginCall call) {
+        QrCodeScanner current = scanner;
+        Map<String, Object> recording = current != null ? current.stopRecording() : null;
+        if (recording == null) {
+            call.reject("No frame recording running");
+            return;
+        }
 
-        for (Barcode barcode : barcodes) {
-            if (barcode == null) continue;
-            if (!hasBarcodePayload(barcode)) continue;
-            decoded.add(barcode);
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Object> e : recording.entrySet()) ret.put(e.getKey(), e.getValue());
+        ret.put("path", Uri.fromFile(new File((String) recording.get("path"))).toString());
+        call.resolve(ret);
+    }
+
+    private synchronized BitmapPool getBitmapPool() {
+        if (bitmapPool == null) {
+            int budgetMb = getConfig().getInt("imagePoolMegabytes", -1);
+            bitmapPool = new BitmapPool(budgetMb >= 0 ? budgetMb * 1024L * 1024L : BitmapPool.defaultBudget());
         }
-        return decoded;
+        return bitmapPool;
     }
 
-    private boolean hasBarcodePayload(Barcode barcode) {
-        String raw = barcode.getRawValue();
-        if (raw != null && !raw.trim().isEmpty()) return true;
+    private synchronized MemoryBudget getMemoryBudget() {
+        if (memoryBudget == null) {
+            int budgetMb = getConfig().getInt("imageMemoryMegabytes", -1);
+            long capacity;
+            if (budgetMb > 0) {
+                capacity = budgetMb * 1024L * 1024L;
+            } else {
+                ActivityManager activityManager = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+                int memoryClass = activityManager != null ? activityManager.getMemoryClass() : 0;
+                boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+                capacity = MemoryBudget.capacityFor(Runtime.getRuntime().maxMemory(), memoryClass, lowRam);
+            }
+            memoryBudget = new MemoryBudget(capacity);
+        }
+        return memoryBudget;
+    }
 
-        String display = barcode.getDisplayValue();
-        return display != null && !display.trim().isEmpty();
+    private synchronized StructuredAppendBuffer getStructuredAppendBuffer() {
+        if (structuredAppend == null) {
+            structuredAppend = new StructuredAppendBuffer(getConfig().getInt("structuredAppendTimeoutMs", (int) StructuredAppendBuffer.DEFAULT_TIMEOUT_MS));
+        }
+        return structuredAppend;
     }
 
-    private void recycleBitmaps(Set<Bitmap> bitmaps) {
-        if (bitmaps == null || bitmaps.isEmpty()) return;
+    private synchronized ImageWorkExecutor getImageExecutor() {
+        if (imageWork == null) {
+            imageWork = new ImageWorkExecutor(
+                getConfig().getInt("imageThreads", DEFAULT_IMAGE_THREADS),
+                ImageWorkExecutor.parsePolicy(getConfig().getString("imageQueuePolicy", "queue")),
+                getConfig().getInt("imageQueueCapacity", DEFAULT_IMAGE_QUEUE_CAPACITY)
+            );
+        }
+        return imageWork;
+    }
 
-        for (Bitmap bitmap : bitmaps) {
-            if (bitmap == null || bitmap.isRecycled()) continue;
-            try {
-                bitmap.recycle();
-            } catch (Exception ignored) {}
+    private synchronized ImageResultCache getResultCache() {
+        if (resultCache == null) {
+            resultCache = new ImageResultCache(new File(getContext().getCacheDir(), RESULT_CACHE_DIR));
         }
-        bitmaps.clear();
+        return resultCache;
     }
 
-    private void processImageCandidates(
-        BarcodeScanner imageScanner,
-        List<InputImage> candidates,
-        int index,
-        Set<Bitmap> recyclableBitmaps,
-        PluginCall call
-    ) {
-        if (index >= candidates.size()) {
+    private synchronized ScanJournal getScanJournal() {
+        if (scanJournal == null) {
             try {
-                imageScanner.close();
-            } catch (Exception ignored) {}
-            recycleBitmaps(recyclableBitmaps);
-            call.resolve(BarcodeMapper.toJS(new ArrayList<>()));
-            return;
+                scanJournal = new ScanJournal(new File(getContext().getFilesDir(), SCAN_JOURNAL_DIR));
+            } catch (Exception ignored) {
+                return null;
+            }
         }
-
-        imageScanner
-            .process(candidates.get(index))
-            .addOnSuccessListener((barcodes) -> {
-                List<Barcode> decoded = filterDecodedBarcodes(barcodes);
-                if (!decoded.isEmpty()) {
-                    try {
-                        imageScanner.close();
-                    } catch (Exception ignored) {}
-                    recycleBitmaps(recyclableBitmaps);
-                    call.resolve(BarcodeMapper.toJS(decoded));
-                    return;
-                }
-
-                processImageCandidates(imageScanner, candidates, index + 1, recyclableBitmaps, call);
-            })
-            .addOnFailureListener((e) -> processImageCandidates(imageScanner, candidates, index + 1, recyclableBitmaps, call))
-            .addOnCanceledListener(() -> processImageCandidates(imageScanner, candidates, index + 1, recyclableBitmaps, call));
+        return scanJournal;
     }
 
     // ===== Permissions =====
@@ -782,4 +1455,67 @@ public class QrCodeScannerPlugin extends Plugin {
             cameraContainer = null;
         }
     }
+
+    /** Per-call state of a readBarcodesFromImage request. */
+    private static final class ImageRequest {
+
+        final PluginCall call;
+        String requestId;
+        ScanJournal journal;
+        String cacheKey;
+        boolean cacheToDisk;
+        BarcodeScanner imageScanner;
+        ImageCandidateLadder ladder;
+        TiledBarcodeReader tiledReader;
+        PdfBarcodeReader pdfReader;
+        // readBarcodesFromPdf: resolves with pages instead of barcodes
+        boolean pdf;
+        CandidateStats stats;
+        List<String> order;
+        Runnable timeoutRunnable;
+        MemoryBudget budget;
+        MemoryBudget.Plan plan;
+        // the budget granted the natural-size plan with every plane, so a miss is worth caching
+        boolean fullPlan;
+        boolean structuredAppend;
+        boolean paymentPayloads;
+        ResultFields fields = ResultFields.ALL;
+
+        // "timeout" or "cancelled" once cut short
+        volatile String stopReason;
+        // guarded by "this"; the ladder is only released by the worker, never while it is building or decoding a variant
+        boolean preparing;
+        boolean inFlight;
+        boolean started;
+        boolean slotReleased;
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+
+        ImageRequest(PluginCall call) {
+            this.call = call;
+        }
+
+        /** Returns true exactly once, for whoever gets to resolve or reject the call. */
+        boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+
+        boolean isSettled() {
+            return settled.get();
+        }
+
+        synchronized void release() {
+            if (preparing || inFlight) return;
+            if (imageScanner != null) {
+                try {
+                    imageScanner.close();
+                } catch (Exception ignored) {}
+                imageScanner = null;
+            }
+            if (ladder != null) ladder.release();
+            if (plan != null) {
+                budget.release(plan);
+                plan = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package com.bakai.plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The set of barcode fields a call asked for, parsed once from the {@code fields} option into a
+ * bit mask so that mapping a result is a few bit tests instead of string lookups.
+ */
+final class ResultFields {
+
+    static final int DISPLAY_VALUE = 1;
+    static final int RAW_VALUE = 1 << 1;
+    static final int FORMAT = 1 << 2;
+    static final int VALUE_TYPE = 1 << 3;
+    static final int BYTES = 1 << 4;
+    static final int CORNER_POINTS = 1 << 5;
+    static final int URL_BOOKMARK = 1 << 6;
+    static final int WIFI = 1 << 7;
+    static final int EMAIL = 1 << 8;
+    static final int PHONE = 1 << 9;
+    static final int GEO_POINT = 1 << 10;
+    static final int SMS = 1 << 11;
+
+    /** Event keys, indexed by bit. */
+    static final String[] NAMES = {
+        "displayValue",
+        "rawValue",
+        "format",
+        "valueType",
+        "bytes",
+        "cornerPoints",
+        "urlBookmark",
+        "wifi",
+        "email",
+        "phone",
+        "geoPoint",
+        "sms"
+    };
+
+    static final int TYPE_DETAILS = URL_BOOKMARK | WIFI | EMAIL | PHONE | GEO_POINT | SMS;
+    static final int ALL_MASK = (1 << NAMES.length) - 1;
+    static final ResultFields ALL = new ResultFields(ALL_MASK);
+
+    /** One barcode as {@link #write} reads it; only the fields the selection keeps are asked for. */
+    interface Source {
+        String displayValue();
+
+        String rawValue();
+
+        String format();
+
+        String valueType();
+
+        /** The raw bytes as an array value, or null when there are none. */
+        Object bytes();
+
+        /** The four corner points as an array value, or null. */
+        Object cornerPoints();
+
+        /** The type-detail field this barcode carries ({@link #URL_BOOKMARK}, {@link #WIFI}, ...), or 0. */
+        int detailField();
+
+        /** The object value of {@link #detailField()}, or null. */
+        Object detail();
+    }
+
+    interface Output {
+        void put(String key, Object value);
+    }
+
+    final int mask;
+
+    private ResultFields(int mask) {
+        this.mask = mask;
+    }
+
+    /** Parses field names; null means every field. An empty list or an unknown name throws. */
+    static ResultFields parse(Collection<String> names) {
+        if (names == null) return ALL;
+        if (names.isEmpty()) throw new IllegalArgumentException("fields must name at least one field");
+
+        int mask = 0;
+        for (String name : names) {
+            int bit = indexOf(name);
+            if (bit < 0) throw new IllegalArgumentException("Unknown field: " + name);
+            mask |= 1 << bit;
+        }
+        return mask == ALL_MASK ? ALL : new ResultFields(mask);
+    }
+
+    boolean has(int field) {
+        return (mask & field) != 0;
+    }
+
+    boolean isAll() {
+        return mask == ALL_MASK;
+    }
+
+    /** Puts the selected fields of {@code barcode} into {@code out}, in event order. */
+    void write(Source barcode, Output out) {
+        if (has(DISPLAY_VALUE)) out.put("displayValue", barcode.displayValue());
+        if (has(RAW_VALUE)) out.put("rawValue", barcode.rawValue());
+        if (has(FORMAT)) out.put("format", barcode.format());
+        if (has(VALUE_TYPE)) out.put("valueType", barcode.valueType());
+        if (has(BYTES)) {
+            Object bytes = barcode.bytes();
+            if (bytes != null) out.put("bytes", bytes);
+        }
+        if (has(CORNER_POINTS)) {
+            Object corners = barcode.cornerPoints();
+            if (corners != null) out.put("cornerPoints", corners);
+        }
+        if (!has(TYPE_DETAILS)) return;
+
+        int detail = barcode.detailField();
+        if (detail == 0 || !has(detail)) return;
+        Object value = barcode.detail();
+        if (value != null) out.put(NAMES[Integer.numberOfTrailingZeros(detail)], value);
+    }
+
+    /** Stable name of the selection, e.g. for cache keys. */
+    String key() {
+        if (isAll()) return "all";
+        List<String> names = new ArrayList<>();
+        for (int bit = 0; bit < NAMES.length; bit++) {
+            if ((mask & (1 << bit)) != 0) names.add(NAMES[bit]);
+        }
+        return String.join(",", names);
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,552 @@
+package com.bakai.plugin;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only scan journal stored as memory-mapped segment files.
+ *
+ * Segment layout: [int magic][records...][int 0]
+ * Record layout:  [int recordLength][long timestampMs][int format][long payloadHash][int payloadLength][payload bytes]
+ *
+ * Appends are a bounds check plus a few puts into the mapped buffer, so they are safe to call
+ * for every decoded frame. The payload-hash index lives in memory and is rebuilt on open.
+ *
+ * Only appends and index updates hold the lock. Queries and exports copy the segment views and
+ * index entries they need under it and read outside, and a full segment is forced to disk and its
+ * successor mapped on a background thread, so readers and rotation never stall the scanner.
+ */
+final class ScanJournal {
+
+    private static final int SEGMENT_MAGIC = 0x514a5231; // "QJR1"
+    private static final int RECORD_HEADER_BYTES = 4 + 8 + 4 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".qrj";
+
+    static final int DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    /** Names a barcode format for exports, e.g. {@link BarcodeMapper#mapFormat}. */
+    interface FormatNames {
+        String nameOf(int format);
+    }
+
+    static final class Entry {
+
+        final long timestampMs;
+        final int format;
+        final long payloadHash;
+        final byte[] payload;
+
+        Entry(long timestampMs, int format, long payloadHash, byte[] payload) {
+            this.timestampMs = timestampMs;
+            this.format = format;
+            this.payloadHash = payloadHash;
+            this.payload = payload;
+        }
+
+        String payloadAsString() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    // segment ids, oldest first
+    private final List<Long> segmentIds = new ArrayList<>();
+
+    // payloadHash -> packed (segmentId << 32 | offset) locations, oldest first
+    private final Map<Long, long[]> hashIndex = new HashMap<>();
+
+    // read-only mappings of sealed segments
+    private final Map<Long, MappedByteBuffer> sealedMappings = new HashMap<>();
+
+    private long activeSegmentId = -1L;
+    private RandomAccessFile activeFile;
+    private MappedByteBuffer activeBuffer;
+    private long recordCount = 0L;
+
+    // the next segment, mapped ahead of time once the active one is half full
+    private long spareId = -1L;
+    private RandomAccessFile spareFile;
+    private MappedByteBuffer spareBuffer;
+    private boolean sparePending = false;
+    private boolean closed = false;
+
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ScanJournal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ScanJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    ScanJournal(File directory, int segmentBytes, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.maxSegments = Math.max(2, maxSegments);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+
+        loadSegments();
+    }
+
+    static long hashPayload(byte[] payload) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        if (payload == null) return hash;
+        for (byte b : payload) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    synchronized long size() {
+        return recordCount;
+    }
+
+    /** Appends one record and returns how many times the same payload was seen before. */
+    synchronized int append(long timestampMs, int format, byte[] payload) throws IOException {
+        if (payload == null) payload = new byte[0];
+
+        int recordLength = RECORD_HEADER_BYTES + payload.length;
+        if (recordLength + 8 > segmentBytes) {
+            throw new IOException("Payload too large for journal segment");
+        }
+
+        if (activeBuffer == null || activeBuffer.remaining() < recordLength + 4) {
+            rotate();
+        }
+
+        long hash = hashPayload(payload);
+        int offset = activeBuffer.position();
+
+        activeBuffer.putInt(recordLength);
+        activeBuffer.putLong(timestampMs);
+        activeBuffer.putInt(format);
+        activeBuffer.putLong(hash);
+        activeBuffer.putInt(payload.length);
+        activeBuffer.put(payload);
+        // terminator, overwritten by the next append
+        activeBuffer.putInt(activeBuffer.position(), 0);
+
+        recordCount++;
+        if (activeBuffer.position() > segmentBytes / 2) prepareSpare(activeSegmentId + 1);
+        return indexRecord(hash, activeSegmentId, offset);
+    }
+
+    synchronized int countDuplicates(byte[] payload) {
+        long[] locations = hashIndex.get(hashPayload(payload));
+        return locations != null ? (int) locations[0] : 0;
+    }
+
+    /**
+     * Returns entries in append order. {@code payloadFilter} restricts results to one payload
+     * using the hash index instead of a full scan.
+     */
+    List<Entry> query(long sinceMs, long untilMs, byte[] payloadFilter, int limit) throws IOException {
+        List<Entry> out = new ArrayList<>();
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+
+        final Map<Long, ByteBuffer> segments;
+        long[] locations = null;
+        synchronized (this) {
+            if (payloadFilter != null) {
+                long[] indexed = hashIndex.get(hashPayload(payloadFilter));
+                if (indexed == null) return out;
+                locations = Arrays.copyOf(indexed, (int) indexed[0] + 1);
+            }
+            segments = snapshotSegments();
+        }
+
+        if (locations != null) {
+            int count = (int) locations[0];
+            for (int i = 1; i <= count && out.size() < max; i++) {
+                ByteBuffer buffer = segments.get(locations[i] >>> 32);
+                int offset = (int) locations[i];
+                if (buffer == null || !isRecordAt(buffer, offset)) continue;
+                Entry e = readRecord(buffer, offset);
+                if (e.timestampMs < sinceMs || e.timestampMs > untilMs) continue;
+                if (!Arrays.equals(e.payload, payloadFilter)) continue;
+                out.add(e);
+            }
+            return out;
+        }
+
+        for (ByteBuffer buffer : segments.values()) {
+            int pos = 4;
+            while (out.size() < max && isRecordAt(buffer, pos)) {
+                long ts = buffer.getLong(pos + 4);
+                if (ts >= sinceMs && ts <= untilMs) {
+                    out.add(readRecord(buffer, pos));
+                }
+                pos += buffer.getInt(pos);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Writes every entry to {@code out} as one JSON object per line, with the keys
+     * {@code queryScanJournal} uses, and returns the number of entries written. {@code out} is
+     * flushed, not closed.
+     */
+    long exportJsonLines(OutputStream out, FormatNames formats) throws IOException {
+        long written = 0L;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (Entry e : query(Long.MIN_VALUE, Long.MAX_VALUE, null, 0)) {
+            writer.write("{\"timestamp\":");
+            writer.write(Long.toString(e.timestampMs));
+            writer.write(",\"format\":");
+            writeJsonString(writer, formats.nameOf(e.format));
+            writer.write(",\"payloadHash\":\"");
+            writer.write(Long.toHexString(e.payloadHash));
+            writer.write("\",\"rawValue\":");
+            writeJsonString(writer, e.payloadAsString());
+            writer.write("}\n");
+            written++;
+        }
+        writer.flush();
+        return written;
+    }
+
+    synchronized void flush() {
+        if (activeBuffer != null) {
+            try {
+                activeBuffer.force();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        flush();
+        closeActive();
+        discardSpare();
+        sealedMappings.clear();
+        // pending forces of sealed segments still run
+        background.shutdown();
+    }
+
+    // ===== internals =====
+
+    private void loadSegments() throws IOException {
+        File[] files = directory.listFiles();
+        List<Long> ids = new ArrayList<>();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        ids.sort(null);
+
+        for (Long id : ids) {
+            MappedByteBuffer buffer = mapSegment(id);
+            if (buffer == null || buffer.getInt(0) != SEGMENT_MAGIC) {
+                //noinspection ResultOfMethodCallIgnored
+                segmentFile(id).delete();
+                continue;
+            }
+            segmentIds.add(id);
+
+            int pos = 4;
+            while (isRecordAt(buffer, pos)) {
+                indexRecord(buffer.getLong(pos + 16), id, pos);
+                recordCount++;
+                pos += buffer.getInt(pos);
+            }
+        }
+
+        if (!segmentIds.isEmpty()) {
+            long lastId = segmentIds.get(segmentIds.size() - 1);
+            sealedMappings.remove(lastId);
+            openActive(lastId);
+            // a torn last record is overwritten by the next append
+            int pos = 4;
+            while (isRecordAt(activeBuffer, pos)) pos += activeBuffer.getInt(pos);
+            activeBuffer.position(pos);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (closed) throw new IOException("Journal closed");
+        long nextId = activeSegmentId + 1;
+        if (!segmentIds.isEmpty()) nextId = Math.max(nextId, segmentIds.get(segmentIds.size() - 1) + 1);
+
+        final MappedByteBuffer sealed = activeBuffer;
+        final RandomAccessFile sealedFile = activeFile;
+        if (sealed != null) {
+            // readers keep using the mapping; forcing it is the slow part and nobody waits for it
+            sealedMappings.put(activeSegmentId, sealed);
+            background.execute(() -> {
+                try {
+                    sealed.force();
+                } catch (Exception ignored) {}
+                try {
+                    sealedFile.close();
+                } catch (Exception ignored) {}
+            });
+        }
+        activeBuffer = null;
+        activeFile = null;
+
+        while (segmentIds.size() >= maxSegments) {
+            dropSegment(segmentIds.remove(0));
+        }
+
+        segmentIds.add(nextId);
+        if (spareBuffer != null && spareId == nextId) {
+            activeFile = spareFile;
+            activeBuffer = spareBuffer;
+            activeSegmentId = spareId;
+            spareFile = null;
+            spareBuffer = null;
+            spareId = -1L;
+        } else {
+            discardSpare();
+            openActive(nextId);
+        }
+        activeBuffer.putInt(0, SEGMENT_MAGIC);
+        activeBuffer.putInt(4, 0);
+        activeBuffer.position(4);
+    }
+
+    private void dropSegment(long id) throws IOException {
+        MappedByteBuffer buffer = mapSegment(id);
+        if (buffer != null) {
+            int pos = 4;
+            while (isRecordAt(buffer, pos)) {
+                unindexOldest(buffer.getLong(pos + 16));
+                recordCount--;
+                pos += buffer.getInt(pos);
+            }
+        }
+        sealedMappings.remove(id);
+        //noinspection ResultOfMethodCallIgnored
+        segmentFile(id).delete();
+    }
+
+    private void openActive(long id) throws IOException {
+        activeFile = new RandomAccessFile(segmentFile(id), "rw");
+        activeFile.setLength(segmentBytes);
+        activeBuffer = activeFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        activeBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        activeSegmentId = id;
+    }
+
+    /** Maps segment {@code id} on the background thread; {@link #rotate} takes it if it is ready. */
+    private void prepareSpare(final long id) {
+        if (closed || sparePending || spareId == id) return;
+        sparePending = true;
+        background.execute(() -> {
+            RandomAccessFile file = null;
+            MappedByteBuffer buffer = null;
+            try {
+                file = new RandomAccessFile(segmentFile(id), "rw");
+                file.setLength(segmentBytes);
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (Exception ignored) {
+                buffer = null;
+            }
+
+            synchronized (ScanJournal.this) {
+                sparePending = false;
+                // too late: the journal closed or already rotated past it
+                if (buffer == null || closed || id != activeSegmentId + 1) {
+                    closeQuietly(file);
+                    if (buffer != null && !segmentIds.contains(id)) {
+                        //noinspection ResultOfMethodCallIgnored
+                        segmentFile(id).delete();
+                    }
+                    return;
+                }
+                discardSpare();
+                spareId = id;
+                spareFile = file;
+                spareBuffer = buffer;
+            }
+        });
+    }
+
+    private void discardSpare() {
+        if (spareBuffer == null) return;
+        closeQuietly(spareFile);
+        // a spare never got its magic, so a reopen would drop it anyway
+        if (!segmentIds.contains(spareId)) {
+            //noinspection ResultOfMethodCallIgnored
+            segmentFile(spareId).delete();
+        }
+        spareFile = null;
+        spareBuffer = null;
+        spareId = -1L;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * Read-only views of every segment, oldest first, each limited to the records written so far.
+     * Valid after the lock is released: records below the limit are never rewritten, and a dropped
+     * segment's mapping outlives its file.
+     */
+    private Map<Long, ByteBuffer> snapshotSegments() throws IOException {
+        Map<Long, ByteBuffer> out = new LinkedHashMap<>();
+        for (Long id : segmentIds) {
+            MappedByteBuffer buffer = mapSegment(id);
+            if (buffer == null) continue;
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.order(ByteOrder.LITTLE_ENDIAN);
+            view.position(0);
+            view.limit(id == activeSegmentId && activeBuffer != null ? activeBuffer.position() : buffer.limit());
+            out.put(id, view);
+        }
+        return out;
+    }
+
+    private static boolean isRecordAt(ByteBuffer buffer, int pos) {
+        if (pos < 4 || pos + RECORD_HEADER_BYTES > buffer.limit()) return false;
+        int recordLength = buffer.getInt(pos);
+        return recordLength >= RECORD_HEADER_BYTES && pos + recordLength <= buffer.limit() && buffer.getInt(pos + 24) == recordLength - RECORD_HEADER_BYTES;
+    }
+
+    private void closeActive() {
+        activeBuffer = null;
+        if (activeFile != null) {
+            try {
+                activeFile.close();
+            } catch (Exception ignored) {}
+            activeFile = null;
+        }
+    }
+
+    private MappedByteBuffer mapSegment(long id) throws IOException {
+        if (id == activeSegmentId && activeBuffer != null) return activeBuffer;
+
+        MappedByteBuffer cached = sealedMappings.get(id);
+        if (cached != null) return cached;
+
+        File f = segmentFile(id);
+        if (!f.isFile() || f.length() < 8) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            sealedMappings.put(id, buffer);
+            return buffer;
+        }
+    }
+
+    private static Entry readRecord(ByteBuffer buffer, int pos) {
+        long ts = buffer.getLong(pos + 4);
+        int format = buffer.getInt(pos + 12);
+        long hash = buffer.getLong(pos + 16);
+        int len = buffer.getInt(pos + 24);
+
+        byte[] payload = new byte[Math.max(0, len)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + RECORD_HEADER_BYTES);
+        view.get(payload);
+        return new Entry(ts, format, hash, payload);
+    }
+
+    private int indexRecord(long hash, long segmentId, int offset) {
+        long packed = (segmentId << 32) | (offset & 0xffffffffL);
+        long[] locations = hashIndex.get(hash);
+        if (locations == null) {
+            locations = new long[4];
+            hashIndex.put(hash, locations);
+        }
+
+        int count = (int) locations[0];
+        if (count + 1 >= locations.length) {
+            locations = Arrays.copyOf(locations, locations.length * 2);
+            hashIndex.put(hash, locations);
+        }
+        locations[count + 1] = packed;
+        locations[0] = count + 1;
+        return count;
+    }
+
+    private void unindexOldest(long hash) {
+        long[] locations = hashIndex.get(hash);
+        if (locations == null) return;
+
+        int count = (int) locations[0];
+        if (count <= 1) {
+            hashIndex.remove(hash);
+            return;
+        }
+        System.arraycopy(locations, 2, locations, 1, count - 1);
+        locations[0] = count - 1;
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, SEGMENT_PREFIX + String.format(java.util.Locale.US, "%08d", id) + SEGMENT_SUFFIX);
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format(java.util.Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
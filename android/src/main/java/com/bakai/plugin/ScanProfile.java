@@ -0,0 +1,127 @@
+package com.bakai.plugin;
+
+import android.annotation.SuppressLint;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.util.Range;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
+import androidx.camera.core.CameraInfo;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ExtendableBuilder;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Capture settings tuned for reading codes rather than taking photos, applied through
+ * {@link Camera2Interop} on top of the CameraX defaults.
+ *
+ * Every setting is only used when the camera lists it as available:
+ * - a fixed 30 fps AE range (or the tightest range ending at 30), which also caps exposure at ~33 ms
+ *   so hand shake blurs less
+ * - the barcode scene mode where the HAL offers it, which vendors tune for close focus
+ * - continuous AF, and on fixed-focus modules nothing at all
+ * - fast noise reduction and edge enhancement, so the ISP adds less latency per frame
+ * - video stabilization off, which otherwise crops and delays frames
+ */
+final class ScanProfile {
+
+    private static final int TARGET_FPS = 30;
+
+    private Range<Integer> fpsRange;
+    private Integer sceneMode;
+    private Integer afMode;
+    private Integer noiseReductionMode;
+    private Integer edgeMode;
+    private Integer stabilizationMode;
+
+    private ScanProfile() {}
+
+    /** Picks the settings supported by the camera {@code selector} resolves to. */
+    @SuppressLint("UnsafeOptInUsageError")
+    static ScanProfile resolve(ProcessCameraProvider provider, CameraSelector selector) {
+        ScanProfile profile = new ScanProfile();
+
+        CameraCharacteristics characteristics = null;
+        try {
+            List<CameraInfo> infos = selector.filter(provider.getAvailableCameraInfos());
+            if (!infos.isEmpty()) characteristics = Camera2CameraInfo.extractCameraCharacteristics(infos.get(0));
+        } catch (Exception ignored) {}
+        if (characteristics == null) return profile;
+
+        profile.fpsRange = pickFpsRange(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES));
+
+        int[] sceneModes = characteristics.get(CameraCharacteristics.CONTROL_AVAILABLE_SCENE_MODES);
+        if (contains(sceneModes, CameraMetadata.CONTROL_SCENE_MODE_BARCODE)) profile.sceneMode = CameraMetadata.CONTROL_SCENE_MODE_BARCODE;
+
+        Float minFocusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (minFocusDistance != null && minFocusDistance > 0f) {
+            if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+                profile.afMode = CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+            } else if (contains(afModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO)) {
+                profile.afMode = CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+            }
+        }
+
+        int[] nrModes = characteristics.get(CameraCharacteristics.NOISE_REDUCTION_AVAILABLE_NOISE_REDUCTION_MODES);
+        if (contains(nrModes, CameraMetadata.NOISE_REDUCTION_MODE_FAST)) profile.noiseReductionMode = CameraMetadata.NOISE_REDUCTION_MODE_FAST;
+
+        int[] edgeModes = characteristics.get(CameraCharacteristics.EDGE_AVAILABLE_EDGE_MODES);
+        if (contains(edgeModes, CameraMetadata.EDGE_MODE_FAST)) profile.edgeMode = CameraMetadata.EDGE_MODE_FAST;
+
+        int[] stabilizationModes = characteristics.get(CameraCharacteristics.CONTROL_AVAILABLE_VIDEO_STABILIZATION_MODES);
+        if (contains(stabilizationModes, CameraMetadata.CONTROL_VIDEO_STABILIZATION_MODE_OFF)) {
+            profile.stabilizationMode = CameraMetadata.CONTROL_VIDEO_STABILIZATION_MODE_OFF;
+        }
+        return profile;
+    }
+
+    @SuppressLint("UnsafeOptInUsageError")
+    void applyTo(ExtendableBuilder<?> builder) {
+        Camera2Interop.Extender<?> extender = new Camera2Interop.Extender<>(builder);
+        if (fpsRange != null) extender.setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+        if (sceneMode != null) {
+            extender.setCaptureRequestOption(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_USE_SCENE_MODE);
+            extender.setCaptureRequestOption(CaptureRequest.CONTROL_SCENE_MODE, sceneMode);
+        }
+        if (afMode != null) extender.setCaptureRequestOption(CaptureRequest.CONTROL_AF_MODE, afMode);
+        if (noiseReductionMode != null) extender.setCaptureRequestOption(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
+        if (edgeMode != null) extender.setCaptureRequestOption(CaptureRequest.EDGE_MODE, edgeMode);
+        if (stabilizationMode != null) extender.setCaptureRequestOption(CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE, stabilizationMode);
+    }
+
+    /** What was applied, for the {@code scanProfileApplied} event; settings the camera lacks are left out. */
+    Map<String, Object> describe() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        if (fpsRange != null) out.put("fpsRange", fpsRange.getLower() + "-" + fpsRange.getUpper());
+        if (sceneMode != null) out.put("sceneMode", "barcode");
+        if (afMode != null) out.put("afMode", afMode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE ? "continuous-picture" : "continuous-video");
+        if (noiseReductionMode != null) out.put("noiseReduction", "fast");
+        if (edgeMode != null) out.put("edgeMode", "fast");
+        if (stabilizationMode != null) out.put("videoStabilization", "off");
+        return out;
+    }
+
+    private static Range<Integer> pickFpsRange(Range<Integer>[] ranges) {
+        if (ranges == null) return null;
+        Range<Integer> best = null;
+        for (Range<Integer> r : ranges) {
+            if (r.getUpper() != TARGET_FPS) continue;
+            // a higher lower bound keeps AE from stretching exposure in dim light
+            if (best == null || r.getLower() > best.getLower()) best = r;
+        }
+        return best;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        if (values == null) return false;
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package com.bakai.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Monotonic startup milestones of one camera session, from {@code startScan} to the first emitted
+ * barcode. Each milestone is recorded once; {@link #toMillis()} reports them as offsets from
+ * {@link #begin()}.
+ */
+final class ScanTimeline {
+
+    static final String PROVIDER_READY = "providerReady";
+    static final String USE_CASES_BOUND = "useCasesBound";
+    static final String FIRST_PREVIEW_FRAME = "firstPreviewFrame";
+    static final String FIRST_ANALYZED_FRAME = "firstAnalyzedFrame";
+    static final String FIRST_DETECTOR_RESULT = "firstDetectorResult";
+    static final String FIRST_BARCODE = "firstBarcode";
+
+    static final String[] MILESTONES = {
+        PROVIDER_READY,
+        USE_CASES_BOUND,
+        FIRST_PREVIEW_FRAME,
+        FIRST_ANALYZED_FRAME,
+        FIRST_DETECTOR_RESULT,
+        FIRST_BARCODE
+    };
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    private final Clock clock;
+    private long beganAtNs = -1L;
+    // guarded by "this"; insertion order is the order milestones were reached
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    ScanTimeline(Clock clock) {
+        this.clock = clock;
+    }
+
+    synchronized void begin() {
+        beganAtNs = clock.nanoTime();
+        marks.clear();
+    }
+
+    synchronized boolean isStarted() {
+        return beganAtNs >= 0L;
+    }
+
+    /** Records {@code milestone} the first time it is reached; returns false when it already was, or before {@link #begin()}. */
+    synchronized boolean mark(String milestone) {
+        if (beganAtNs < 0L || marks.containsKey(milestone)) return false;
+        marks.put(milestone, clock.nanoTime() - beganAtNs);
+        return true;
+    }
+
+    synchronized boolean has(String milestone) {
+        return marks.containsKey(milestone);
+    }
+
+    /** Milestones reached so far, in milliseconds since {@link #begin()} (fractional). */
+    synchronized Map<String, Double> toMillis() {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : marks.entrySet()) out.put(e.getKey(), e.getValue() / 1e6);
+        return out;
+    }
+}
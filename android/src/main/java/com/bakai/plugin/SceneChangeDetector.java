@@ -0,0 +1,106 @@
+package com.bakai.plugin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tells the live scanner whether the camera is looking at the same scene as on the previous
+ * frame. Each frame's luma plane is reduced to a {@link #GRID}x{@link #GRID} thumbnail of cell
+ * means, read straight from the plane with a few samples per cell, and compared with the previous
+ * thumbnail. The mean brightness shift is taken out first, so auto-exposure settling is not
+ * motion; a change is enough cells moving by more than {@link #CELL_THRESHOLD}.
+ *
+ * Both thumbnails are reused int arrays, so a frame costs about {@code GRID * GRID * SAMPLES^2}
+ * reads and no allocation. With {@code analysisThreads > 1} frames reach {@link #update} from
+ * several pool threads, possibly at once, so it is synchronized; overlapping frames may then be
+ * compared out of order, which at worst reports one extra change.
+ */
+final class SceneChangeDetector {
+
+    static final int GRID = 24;
+    static final int SAMPLES = 4;
+    /** Luma difference of a cell mean, after the brightness shift, that counts the cell as changed. */
+    static final int CELL_THRESHOLD = 10;
+    /** Share of changed cells that makes a frame a scene change. */
+    static final float CHANGED_FRACTION = 0.02f;
+
+    private int[] thumbnail = new int[GRID * GRID];
+    private int[] previous = new int[GRID * GRID];
+    private int gridWidth;
+    private int gridHeight;
+    private int lastWidth = -1;
+    private int lastHeight = -1;
+
+    private volatile long frames;
+    private volatile long changes;
+
+    /**
+     * Samples a {@code width x height} luma plane and returns true when it differs from the previous
+     * one. The first frame, and any frame of a new size, is a change.
+     */
+    synchronized boolean update(ByteBuffer plane, int rowStride, int width, int height) {
+        frames++;
+        final boolean sameShape = width == lastWidth && height == lastHeight;
+        if (!sameShape) {
+            lastWidth = width;
+            lastHeight = height;
+            gridWidth = Math.min(GRID, width);
+            gridHeight = Math.min(GRID, height);
+        }
+
+        sample(plane, rowStride, width, height);
+        boolean changed = !sameShape || differs();
+
+        int[] swap = previous;
+        previous = thumbnail;
+        thumbnail = swap;
+
+        if (changed) changes++;
+        return changed;
+    }
+
+    private void sample(ByteBuffer plane, int rowStride, int width, int height) {
+        final int cellWidth = width / gridWidth;
+        final int cellHeight = height / gridHeight;
+        final int stepX = Math.max(1, cellWidth / SAMPLES);
+        final int stepY = Math.max(1, cellHeight / SAMPLES);
+        final int samplesX = Math.min(SAMPLES, cellWidth);
+        final int samplesY = Math.min(SAMPLES, cellHeight);
+        final int count = samplesX * samplesY;
+
+        for (int gy = 0; gy < gridHeight; gy++) {
+            // samples sit in the middle of their sub-cell, away from the cell borders
+            final int top = gy * cellHeight + stepY / 2;
+            for (int gx = 0; gx < gridWidth; gx++) {
+                final int left = gx * cellWidth + stepX / 2;
+                int sum = 0;
+                for (int sy = 0; sy < samplesY; sy++) {
+                    final int row = (top + sy * stepY) * rowStride + left;
+                    for (int sx = 0; sx < samplesX; sx++) sum += plane.get(row + sx * stepX) & 0xff;
+                }
+                thumbnail[gy * gridWidth + gx] = sum / count;
+            }
+        }
+    }
+
+    private boolean differs() {
+        final int cells = gridWidth * gridHeight;
+        int shift = 0;
+        for (int i = 0; i < cells; i++) shift += thumbnail[i] - previous[i];
+        shift /= cells;
+
+        final int limit = Math.max(1, (int) (cells * CHANGED_FRACTION));
+        int changed = 0;
+        for (int i = 0; i < cells; i++) {
+            if (Math.abs(thumbnail[i] - previous[i] - shift) > CELL_THRESHOLD && ++changed >= limit) return true;
+        }
+        return false;
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    long changes() {
+        return changes;
+    }
+}
@@ -0,0 +1,187 @@
+package com.bakai.plugin;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Byte-budgeted pool of reusable objects, grouped by kind and size bucket.
+ *
+ * Buckets are quarter steps between powers of two, so an object handed out for a request is at most
+ * ~19% larger than needed. Idle objects count against one global budget; once it is exceeded the
+ * least recently returned ones are handed to the {@link Evictor}. Lookups try the request's own
+ * bucket first and then the next one, whose objects always fit.
+ *
+ * {@link BitmapPool} wraps it for bitmaps and pixel buffers.
+ */
+final class SizeBucketPool {
+
+    interface Evictor {
+        void evict(int kind, Object value);
+    }
+
+    private static final class Entry {
+
+        final int kind;
+        final int bucket;
+        final Object value;
+        final long bytes;
+
+        Entry(int kind, int bucket, Object value, long bytes) {
+            this.kind = kind;
+            this.bucket = bucket;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long budgetBytes;
+    private final Evictor evictor;
+
+    // guarded by "this"
+    private final Map<Long, ArrayDeque<Entry>> buckets = new HashMap<>();
+    // oldest first
+    private final LinkedHashSet<Entry> idle = new LinkedHashSet<>();
+    private long idleBytes = 0L;
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+
+    SizeBucketPool(long budgetBytes, Evictor evictor) {
+        this.budgetBytes = Math.max(0L, budgetBytes);
+        this.evictor = evictor;
+    }
+
+    /** Index of the smallest bucket whose capacity holds {@code bytes}. */
+    static int bucketFor(long bytes) {
+        if (bytes <= 4L) return 0;
+        int exponent = 63 - Long.numberOfLeadingZeros(bytes - 1);
+        long base = 1L << exponent;
+        // quarters of (base, 2*base]
+        long step = Math.max(1L, base >> 2);
+        int quarter = (int) Math.min(3L, (bytes - base - 1) / step);
+        return exponent * 4 + quarter;
+    }
+
+    /** Largest size that still falls into {@code bucket}. */
+    static long bucketCapacity(int bucket) {
+        if (bucket <= 0) return 4L;
+        int exponent = bucket / 4;
+        int quarter = bucket % 4;
+        long base = 1L << exponent;
+        return base + Math.max(1L, base >> 2) * (quarter + 1);
+    }
+
+    /** Takes an idle object of {@code kind} holding at least {@code bytes}, or returns null (a miss). */
+    synchronized Object take(int kind, long bytes) {
+        int bucket = bucketFor(bytes);
+        Entry found = poll(kind, bucket, bytes);
+        if (found == null) found = poll(kind, bucket + 1, 0L);
+
+        if (found == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        idle.remove(found);
+        idleBytes -= found.bytes;
+        return found.value;
+    }
+
+    /** Returns an object to the pool; {@code bytes} is what it actually holds. */
+    void give(int kind, Object value, long bytes) {
+        if (value == null) return;
+        if (bytes > budgetBytes) {
+            evictOne(kind, value);
+            return;
+        }
+
+        ArrayDeque<Entry> dropped = new ArrayDeque<>();
+        synchronized (this) {
+            Entry entry = new Entry(kind, bucketFor(bytes), value, bytes);
+            ArrayDeque<Entry> queue = buckets.get(key(kind, entry.bucket));
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                buckets.put(key(kind, entry.bucket), queue);
+            }
+            queue.addLast(entry);
+            idle.add(entry);
+            idleBytes += bytes;
+
+            Iterator<Entry> oldest = idle.iterator();
+            while (idleBytes > budgetBytes && oldest.hasNext()) {
+                Entry e = oldest.next();
+                oldest.remove();
+                buckets.get(key(e.kind, e.bucket)).remove(e);
+                idleBytes -= e.bytes;
+                evictions++;
+                dropped.add(e);
+            }
+        }
+        // recycling happens outside the lock
+        for (Entry e : dropped) evictor.evict(e.kind, e.value);
+    }
+
+    void clear() {
+        ArrayDeque<Entry> dropped;
+        synchronized (this) {
+            dropped = new ArrayDeque<>(idle);
+            evictions += idle.size();
+            idle.clear();
+            buckets.clear();
+            idleBytes = 0L;
+        }
+        for (Entry e : dropped) evictor.evict(e.kind, e.value);
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+
+    long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    private Entry poll(int kind, int bucket, long minBytes) {
+        ArrayDeque<Entry> queue = buckets.get(key(kind, bucket));
+        if (queue == null) return null;
+
+        // most recently returned first; it is the most likely to still be in cache
+        Iterator<Entry> it = queue.descendingIterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.bytes >= minBytes) {
+                it.remove();
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void countEviction() {
+        evictions++;
+    }
+
+    private void evictOne(int kind, Object value) {
+        countEviction();
+        evictor.evict(kind, value);
+    }
+
+    private static long key(int kind, int bucket) {
+        return ((long) kind << 32) | (bucket & 0xffffffffL);
+    }
+}
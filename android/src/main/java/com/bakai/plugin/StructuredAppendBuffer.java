@@ -0,0 +1,171 @@
+package com.bakai.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reassembles QR structured-append sets: a payload split over up to 16 symbols that share a
+ * parity byte. Parts may arrive from any frame or image, in any order and repeatedly; a set is
+ * complete once every sequence index has been seen.
+ *
+ * Sets are keyed by parity and symbol count. At most {@link #MAX_SETS} sets are kept, the one seen
+ * least recently is dropped first, and a set that gets no new part for the timeout is forgotten.
+ */
+final class StructuredAppendBuffer {
+
+    static final int MAX_SETS = 4;
+    static final long DEFAULT_TIMEOUT_MS = 30_000L;
+    // QR mode indicator of the structured-append header
+    private static final int MODE_STRUCTURED_APPEND = 0x3;
+
+    /** The structured-append header of one symbol. */
+    static final class Header {
+
+        final int index;
+        final int total;
+        final int parity;
+
+        Header(int index, int total, int parity) {
+            this.index = index;
+            this.total = total;
+            this.parity = parity;
+        }
+    }
+
+    /** A completed set. */
+    static final class Completed {
+
+        final String payload;
+        final int total;
+        final int parity;
+        /** Whether the XOR of the payload bytes matches the parity byte the symbols carry. */
+        final boolean parityMatches;
+
+        Completed(String payload, int total, int parity, boolean parityMatches) {
+            this.payload = payload;
+            this.total = total;
+            this.parity = parity;
+            this.parityMatches = parityMatches;
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("payload", payload);
+            out.put("parts", total);
+            out.put("parity", parity);
+            out.put("parityMatches", parityMatches);
+            return out;
+        }
+    }
+
+    private static final class PartSet {
+
+        final String[] parts;
+        int received;
+        long lastSeenMs;
+
+        PartSet(int total) {
+            this.parts = new String[total];
+        }
+    }
+
+    private final long timeoutMs;
+    // access order: the first entry is the set seen least recently; guarded by "this"
+    private final LinkedHashMap<Integer, PartSet> sets = new LinkedHashMap<>(8, 0.75f, true);
+    private long completedSets = 0L;
+    private long expiredSets = 0L;
+
+    StructuredAppendBuffer(long timeoutMs) {
+        this.timeoutMs = timeoutMs > 0L ? timeoutMs : DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+     * Reads the header from the symbol's raw data codewords, or returns null when the symbol is
+     * not part of a structured-append set. The header is the first segment: mode 0011, 4 bits of
+     * sequence index, 4 bits of symbol count minus one, then the 8-bit parity.
+     */
+    static Header parse(byte[] raw) {
+        if (raw == null || raw.length < 3) return null;
+        if (((raw[0] >> 4) & 0x0f) != MODE_STRUCTURED_APPEND) return null;
+
+        final int index = raw[0] & 0x0f;
+        final int total = ((raw[1] >> 4) & 0x0f) + 1;
+        final int parity = ((raw[1] & 0x0f) << 4) | ((raw[2] >> 4) & 0x0f);
+        // a single-symbol "set" is just a code
+        if (total < 2 || index >= total) return null;
+        return new Header(index, total, parity);
+    }
+
+    /** Adds one part; returns the whole set when this part completed it. */
+    synchronized Completed offer(Header header, String content, long nowMs) {
+        expire(nowMs);
+        if (header == null || content == null) return null;
+
+        final int key = (header.parity << 4) | (header.total - 1);
+        PartSet set = sets.get(key);
+        if (set == null) {
+            if (sets.size() >= MAX_SETS) {
+                Iterator<Integer> oldest = sets.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                expiredSets++;
+            }
+            set = new PartSet(header.total);
+            sets.put(key, set);
+        }
+        set.lastSeenMs = nowMs;
+        if (set.parts[header.index] == null) set.received++;
+        set.parts[header.index] = content;
+        if (set.received < set.parts.length) return null;
+
+        sets.remove(key);
+        completedSets++;
+        StringBuilder sb = new StringBuilder();
+        for (String part : set.parts) sb.append(part);
+        final String payload = sb.toString();
+        return new Completed(payload, header.total, header.parity, parityMatches(payload, header.parity));
+    }
+
+    /** Forgets sets that got no part for the timeout. */
+    synchronized void expire(long nowMs) {
+        for (Iterator<PartSet> it = sets.values().iterator(); it.hasNext();) {
+            if (nowMs - it.next().lastSeenMs >= timeoutMs) {
+                it.remove();
+                expiredSets++;
+            }
+        }
+    }
+
+    synchronized int pendingSets() {
+        return sets.size();
+    }
+
+    synchronized long completedSets() {
+        return completedSets;
+    }
+
+    synchronized long expiredSets() {
+        return expiredSets;
+    }
+
+    synchronized void clear() {
+        sets.clear();
+    }
+
+    /**
+     * Encoders compute the parity as the XOR of the bytes they encoded, usually Latin-1 or UTF-8;
+     * the decoded text no longer says which, so either is accepted.
+     */
+    static boolean parityMatches(String payload, int parity) {
+        if (StandardCharsets.ISO_8859_1.newEncoder().canEncode(payload) && parityOf(payload.getBytes(StandardCharsets.ISO_8859_1)) == parity) return true;
+        return parityOf(payload.getBytes(StandardCharsets.UTF_8)) == parity;
+    }
+
+    static int parityOf(byte[] data) {
+        int parity = 0;
+        for (byte b : data) parity ^= b & 0xff;
+        return parity;
+    }
+}
@@ -0,0 +1,268 @@
+package com.bakai.plugin;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.net.Uri;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes very large images tile by tile through {@link BitmapRegionDecoder}, so the full image is
+ * never held in memory. Each decode slot owns one reused tile bitmap and one detector client; slots
+ * run concurrently and pull the next tile as soon as their previous tile has been decoded.
+ *
+ * Corner points are reported in full-image coordinates of the stored (non EXIF-rotated) pixels.
+ */
+final class TiledBarcodeReader {
+
+    static final int DEFAULT_TILE_SIZE = 1536;
+    static final int MIN_TILE_SIZE = 512;
+    private static final float TILE_OVERLAP = 0.25f;
+    private static final int DEFAULT_CONCURRENCY = 2;
+
+    interface Listener {
+        void onComplete(List<Barcode> barcodes, List<Point[]> cornerPoints);
+        void onError(String message);
+    }
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final Executor executor;
+    private final BitmapPool pool;
+    private final int tileSize;
+    private final int concurrency;
+
+    private BitmapRegionDecoder decoder;
+    private List<Rect> tiles;
+    private final AtomicInteger nextTile = new AtomicInteger(0);
+    private final AtomicInteger activeSlots = new AtomicInteger(0);
+
+    // merged results, guarded by "this"
+    private final List<Barcode> barcodes = new ArrayList<>();
+    private final List<Point[]> corners = new ArrayList<>();
+
+    private Listener listener;
+    private volatile boolean cancelled = false;
+
+    TiledBarcodeReader(ContentResolver resolver, Uri uri, Executor executor, BitmapPool pool, int tileSize) {
+        this(resolver, uri, executor, pool, tileSize, DEFAULT_CONCURRENCY);
+    }
+
+    TiledBarcodeReader(ContentResolver resolver, Uri uri, Executor executor, BitmapPool pool, int tileSize, int concurrency) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.executor = executor;
+        this.pool = pool;
+        this.tileSize = Math.max(MIN_TILE_SIZE, tileSize);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    void start(Listener listener) {
+        this.listener = listener;
+        executor.execute(this::open);
+    }
+
+    /** Stops handing out tiles; tiles already being decoded finish and the merged partial result is reported. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    static List<Rect> computeTiles(int width, int height, int tileSize) {
+        List<Rect> out = new ArrayList<>();
+        int tileW = Math.min(tileSize, width);
+        int tileH = Math.min(tileSize, height);
+        int stepX = Math.max(1, Math.round(tileW * (1f - TILE_OVERLAP)));
+        int stepY = Math.max(1, Math.round(tileH * (1f - TILE_OVERLAP)));
+
+        for (int top = 0; ; top += stepY) {
+            // shift the last row/column back so every tile keeps the full tile size
+            int y = Math.min(top, height - tileH);
+            for (int left = 0; ; left += stepX) {
+                int x = Math.min(left, width - tileW);
+                out.add(new Rect(x, y, x + tileW, y + tileH));
+                if (x + tileW >= width) break;
+            }
+            if (y + tileH >= height) break;
+        }
+        return out;
+    }
+
+    private void open() {
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) {
+                listener.onError("Unable to open image");
+                return;
+            }
+            //noinspection deprecation
+            decoder = BitmapRegionDecoder.newInstance(input, false);
+        } catch (Exception e) {
+            listener.onError(e.getMessage() != null ? e.getMessage() : "Unable to open image");
+            return;
+        }
+
+        if (decoder == null) {
+            listener.onError("Unsupported image format");
+            return;
+        }
+
+        if (cancelled) {
+            finish();
+            return;
+        }
+
+        tiles = computeTiles(decoder.getWidth(), decoder.getHeight(), tileSize);
+        Rect first = tiles.get(0);
+
+        int slots = Math.min(concurrency, tiles.size());
+        activeSlots.set(slots);
+        for (int i = 0; i < slots; i++) {
+            Slot slot;
+            try {
+                slot = new Slot(pool.acquire(first.width(), first.height()));
+            } catch (OutOfMemoryError e) {
+                // run with the slots we already have
+                if (activeSlots.decrementAndGet() == 0) finish();
+                continue;
+            }
+            executor.execute(slot::decodeNext);
+        }
+    }
+
+    private void finish() {
+        try {
+            decoder.recycle();
+        } catch (Exception ignored) {}
+
+        List<Barcode> outBarcodes;
+        List<Point[]> outCorners;
+        synchronized (this) {
+            outBarcodes = new ArrayList<>(barcodes);
+            outCorners = new ArrayList<>(corners);
+        }
+        listener.onComplete(outBarcodes, outCorners);
+    }
+
+    private synchronized void merge(Barcode barcode, Rect tile) {
+        Point[] mapped = null;
+        Point[] points = barcode.getCornerPoints();
+        if (points != null) {
+            mapped = new Point[points.length];
+            for (int i = 0; i < points.length; i++) {
+                mapped[i] = points[i] != null ? new Point(points[i].x + tile.left, points[i].y + tile.top) : null;
+            }
+        }
+
+        // the same symbol is usually seen by up to four overlapping tiles
+        for (int i = 0; i < barcodes.size(); i++) {
+            Barcode other = barcodes.get(i);
+            if (!sameValue(other, barcode)) continue;
+            if (mapped == null || corners.get(i) == null || overlaps(corners.get(i), mapped)) return;
+        }
+
+        barcodes.add(barcode);
+        corners.add(mapped);
+    }
+
+    private static boolean sameValue(Barcode a, Barcode b) {
+        String av = a.getRawValue() != null ? a.getRawValue() : a.getDisplayValue();
+        String bv = b.getRawValue() != null ? b.getRawValue() : b.getDisplayValue();
+        return av != null && av.equals(bv) && a.getFormat() == b.getFormat();
+    }
+
+    private static boolean overlaps(Point[] a, Point[] b) {
+        Rect ra = bounds(a);
+        Rect rb = bounds(b);
+        return ra != null && rb != null && Rect.intersects(ra, rb);
+    }
+
+    private static Rect bounds(Point[] points) {
+        Rect r = null;
+        for (Point p : points) {
+            if (p == null) continue;
+            if (r == null) r = new Rect(p.x, p.y, p.x, p.y);
+            else r.union(p.x, p.y);
+        }
+        return r;
+    }
+
+    private final class Slot {
+
+        private final Bitmap buffer;
+        private final BitmapFactory.Options options = new BitmapFactory.Options();
+        private final BarcodeScanner client;
+
+        Slot(Bitmap buffer) {
+            this.buffer = buffer;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            options.inBitmap = buffer;
+
+            BarcodeScannerOptions scannerOptions = new BarcodeScannerOptions.Builder().setBarcodeFormats(Barcode.FORMAT_QR_CODE).build();
+            client = BarcodeScanning.getClient(scannerOptions);
+        }
+
+        void decodeNext() {
+            int index = cancelled ? tiles.size() : nextTile.getAndIncrement();
+            if (index >= tiles.size()) {
+                release();
+                return;
+            }
+
+            final Rect tile = tiles.get(index);
+            Bitmap region;
+            try {
+                buffer.eraseColor(Color.WHITE);
+                region = decoder.decodeRegion(tile, options);
+            } catch (Exception e) {
+                region = null;
+            }
+
+            if (region == null) {
+                executor.execute(this::decodeNext);
+                return;
+            }
+
+            final Bitmap decoded = region;
+            client
+                .process(InputImage.fromBitmap(decoded, 0))
+                .addOnCompleteListener(executor, (task) -> {
+                    // only happens when the region decoder could not reuse the tile buffer
+                    if (decoded != buffer) pool.release(decoded);
+
+                    if (task.isSuccessful() && task.getResult() != null) {
+                        for (Barcode barcode : task.getResult()) {
+                            if (barcode != null && barcode.getRawValue() != null && !barcode.getRawValue().trim().isEmpty()) {
+                                merge(barcode, tile);
+                            }
+                        }
+                    }
+                    decodeNext();
+                });
+        }
+
+        private void release() {
+            try {
+                client.close();
+            } catch (Exception ignored) {}
+            pool.release(buffer);
+            if (activeSlots.decrementAndGet() == 0) finish();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AckWindowTest {
+
+    @Test
+    public void disabledWindowDeliversEverything() {
+        AckWindow<String> window = new AckWindow<>();
+        for (int i = 0; i < 10; i++) assertEquals(0L, window.offer("r" + i).eventId);
+        assertFalse(window.isBlocked());
+        assertEquals(0, window.unacknowledged());
+    }
+
+    @Test
+    public void disablingForgetsOutstandingEvents() {
+        AckWindow<String> window = new AckWindow<>();
+        window.setSize(1);
+        window.offer("a");
+        assertNull(window.offer("b"));
+
+        window.setSize(0);
+        assertEquals(0, window.unacknowledged());
+        assertNull(window.ack(0L));
+        assertEquals(0L, window.offer("c").eventId);
+    }
+
+    @Test
+    public void fullWindowHoldsOnlyTheLatestResult() {
+        AckWindow<String> window = new AckWindow<>();
+        window.setSize(2);
+
+        assertEquals(1L, window.offer("a").eventId);
+        assertEquals(2L, window.offer("b").eventId);
+        assertTrue(window.isBlocked());
+
+        assertNull(window.offer("c"));
+        assertNull(window.offer("d"));
+        assertEquals(1L, window.coalesced());
+        assertEquals(2, window.unacknowledged());
+
+        // acking the first event opens one slot for the held result
+        AckWindow.Emission<String> released = window.ack(1L);
+        assertEquals("d", released.result);
+        assertEquals(3L, released.eventId);
+        assertTrue(window.isBlocked());
+    }
+
+    @Test
+    public void acksAreCumulative() {
+        AckWindow<String> window = new AckWindow<>();
+        window.setSize(3);
+        window.offer("a");
+        window.offer("b");
+        window.offer("c");
+
+        assertNull(window.ack(2L));
+        assertEquals(1, window.unacknowledged());
+        // stale and future ids are harmless
+        window.ack(1L);
+        window.ack(99L);
+        assertEquals(0, window.unacknowledged());
+    }
+
+    @Test
+    public void ackWithoutIdAcknowledgesEverything() {
+        AckWindow<String> window = new AckWindow<>();
+        window.setSize(1);
+        window.offer("a");
+        assertNull(window.offer("b"));
+
+        AckWindow.Emission<String> released = window.ack(0L);
+        assertEquals("b", released.result);
+        assertEquals(1, window.unacknowledged());
+    }
+
+    @Test
+    public void resetForgetsOutstandingAndHeld() {
+        AckWindow<String> window = new AckWindow<>();
+        window.setSize(1);
+        window.offer("a");
+        window.offer("b");
+
+        window.reset();
+        assertEquals(0, window.unacknowledged());
+        assertNull(window.ack(0L));
+        assertEquals(2L, window.offer("c").eventId);
+    }
+}
@@ -0,0 +1,64 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AnalysisPipelineTest {
+
+    @Test
+    public void admitsUpToDepthFrames() {
+        AnalysisPipeline pipeline = new AnalysisPipeline(2);
+        long first = pipeline.tryBegin();
+        long second = pipeline.tryBegin();
+        assertTrue(first > 0 && second > first);
+        assertEquals(-1L, pipeline.tryBegin());
+
+        pipeline.finish(first);
+        assertTrue(pipeline.tryBegin() > second);
+        assertEquals(2, pipeline.inFlight());
+    }
+
+    @Test
+    public void depthIsClamped() {
+        assertEquals(AnalysisPipeline.MIN_DEPTH, new AnalysisPipeline(0).depth());
+        assertEquals(AnalysisPipeline.MAX_DEPTH, new AnalysisPipeline(10).depth());
+    }
+
+    @Test
+    public void olderResultIsDiscardedOnceNewerDelivered() {
+        AnalysisPipeline pipeline = new AnalysisPipeline(3);
+        long older = pipeline.tryBegin();
+        long newer = pipeline.tryBegin();
+
+        assertTrue(pipeline.deliver(newer));
+        assertFalse(pipeline.isCurrent(older));
+        assertFalse(pipeline.deliver(older));
+        assertEquals(1L, pipeline.discarded());
+    }
+
+    @Test
+    public void pauseMakesFramesInFlightStale() {
+        AnalysisPipeline pipeline = new AnalysisPipeline(2);
+        long seq = pipeline.tryBegin();
+
+        assertTrue(pipeline.pause());
+        assertEquals(-1L, pipeline.tryBegin());
+        assertTrue(pipeline.resume());
+        assertFalse(pipeline.deliver(seq));
+
+        pipeline.finish(seq);
+        long next = pipeline.tryBegin();
+        assertTrue(pipeline.deliver(next));
+    }
+
+    @Test
+    public void stopIsFinal() {
+        AnalysisPipeline pipeline = new AnalysisPipeline(1);
+        pipeline.stop();
+        assertTrue(pipeline.isStopped());
+        assertFalse(pipeline.resume());
+        assertFalse(pipeline.pause());
+        assertEquals(-1L, pipeline.tryBegin());
+    }
+}
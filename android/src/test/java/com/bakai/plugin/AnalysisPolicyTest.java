@@ -0,0 +1,85 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AnalysisPolicyTest {
+
+    private long nowMs = 1_000L;
+
+    private AnalysisPolicy newPolicy() {
+        return new AnalysisPolicy(() -> nowMs * 1_000_000L);
+    }
+
+    @Test
+    public void framesAreThrottledByIntervalAndDepth() {
+        AnalysisPolicy policy = newPolicy();
+        assertTrue(policy.isDue(1));
+        policy.markAnalyzed();
+
+        nowMs += 40;
+        assertFalse(policy.isDue(1));
+        assertTrue(policy.isDue(2));
+
+        nowMs += AnalysisPolicy.ANALYZE_INTERVAL_MS;
+        assertTrue(policy.isDue(1));
+    }
+
+    @Test
+    public void decodeStartsCooldown() {
+        AnalysisPolicy policy = newPolicy();
+        policy.onDecoded();
+
+        nowMs += AnalysisPolicy.SUCCESS_COOLDOWN_MS - 1;
+        assertFalse(policy.isDue(3));
+        nowMs += 1;
+        assertTrue(policy.isDue(1));
+    }
+
+    @Test
+    public void zoomStepsAfterMissStreakAndIsRateLimited() {
+        AnalysisPolicy policy = newPolicy();
+        for (int i = 1; i < AnalysisPolicy.AUTO_ZOOM_MISS_THRESHOLD; i++) {
+            assertEquals(AnalysisPolicy.NO_ZOOM_CHANGE, policy.onMiss(1f, 8f, false), 0f);
+        }
+        assertEquals(1f + AnalysisPolicy.AUTO_ZOOM_STEP, policy.onMiss(1f, 8f, false), 1e-6f);
+
+        nowMs += AnalysisPolicy.AUTO_ZOOM_INTERVAL_MS - 1;
+        assertEquals(AnalysisPolicy.NO_ZOOM_CHANGE, policy.onMiss(1.18f, 8f, false), 0f);
+        nowMs += 1;
+        assertTrue(policy.onMiss(1.18f, 8f, false) > 1.18f);
+    }
+
+    @Test
+    public void zoomNeverPassesSoftMaxOrOverridesTheApp() {
+        AnalysisPolicy policy = newPolicy();
+        for (int i = 0; i < AnalysisPolicy.AUTO_ZOOM_MISS_THRESHOLD - 1; i++) policy.onMiss(1f, 8f, false);
+
+        assertEquals(AnalysisPolicy.NO_ZOOM_CHANGE, policy.onMiss(1f, 8f, true), 0f);
+        assertEquals(AnalysisPolicy.AUTO_ZOOM_SOFT_MAX, policy.onMiss(2.9f, 8f, false), 1e-6f);
+        nowMs += AnalysisPolicy.AUTO_ZOOM_INTERVAL_MS;
+        assertEquals(AnalysisPolicy.NO_ZOOM_CHANGE, policy.onMiss(AnalysisPolicy.AUTO_ZOOM_SOFT_MAX, 8f, false), 0f);
+    }
+
+    @Test
+    public void staticSceneDropsToIdleRateUntilItChanges() {
+        AnalysisPolicy policy = newPolicy();
+        assertFalse(policy.isIdle());
+        policy.onSceneChanged();
+        policy.markAnalyzed();
+
+        nowMs += AnalysisPolicy.IDLE_AFTER_MS;
+        assertTrue(policy.isIdle());
+        policy.markAnalyzed();
+        nowMs += AnalysisPolicy.ANALYZE_INTERVAL_MS;
+        assertTrue(policy.isDue(1));
+        assertFalse(policy.isDueWhileIdle());
+
+        // motion ends idling at once
+        policy.onSceneChanged();
+        assertFalse(policy.isIdle());
+        nowMs += AnalysisPolicy.IDLE_INTERVAL_MS;
+        assertTrue(policy.isDueWhileIdle());
+    }
+}
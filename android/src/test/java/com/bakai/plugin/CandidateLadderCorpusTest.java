@@ -0,0 +1,298 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Accuracy and time per image of the still-image ladder over {@link QrCorpus}, as a baseline for
+ * changes to {@link ImageCandidateLadder}.
+ *
+ * Candidates are selected through {@link LadderVariants}, as the ladder selects them; only the
+ * Android bitmap work is replaced. ML Kit does not run on a plain JVM, so ZXing stands in as the
+ * decoder and reads bitmap variants through its own ARGB luminance. ZXing ignores rotation, so
+ * only the rotation-0 variant of each kind is run; "file" has no equivalent. The asserts only guard
+ * against regressions; run with {@code -DladderCorpus.report=true} to print the per-case table.
+ */
+public class CandidateLadderCorpusTest {
+
+    private static final MemoryBudget.Plan PLAN = new MemoryBudget.Plan(
+        MemoryBudget.MAX_WORKING_SIDE,
+        false,
+        MemoryBudget.FULL_PYRAMID_CROPS,
+        1,
+        0L
+    );
+
+    static final List<String> VARIANTS = new ArrayList<>();
+    private static final Map<String, boolean[]> hits = new LinkedHashMap<>();
+    private static final Map<String, long[]> nanos = new LinkedHashMap<>();
+    private static List<QrCorpus.Case> corpus;
+
+    @BeforeClass
+    public static void runCorpus() {
+        for (String name : LadderVariants.ORDER) {
+            LadderVariants.Variant v = LadderVariants.parse(name);
+            if (v.source == LadderVariants.SOURCE_FILE) continue;
+            if (v.source != LadderVariants.SOURCE_PYRAMID && v.suffix != 0) continue;
+            VARIANTS.add(name);
+        }
+
+        corpus = QrCorpus.build();
+        for (String variant : VARIANTS) {
+            hits.put(variant, new boolean[corpus.size()]);
+            nanos.put(variant, new long[corpus.size()]);
+        }
+
+        for (int i = 0; i < corpus.size(); i++) {
+            QrCorpus.Case c = corpus.get(i);
+            Ladder ladder = new Ladder(c);
+            for (String variant : VARIANTS) {
+                // each variant pays for whatever it builds first, as in a ladder run
+                long started = System.nanoTime();
+                Candidate candidate = ladder.create(variant);
+                hits.get(variant)[i] = candidate != null && c.payload.equals(decode(candidate));
+                nanos.get(variant)[i] = System.nanoTime() - started;
+            }
+        }
+        if (Boolean.getBoolean("ladderCorpus.report")) System.out.println(report());
+    }
+
+    @Test
+    public void variantsFollowTheLadderOrder() {
+        assertEquals("normalized_0", VARIANTS.get(0));
+        assertTrue(VARIANTS.contains("inverted_0"));
+        assertTrue(VARIANTS.contains("pyramid_" + (MemoryBudget.FULL_PYRAMID_CROPS - 1)));
+        assertNull(LadderVariants.parse("normalized"));
+        assertNull(LadderVariants.parse("sharpened_0"));
+    }
+
+    @Test
+    public void lumaOnlyPlansKeepGrayAndInverted() {
+        for (int plane = 0; plane < LumaKernel.PLANE_COUNT; plane++) {
+            assertTrue(LadderVariants.buildsPlane(plane, false));
+            boolean kept = plane == LumaKernel.PLANE_GRAY || plane == LumaKernel.PLANE_INVERTED;
+            assertEquals(kept, LadderVariants.buildsPlane(plane, true));
+        }
+        assertEquals(MemoryBudget.LUMA_PYRAMID_CROPS, LadderVariants.pyramidCrops(PLAN, true));
+    }
+
+    @Test
+    public void centerSquareIsCenteredAndSkipsWholeImages() {
+        assertArrayEquals(new int[] { 260, 60, 880 }, LadderVariants.centerSquare(1400, 1000));
+        assertNull(LadderVariants.centerSquare(1, 1));
+        assertEquals(1, LadderVariants.regionSampleSize(1500));
+        assertEquals(2, LadderVariants.regionSampleSize(3000));
+    }
+
+    @Test
+    public void cleanCodesDecodeOnTheFirstVariant() {
+        for (int i = 0; i < corpus.size(); i++) {
+            if (corpus.get(i).name.startsWith("clean_")) assertTrue(corpus.get(i).name, hits.get("normalized_0")[i]);
+        }
+    }
+
+    @Test
+    public void invertedCodeNeedsTheInvertedVariant() {
+        int i = indexOf("inverted");
+        assertFalse(hits.get("normalized_0")[i]);
+        assertTrue(hits.get("inverted_0")[i]);
+    }
+
+    @Test
+    public void smallCodeIsFoundByThePyramid() {
+        int i = indexOf("small_in_large");
+        boolean found = false;
+        for (String variant : VARIANTS) {
+            if (variant.startsWith("pyramid_")) found |= hits.get(variant)[i];
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void ladderHitRateDoesNotRegress() {
+        int ladderHits = 0;
+        for (int i = 0; i < corpus.size(); i++) {
+            for (String variant : VARIANTS) {
+                if (hits.get(variant)[i]) {
+                    ladderHits++;
+                    break;
+                }
+            }
+        }
+        // baseline when the corpus was introduced: every case but the strongest distortions
+        assertTrue("ladder decoded " + ladderHits + "/" + corpus.size(), ladderHits >= corpus.size() - 2);
+    }
+
+    // ===== Ladder on plain arrays =====
+
+    private static final class Candidate {
+
+        final byte[] luma;
+        final int width;
+        final int height;
+
+        Candidate(byte[] luma, int width, int height) {
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /** {@link ImageCandidateLadder#create} with the corpus image as the normalized bitmap, built as lazily. */
+    private static final class Ladder {
+
+        private final QrCorpus.Case image;
+        private Candidate normalized;
+        private byte[][] planes;
+        private Candidate centerCrop;
+        private List<Candidate> pyramidCrops;
+
+        Ladder(QrCorpus.Case image) {
+            this.image = image;
+        }
+
+        Candidate create(String variant) {
+            LadderVariants.Variant v = LadderVariants.parse(variant);
+            if (v == null) return null;
+            switch (v.source) {
+                case LadderVariants.SOURCE_NORMALIZED:
+                    return normalized();
+                case LadderVariants.SOURCE_PLANE: {
+                    byte[] plane = planes()[v.plane];
+                    return plane != null ? new Candidate(plane, image.width, image.height) : null;
+                }
+                case LadderVariants.SOURCE_CENTER_CROP:
+                    if (centerCrop == null) {
+                        int[] square = LadderVariants.centerSquare(image.width, image.height);
+                        if (square == null) return null;
+                        centerCrop = crop(normalized(), square[0], square[1], square[2], square[2]);
+                    }
+                    return centerCrop;
+                case LadderVariants.SOURCE_PYRAMID:
+                    if (pyramidCrops == null) pyramidCrops = pyramidCrops();
+                    return v.suffix < pyramidCrops.size() ? pyramidCrops.get(v.suffix) : null;
+                default:
+                    return null;
+            }
+        }
+
+        private Candidate normalized() {
+            if (normalized == null) {
+                byte[] luma = new RGBLuminanceSource(image.width, image.height, image.argb).getMatrix();
+                normalized = new Candidate(luma, image.width, image.height);
+            }
+            return normalized;
+        }
+
+        private byte[][] planes() {
+            if (planes != null) return planes;
+            planes = new byte[LumaKernel.PLANE_COUNT][];
+            for (int p = 0; p < planes.length; p++) {
+                if (LadderVariants.buildsPlane(p, PLAN.lumaOnly)) planes[p] = new byte[image.width * image.height];
+            }
+            int[] stripe = new int[LumaKernel.stripeLength(image.width)];
+            final QrCorpus.Case c = image;
+            LumaKernel.run((top, rows, out) -> System.arraycopy(c.argb, top * c.width, out, 0, rows * c.width), c.width, c.height, stripe, planes);
+            return planes;
+        }
+
+        private List<Candidate> pyramidCrops() {
+            List<Candidate> out = new ArrayList<>();
+            int limit = LadderVariants.pyramidCrops(PLAN, PLAN.lumaOnly);
+            for (PyramidLocator.Region r : PyramidLocator.locate(planes()[LumaKernel.PLANE_GRAY], image.width, image.height, limit)) {
+                Candidate crop = crop(normalized(), r.left, r.top, r.size, r.size);
+                out.add(LadderVariants.needsUpscale(crop.width) ? upscale(crop, LadderVariants.PYRAMID_CROP_SIDE) : crop);
+            }
+            return out;
+        }
+    }
+
+    private static Candidate crop(Candidate src, int left, int top, int w, int h) {
+        byte[] out = new byte[w * h];
+        for (int y = 0; y < h; y++) System.arraycopy(src.luma, (top + y) * src.width + left, out, y * w, w);
+        return new Candidate(out, w, h);
+    }
+
+    /** Bilinear upscale to {@code side}, standing in for the filtered canvas draw. */
+    private static Candidate upscale(Candidate src, int side) {
+        byte[] out = new byte[side * side];
+        final float scale = (src.width - 1) / (float) (side - 1);
+        for (int y = 0; y < side; y++) {
+            float fy = y * scale;
+            int y0 = (int) fy;
+            int y1 = Math.min(src.height - 1, y0 + 1);
+            float ay = fy - y0;
+            for (int x = 0; x < side; x++) {
+                float fx = x * scale;
+                int x0 = (int) fx;
+                int x1 = Math.min(src.width - 1, x0 + 1);
+                float ax = fx - x0;
+                float top = (src.luma[y0 * src.width + x0] & 0xff) * (1 - ax) + (src.luma[y0 * src.width + x1] & 0xff) * ax;
+                float bottom = (src.luma[y1 * src.width + x0] & 0xff) * (1 - ax) + (src.luma[y1 * src.width + x1] & 0xff) * ax;
+                out[y * side + x] = (byte) Math.round(top * (1 - ay) + bottom * ay);
+            }
+        }
+        return new Candidate(out, side, side);
+    }
+
+    private static String decode(Candidate c) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        try {
+            PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(c.luma, c.width, c.height, 0, 0, c.width, c.height, false);
+            Result result = new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source)), hints);
+            return result.getText();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ===== Report =====
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < corpus.size(); i++) {
+            if (corpus.get(i).name.equals(name)) return i;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-24s", "case"));
+        for (String variant : VARIANTS) sb.append(String.format(Locale.US, "%14s", variant));
+        sb.append('\n');
+        for (int i = 0; i < corpus.size(); i++) {
+            sb.append(String.format(Locale.US, "%-24s", corpus.get(i).name));
+            for (String variant : VARIANTS) {
+                sb.append(String.format(Locale.US, "%14s", (hits.get(variant)[i] ? "+" : "-") + String.format(Locale.US, "%.1fms", nanos.get(variant)[i] / 1e6)));
+            }
+            sb.append('\n');
+        }
+        sb.append(String.format(Locale.US, "%-24s", "hit rate / mean ms"));
+        for (String variant : VARIANTS) {
+            int n = 0;
+            long total = 0L;
+            for (int i = 0; i < corpus.size(); i++) {
+                if (hits.get(variant)[i]) n++;
+                total += nanos.get(variant)[i];
+            }
+            sb.append(String.format(Locale.US, "%14s", String.format(Locale.US, "%d%%/%.1f", 100 * n / corpus.size(), total / 1e6 / corpus.size())));
+        }
+        return sb.toString();
+    }
+}
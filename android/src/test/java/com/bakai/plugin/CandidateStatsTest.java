@@ -0,0 +1,63 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CandidateStatsTest {
+
+    private static final List<String> VARIANTS = Arrays.asList("file", "normalized_0", "boosted_0", "binary_0");
+
+    @Test
+    public void coldStartKeepsDefaultOrder() {
+        assertEquals(VARIANTS, new CandidateStats().order(VARIANTS, new Random(1)));
+    }
+
+    @Test
+    public void successfulVariantMovesToFront() {
+        CandidateStats stats = new CandidateStats();
+        for (int i = 0; i < 20; i++) {
+            stats.record("file", false, 120);
+            stats.record("normalized_0", false, 80);
+            stats.record("boosted_0", true, 60);
+        }
+
+        assertEquals("boosted_0", stats.order(VARIANTS, new Random(1)).get(0));
+    }
+
+    @Test
+    public void lowYieldVariantIsPrunedButNeverEverything() {
+        CandidateStats stats = new CandidateStats();
+        for (int i = 0; i < 40; i++) {
+            for (String v : VARIANTS) stats.record(v, "file".equals(v), 50);
+        }
+
+        // a random source that never explores
+        Random noExplore = new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.99;
+            }
+        };
+        assertEquals(Arrays.asList("file"), stats.order(VARIANTS, noExplore));
+
+        CandidateStats allBad = new CandidateStats();
+        for (int i = 0; i < 40; i++) {
+            for (String v : VARIANTS) allBad.record(v, false, 50);
+        }
+        assertEquals(VARIANTS.size(), allBad.order(VARIANTS, noExplore).size());
+    }
+
+    @Test
+    public void serializationRoundTrips() {
+        CandidateStats stats = new CandidateStats();
+        stats.record("file", true, 100);
+        stats.record("crop_90", false, 40);
+
+        assertEquals(stats.serialize(), CandidateStats.parse(stats.serialize()).serialize());
+        assertEquals("", CandidateStats.parse("garbage").serialize());
+    }
+}
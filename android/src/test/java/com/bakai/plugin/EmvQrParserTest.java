@@ -0,0 +1,89 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+
+public class EmvQrParserTest {
+
+    private static final String BODY = "000201010212" + "2637" + "0016A000000677010111" + "01130066123456789" + "5204581253037645802TH" + "5909Noodle Co" + "6007Bangkok" + "62070703A01";
+
+    /** Appends the CRC entry the way a terminal would. */
+    private static String withCrc(String body) {
+        String signed = body + "6304";
+        return signed + String.format(Locale.US, "%04X", EmvQrParser.crc16(signed, 0, signed.length()));
+    }
+
+    @Test
+    public void crcMatchesTheStandardCheckValue() {
+        assertEquals(0x29b1, EmvQrParser.crc16("123456789", 0, 9));
+    }
+
+    @Test
+    public void acceptsAPayloadWithMatchingCrcAndParsesTemplates() {
+        EmvQrParser parser = new EmvQrParser();
+        assertTrue(parser.parse(withCrc(BODY)));
+        assertEquals(EmvQrParser.VALID, parser.status());
+
+        Map<String, Object> fields = parser.describe();
+        assertEquals("01", fields.get("00"));
+        assertEquals("Noodle Co", fields.get("59"));
+        assertEquals("TH", fields.get("58"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> account = (Map<String, Object>) fields.get("26");
+        assertEquals("A000000677010111", account.get("00"));
+        assertEquals("0066123456789", account.get("01"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> additional = (Map<String, Object>) fields.get("62");
+        assertEquals("A01", additional.get("07"));
+    }
+
+    @Test
+    public void rejectsACorruptedCharacter() {
+        EmvQrParser parser = new EmvQrParser();
+        assertFalse(parser.parse(withCrc(BODY).replace("Noodle", "Noodie")));
+        assertEquals(EmvQrParser.BAD_CRC, parser.status());
+    }
+
+    @Test
+    public void rejectsOtherPayloads() {
+        EmvQrParser parser = new EmvQrParser();
+        assertFalse(parser.parse("https://example.com/pay?amount=10"));
+        assertEquals(EmvQrParser.NOT_EMV, parser.status());
+        assertFalse(parser.parse(null));
+        assertEquals(EmvQrParser.NOT_EMV, parser.status());
+    }
+
+    @Test
+    public void rejectsBrokenStructure() {
+        EmvQrParser parser = new EmvQrParser();
+        // declared length runs past the end
+        assertFalse(parser.parse("0002010159Noodle"));
+        assertEquals(EmvQrParser.MALFORMED, parser.status());
+        // CRC not last
+        assertFalse(parser.parse(withCrc(BODY) + "5802TH"));
+        assertEquals(EmvQrParser.MALFORMED, parser.status());
+        // no CRC at all
+        assertFalse(parser.parse(BODY));
+        assertEquals(EmvQrParser.MALFORMED, parser.status());
+    }
+
+    @Test
+    public void crcCoversUtf8Bytes() {
+        String city = "Zürich \u20ac \ud83d\ude00";
+        byte[] utf8 = city.getBytes(StandardCharsets.UTF_8);
+        int crc = 0xffff;
+        for (byte b : utf8) {
+            crc ^= (b & 0xff) << 8;
+            for (int bit = 0; bit < 8; bit++) crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x1021) & 0xffff : (crc << 1) & 0xffff;
+        }
+        assertEquals(crc, EmvQrParser.crc16(city, 0, city.length()));
+
+        EmvQrParser parser = new EmvQrParser();
+        assertTrue(parser.parse(withCrc("000201010211" + "5802CH" + "6006Zürich")));
+        assertEquals("Zürich", parser.describe().get("60"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class FrameCropsTest {
+
+    @Test
+    public void copyPlaneDropsRowPadding() {
+        final int width = 5;
+        final int height = 3;
+        final int rowStride = 8;
+        byte[] padded = new byte[rowStride * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < rowStride; x++) padded[y * rowStride + x] = (byte) (x < width ? y * 10 + x : 99);
+        }
+
+        byte[] out = new byte[width * height];
+        FrameCrops.copyPlane(ByteBuffer.wrap(padded), rowStride, width, height, out);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) assertEquals(y * 10 + x, out[y * width + x]);
+        }
+    }
+
+    @Test
+    public void downsampleAveragesBlocks() {
+        final int width = 6;
+        final int height = 4;
+        byte[] src = new byte[width * height];
+        for (int i = 0; i < src.length; i++) src[i] = (byte) ((i % width) < 3 ? 30 : 210);
+
+        byte[] dst = new byte[3 * 2];
+        FrameCrops.downsample(src, width, 2, dst, 3, 2, new int[3]);
+        // middle block straddles the two halves
+        assertEquals(30, dst[0] & 0xff);
+        assertEquals(120, dst[1] & 0xff);
+        assertEquals(210, dst[2] & 0xff);
+    }
+
+    @Test
+    public void cropIsScaledPaddedAndClamped() {
+        int[] crop = FrameCrops.cropFor(100, 50, 140, 90, 3, 1920, 1080);
+        // 40 px box at factor 3 -> 120 px, plus margin, but never below the minimum
+        assertTrue(crop[2] >= FrameCrops.MIN_CROP_SIDE);
+        assertEquals(crop[2], crop[3]);
+        assertEquals(0, crop[2] % 2);
+        int cx = crop[0] + crop[2] / 2;
+        int cy = crop[1] + crop[3] / 2;
+        assertEquals(360, cx, 1);
+        assertEquals(210, cy, 1);
+
+        int[] edge = FrameCrops.cropFor(620, 340, 640, 360, 3, 1920, 1080);
+        assertTrue(edge[0] + edge[2] <= 1920);
+        assertTrue(edge[1] + edge[3] <= 1080);
+    }
+
+    @Test
+    public void cropToNv21CopiesLumaAndNeutralChroma() {
+        final int width = 8;
+        byte[] src = new byte[width * 4];
+        for (int i = 0; i < src.length; i++) src[i] = (byte) i;
+
+        byte[] dst = new byte[FrameCrops.nv21Length(2, 2)];
+        FrameCrops.cropToNv21(src, width, 3, 1, 2, 2, dst);
+        assertArrayEquals(new byte[] { 11, 12, 19, 20, (byte) 128, (byte) 128 }, dst);
+    }
+
+    @Test
+    public void pointsAreRotatedIntoUprightFrame() {
+        assertArrayEquals(new int[] { 10, 20 }, FrameCrops.toUpright(10, 20, 640, 480, 0));
+        assertArrayEquals(new int[] { 460, 10 }, FrameCrops.toUpright(10, 20, 640, 480, 90));
+        assertArrayEquals(new int[] { 630, 460 }, FrameCrops.toUpright(10, 20, 640, 480, 180));
+        assertArrayEquals(new int[] { 20, 630 }, FrameCrops.toUpright(10, 20, 640, 480, 270));
+    }
+}
@@ -0,0 +1,124 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class FrameReplayTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+    private static final long FRAME_NS = 33_000_000L;
+
+    /** Frames whose first pixel is bright carry a "code". */
+    private static final FrameReplay.Decoder MARKER_DECODER = (luma, width, height, rotation) ->
+        (luma[0] & 0xff) > 200 ? Collections.singletonList("code") : Collections.emptyList();
+
+    @Test
+    public void recordingRoundTripsCroppedFrames() throws Exception {
+        File file = File.createTempFile("frames", FrameRecording.SUFFIX);
+        byte[] plane = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < plane.length; i++) plane[i] = (byte) i;
+
+        try (FrameRecording.Writer writer = new FrameRecording.Writer(file)) {
+            writer.write(5L, 90, 1.5f, plane, WIDTH, null);
+            writer.write(6L, 90, 1.5f, plane, WIDTH, new int[] { 2, 1, 4, 2 });
+        }
+
+        try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+            FrameRecording.Frame full = reader.next();
+            assertEquals(WIDTH, full.width);
+            assertEquals(90, full.rotation);
+            assertEquals(1.5f, full.zoomRatio, 0f);
+            assertArrayEquals(plane, full.luma);
+
+            FrameRecording.Frame crop = reader.next();
+            assertEquals(6L, crop.timestampNs);
+            assertArrayEquals(new byte[] { 10, 11, 12, 13, 18, 19, 20, 21 }, crop.luma);
+            assertNull(reader.next());
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void truncatedRecordingEndsCleanly() throws Exception {
+        File file = File.createTempFile("frames", FrameRecording.SUFFIX);
+        try (FrameRecording.Writer writer = new FrameRecording.Writer(file)) {
+            for (int i = 0; i < 20; i++) writer.write(i, 0, 1f, new byte[WIDTH * HEIGHT], WIDTH, null);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 6));
+
+        try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+            int frames = 0;
+            while (reader.next() != null) frames++;
+            // no exception, and no frame invented past the cut
+            assertTrue(frames <= 20);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void replayAppliesThrottleCooldownAndAutoZoom() throws Exception {
+        File file = File.createTempFile("frames", FrameRecording.SUFFIX);
+        // 60 frames at ~30 fps: no code for the first 50, then a code
+        try (FrameRecording.Writer writer = new FrameRecording.Writer(file)) {
+            for (int i = 0; i < 60; i++) {
+                byte[] luma = new byte[WIDTH * HEIGHT];
+                if (i >= 50) luma[0] = (byte) 255;
+                writer.write(1_000_000_000L + i * FRAME_NS, 0, 1f, luma, WIDTH, null);
+            }
+        }
+
+        try (FrameRecording.Reader reader = new FrameRecording.Reader(file)) {
+            FrameReplay.Report report = FrameReplay.run(reader, MARKER_DECODER, 1, 8f);
+            assertEquals(60, report.frames);
+            // 70 ms interval at 33 ms frames: every third frame, less the cooldown after the decode
+            assertTrue(report.analyzed >= 17 && report.analyzed <= 20);
+            assertEquals(Collections.singleton("code"), report.payloads);
+            assertEquals(51 * FRAME_NS, report.firstDecodeNs);
+            assertFalse(report.zoomSteps.isEmpty());
+            assertTrue(report.zoomSteps.get(0)[1] > 1f);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void staticSceneIsAnalyzedAtTheIdleRate() throws Exception {
+        File file = File.createTempFile("frames", FrameRecording.SUFFIX);
+        int width = 96;
+        int height = 72;
+        // 10 s of an unchanged scene, then a code held up in front of it
+        try (FrameRecording.Writer writer = new FrameRecording.Writer(file)) {
+            for (int i = 0; i < 330; i++) {
+                byte[] luma = new byte[width * height];
+                for (int p = 0; p < luma.length; p++) luma[p] = (byte) (40 + p % width);
+                if (i >= 300) {
+                    luma[0] = (byte) 255;
+                    for (int y = 20; y < 50; y++) Arrays.fill(luma, y * width + 30, y * width + 60, (byte) 250);
+                }
+                writer.write(1_000_000_000L + i * FRAME_NS, 0, 1f, luma, width, null);
+            }
+        }
+
+        try (FrameRecording.Reader full = new FrameRecording.Reader(file); FrameRecording.Reader idle = new FrameRecording.Reader(file)) {
+            FrameReplay.Report always = FrameReplay.run(full, MARKER_DECODER, 1, 1f);
+            FrameReplay.Report idling = FrameReplay.run(idle, MARKER_DECODER, 1, 1f, true);
+
+            assertTrue(idling.skippedIdle > 0);
+            assertTrue(idling.analyzed * 3 < always.analyzed);
+            // the code is read on the frame it appears, as without idling
+            assertEquals(always.firstDecodeNs, idling.firstDecodeNs);
+            assertEquals(300 * FRAME_NS, idling.firstDecodeNs);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.bakai.plugin;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link LumaKernel} with the per-variant passes it replaced (binary threshold with two
+ * luma passes over a full {@code getPixels} copy, the ColorMatrix contrast draw, the pyramid luma
+ * pass). Not a unit test; run {@link #main} on a JVM or device, e.g. from the IDE.
+ *
+ * The old passes are reproduced on plain arrays, so Bitmap/JNI overhead is left out on both sides.
+ */
+public final class LumaKernelBenchmark {
+
+    private static final int WIDTH = 2200;
+    private static final int HEIGHT = 1650;
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 15;
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        final int[] source = new int[WIDTH * HEIGHT];
+        Random random = new Random(7);
+        for (int i = 0; i < source.length; i++) source[i] = 0xff000000 | random.nextInt(0x1000000);
+
+        final int frameLength = WIDTH * HEIGHT * 3 / 2;
+        final byte[][] planes = new byte[LumaKernel.PLANE_COUNT][];
+        for (int i = 0; i < planes.length; i++) planes[i] = new byte[frameLength];
+        final int[] stripe = new int[LumaKernel.stripeLength(WIDTH)];
+        final LumaKernel.PixelSource pixels = (top, rows, out) -> System.arraycopy(source, top * WIDTH, out, 0, rows * WIDTH);
+
+        final int[] copy = new int[source.length];
+        final int[] binaryOut = new int[source.length];
+        final int[] boostedOut = new int[source.length];
+        final byte[] luma = new byte[source.length];
+        final int[] row = new int[WIDTH];
+
+        Runnable kernel = () -> sink += LumaKernel.run(pixels, WIDTH, HEIGHT, stripe, planes).mean;
+        Runnable perVariant = () -> {
+            binaryPass(source, copy, binaryOut);
+            contrastPass(source, boostedOut);
+            lumaPass(source, row, luma);
+            sink += luma[luma.length / 2] + binaryOut[7] + boostedOut[11];
+        };
+
+        double perVariantMs = time(perVariant);
+        double kernelMs = time(kernel);
+        System.out.println(
+            String.format(
+                Locale.US,
+                "%dx%d: per-variant passes (3 variants) %.1f ms, single-pass kernel (5 planes) %.1f ms",
+                WIDTH,
+                HEIGHT,
+                perVariantMs,
+                kernelMs
+            )
+        );
+    }
+
+    private static double time(Runnable body) {
+        for (int i = 0; i < WARMUP; i++) body.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    // the former createBinaryBitmap: full getPixels copy, luma for the mean, luma again for the threshold
+    private static void binaryPass(int[] source, int[] pixels, int[] out) {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        long sum = 0L;
+        for (int c : pixels) {
+            sum += (int) (0.299f * ((c >> 16) & 0xff) + 0.587f * ((c >> 8) & 0xff) + 0.114f * (c & 0xff));
+        }
+        int threshold = Math.max(80, Math.min(190, (int) (sum / pixels.length)));
+        for (int i = 0; i < pixels.length; i++) {
+            int c = pixels[i];
+            int l = (int) (0.299f * ((c >> 16) & 0xff) + 0.587f * ((c >> 8) & 0xff) + 0.114f * (c & 0xff));
+            out[i] = l >= threshold ? 0xffffffff : 0xff000000;
+        }
+    }
+
+    // the former createHighContrastBitmap: desaturate + contrast 1.55 colour matrix per pixel
+    private static void contrastPass(int[] source, int[] out) {
+        final float contrast = 1.55f;
+        final float translate = (-0.5f * contrast + 0.5f) * 255f;
+        for (int i = 0; i < source.length; i++) {
+            int c = source[i];
+            float l = 0.213f * ((c >> 16) & 0xff) + 0.715f * ((c >> 8) & 0xff) + 0.072f * (c & 0xff);
+            int v = Math.max(0, Math.min(255, (int) (l * contrast + translate)));
+            out[i] = 0xff000000 | (v << 16) | (v << 8) | v;
+        }
+    }
+
+    // the former pyramid computeLuma: row-by-row getPixels
+    private static void lumaPass(int[] source, int[] row, byte[] luma) {
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(source, y * WIDTH, row, 0, WIDTH);
+            int out = y * WIDTH;
+            for (int x = 0; x < WIDTH; x++) {
+                int c = row[x];
+                luma[out + x] = (byte) ((((c >> 16) & 0xff) * 77 + ((c >> 8) & 0xff) * 150 + (c & 0xff) * 29) >> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LumaKernelTest {
+
+    static LumaKernel.PixelSource sourceOf(final int[] argb, final int width) {
+        return (top, rows, out) -> System.arraycopy(argb, top * width, out, 0, rows * width);
+    }
+
+    static byte[][] allPlanes(int length) {
+        byte[][] planes = new byte[LumaKernel.PLANE_COUNT][];
+        for (int i = 0; i < planes.length; i++) planes[i] = new byte[length];
+        return planes;
+    }
+
+    @Test
+    public void grayInvertedAndBinaryFollowLuma() {
+        final int width = 40;
+        final int height = 37;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) argb[i] = (i / width) % 2 == 0 ? 0xff202020 : 0xffe0e0e0;
+
+        byte[][] planes = allPlanes(argb.length);
+        LumaKernel.run(sourceOf(argb, width), width, height, new int[LumaKernel.stripeLength(width)], planes);
+
+        for (int i = 0; i < argb.length; i++) {
+            int gray = planes[LumaKernel.PLANE_GRAY][i] & 0xff;
+            boolean dark = (i / width) % 2 == 0;
+            assertTrue(dark ? gray < 40 : gray > 200);
+            assertEquals(255 - gray, planes[LumaKernel.PLANE_INVERTED][i] & 0xff);
+            assertEquals(dark ? 0 : 255, planes[LumaKernel.PLANE_BINARY][i] & 0xff);
+        }
+    }
+
+    @Test
+    public void lowContrastIsStretchedToFullRange() {
+        final int width = 64;
+        final int height = 64;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) argb[i] = (i % 7) < 3 ? 0xff707070 : 0xff909090;
+
+        byte[][] planes = allPlanes(argb.length);
+        LumaKernel.run(sourceOf(argb, width), width, height, new int[LumaKernel.stripeLength(width)], planes);
+
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < argb.length; i++) {
+            int v = planes[LumaKernel.PLANE_STRETCHED][i] & 0xff;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        assertEquals(0, min);
+        assertEquals(255, max);
+    }
+
+    @Test
+    public void channelPlaneSeparatesColoursWithEqualLuma() {
+        final int width = 48;
+        final int height = 48;
+        // red vs. a green with (almost) the same luma: invisible in gray, obvious in the red channel
+        final int red = 0xffc80000;
+        final int green = 0xff005500;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) argb[i] = ((i % width) / 6 + (i / width) / 6) % 2 == 0 ? red : green;
+
+        byte[][] planes = allPlanes(argb.length);
+        LumaKernel.Stats stats = LumaKernel.run(sourceOf(argb, width), width, height, new int[LumaKernel.stripeLength(width)], planes);
+
+        assertEquals(0, stats.channel);
+        int grayGap = Math.abs((planes[LumaKernel.PLANE_GRAY][0] & 0xff) - (planes[LumaKernel.PLANE_GRAY][6] & 0xff));
+        int channelGap = Math.abs((planes[LumaKernel.PLANE_CHANNEL][0] & 0xff) - (planes[LumaKernel.PLANE_CHANNEL][6] & 0xff));
+        assertTrue(grayGap < 20);
+        assertEquals(255, channelGap);
+    }
+
+    @Test
+    public void nullPlanesAreSkipped() {
+        final int width = 20;
+        final int height = 20;
+        int[] argb = new int[width * height];
+        byte[][] planes = new byte[LumaKernel.PLANE_COUNT][];
+        planes[LumaKernel.PLANE_GRAY] = new byte[argb.length];
+
+        LumaKernel.run(sourceOf(argb, width), width, height, new int[LumaKernel.stripeLength(width)], planes);
+        assertNull(planes[LumaKernel.PLANE_INVERTED]);
+    }
+}
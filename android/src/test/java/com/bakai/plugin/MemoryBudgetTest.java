@@ -0,0 +1,119 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+    private static final long MB = 1024L * 1024L;
+    private static final long PLENTY = 1024L * MB;
+
+    @Test
+    public void ampleBudgetGetsTheFullLadderAtTheNaturalSize() {
+        MemoryBudget.Plan plan = MemoryBudget.plan(4000, 3000, PLENTY);
+        assertEquals(MemoryBudget.MAX_WORKING_SIDE, plan.maxSide);
+        assertFalse(plan.lumaOnly);
+        assertEquals(MemoryBudget.FULL_PYRAMID_CROPS, plan.pyramidCrops);
+        assertEquals(1, plan.sampleSize);
+    }
+
+    @Test
+    public void tightBudgetDropsToLumaOnlyThenShrinks() {
+        MemoryBudget.Plan full = MemoryBudget.plan(4000, 3000, PLENTY);
+
+        MemoryBudget.Plan luma = MemoryBudget.plan(4000, 3000, full.bytes - 1);
+        assertTrue(luma.lumaOnly);
+        assertEquals(full.maxSide, luma.maxSide);
+        assertTrue(luma.bytes < full.bytes);
+
+        MemoryBudget.Plan smaller = MemoryBudget.plan(4000, 3000, luma.bytes - 1);
+        assertTrue(smaller.maxSide < full.maxSide);
+        assertTrue(smaller.bytes < luma.bytes);
+        // a smaller working size lets the decoder sample the source down
+        assertTrue(smaller.sampleSize > 1);
+    }
+
+    @Test
+    public void plansNeverExceedWhatIsAvailable() {
+        for (long available = 8 * MB; available <= 160 * MB; available += 8 * MB) {
+            MemoryBudget.Plan plan = MemoryBudget.plan(6000, 4000, available);
+            if (plan != null) assertTrue(plan.bytes <= available);
+        }
+        assertNull(MemoryBudget.plan(6000, 4000, MB));
+    }
+
+    @Test
+    public void concurrentCallsShareTheBudget() {
+        MemoryBudget.Plan one = MemoryBudget.plan(3000, 3000, PLENTY);
+        MemoryBudget budget = new MemoryBudget(one.bytes + one.bytes / 2);
+
+        MemoryBudget.Plan first = budget.reserve(3000, 3000, PLENTY);
+        assertNotNull(first);
+        assertEquals(one.bytes, first.bytes);
+
+        // what is left still fits a reduced plan
+        MemoryBudget.Plan second = budget.reserve(3000, 3000, PLENTY);
+        assertNotNull(second);
+        assertTrue(second.bytes < first.bytes);
+
+        // nothing left: wait for the others
+        assertNull(budget.reserve(3000, 3000, PLENTY));
+
+        budget.release(first);
+        budget.release(second);
+        assertEquals(0L, budget.getReserved());
+        assertNotNull(budget.reserve(3000, 3000, PLENTY));
+    }
+
+    @Test
+    public void loneCallAlwaysMakesProgress() {
+        MemoryBudget budget = new MemoryBudget(MB);
+        MemoryBudget.Plan plan = budget.reserve(4000, 3000, PLENTY);
+        assertNotNull(plan);
+        assertTrue(plan.lumaOnly);
+        assertEquals(MemoryBudget.FLOOR_WORKING_SIDE, plan.maxSide);
+        assertEquals(1L, budget.getLumaOnlyPlans());
+        assertEquals(1L, budget.getReducedPlans());
+    }
+
+    @Test
+    public void onlyTheNaturalPlanIsFull() {
+        MemoryBudget budget = new MemoryBudget(PLENTY);
+        MemoryBudget.Plan roomy = budget.reserve(4000, 3000, PLENTY);
+        assertTrue(MemoryBudget.isFull(roomy, 4000, 3000));
+        budget.release(roomy);
+
+        assertFalse(MemoryBudget.isFull(MemoryBudget.smallest(4000, 3000), 4000, 3000));
+        MemoryBudget.Plan reduced = MemoryBudget.plan(4000, 3000, roomy.bytes / 2);
+        assertFalse(MemoryBudget.isFull(reduced, 4000, 3000));
+    }
+
+    @Test
+    public void freeHeapLimitsThePlan() {
+        MemoryBudget budget = new MemoryBudget(PLENTY);
+        MemoryBudget.Plan roomy = budget.reserve(4000, 3000, PLENTY);
+        budget.release(roomy);
+
+        MemoryBudget.Plan squeezed = budget.reserve(4000, 3000, roomy.bytes);
+        assertTrue(squeezed.bytes <= (long) (roomy.bytes * MemoryBudget.FREE_HEAP_FRACTION));
+    }
+
+    @Test
+    public void capacityFollowsMemoryClassAndLowRam() {
+        long heap = 512 * MB;
+        assertEquals((long) (192 * MB * MemoryBudget.HEAP_FRACTION), MemoryBudget.capacityFor(heap, 192, false));
+        assertEquals((long) (heap * MemoryBudget.HEAP_FRACTION), MemoryBudget.capacityFor(heap, 0, false));
+        assertTrue(MemoryBudget.capacityFor(heap, 192, true) < MemoryBudget.capacityFor(heap, 192, false));
+    }
+
+    @Test
+    public void naturalSideMatchesTheLadderBounds() {
+        assertEquals(MemoryBudget.MAX_WORKING_SIDE, MemoryBudget.naturalSide(4000, 3000));
+        assertEquals(1800, MemoryBudget.naturalSide(1800, 1500));
+        // short side brought up to MIN_WORKING_SIDE
+        assertEquals(1600, MemoryBudget.naturalSide(800, 600));
+        assertEquals(2, MemoryBudget.sampleSizeFor(8000, 6000, 2200));
+        assertEquals(1, MemoryBudget.sampleSizeFor(1000, 800, 2200));
+    }
+}
@@ -0,0 +1,63 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PyramidLocatorTest {
+
+    private static void fill(byte[] luma, int width, int x, int y, int w, int h, int value) {
+        for (int yy = y; yy < y + h; yy++) {
+            Arrays.fill(luma, yy * width + x, yy * width + x + w, (byte) value);
+        }
+    }
+
+    private static void drawFinder(byte[] luma, int width, int x, int y, int module) {
+        fill(luma, width, x, y, 7 * module, 7 * module, 0);
+        fill(luma, width, x + module, y + module, 5 * module, 5 * module, 255);
+        fill(luma, width, x + 2 * module, y + 2 * module, 3 * module, 3 * module, 0);
+    }
+
+    @Test
+    public void locatesSmallSymbolInLargeImage() {
+        int width = 2000;
+        int height = 1500;
+        byte[] luma = new byte[width * height];
+        Arrays.fill(luma, (byte) 220);
+
+        // 25-module symbol with 3 px modules at (1400, 900)
+        int module = 3;
+        int left = 1400;
+        int top = 900;
+        fill(luma, width, left, top, 25 * module, 25 * module, 255);
+        drawFinder(luma, width, left, top, module);
+        drawFinder(luma, width, left + 18 * module, top, module);
+        drawFinder(luma, width, left, top + 18 * module, module);
+
+        List<PyramidLocator.Region> regions = PyramidLocator.locate(luma, width, height, 3);
+
+        assertFalse(regions.isEmpty());
+        PyramidLocator.Region best = regions.get(0);
+        assertTrue(best.left <= left && best.top <= top);
+        assertTrue(best.left + best.size >= left + 25 * module);
+        assertTrue(best.top + best.size >= top + 25 * module);
+        assertTrue(best.size < Math.min(width, height) / 2);
+    }
+
+    @Test
+    public void emptyImageHasNoRegions() {
+        byte[] luma = new byte[640 * 480];
+        Arrays.fill(luma, (byte) 128);
+        assertTrue(PyramidLocator.locate(luma, 640, 480, 3).isEmpty());
+    }
+
+    @Test
+    public void finderRatioAcceptsScaledPattern() {
+        assertTrue(PyramidLocator.isFinderRatio(new int[] { 4, 4, 12, 4, 4 }));
+        assertTrue(PyramidLocator.isFinderRatio(new int[] { 3, 4, 11, 5, 4 }));
+        assertFalse(PyramidLocator.isFinderRatio(new int[] { 4, 4, 4, 4, 4 }));
+        assertFalse(PyramidLocator.isFinderRatio(new int[] { 0, 4, 12, 4, 4 }));
+    }
+}
@@ -0,0 +1,277 @@
+package com.bakai.plugin;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.PerspectiveTransform;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic QR images for the still-image ladder tests: payload sizes, error
+ * correction levels, rotation, perspective, blur, noise, low contrast, inversion and coloured
+ * branding. Images are ARGB pixel arrays so they can feed {@link LumaKernel} on a plain JVM.
+ */
+final class QrCorpus {
+
+    static final int MODULE_PX = 6;
+    static final int QUIET_MODULES = 4;
+    static final int BLACK = 0xff000000;
+    static final int WHITE = 0xffffffff;
+
+    static final class Case {
+
+        final String name;
+        final String payload;
+        final int width;
+        final int height;
+        final int[] argb;
+
+        Case(String name, String payload, int width, int height, int[] argb) {
+            this.name = name;
+            this.payload = payload;
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+        }
+    }
+
+    private QrCorpus() {}
+
+    static List<Case> build() {
+        List<Case> out = new ArrayList<>();
+
+        // payload size x error correction, clean
+        int[] sizes = { 12, 120, 600 };
+        for (int size : sizes) {
+            for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+                String payload = payload(size, size * 31 + level.ordinal());
+                out.add(clean("clean_" + size + "_" + level, payload, level));
+            }
+        }
+
+        final String text = payload(120, 1);
+        Case base = clean("base", text, ErrorCorrectionLevel.M);
+
+        out.add(warp("rotate_17", base, rotation(base, 17)));
+        out.add(warp("rotate_45", base, rotation(base, 45)));
+        out.add(warp("rotate_90", base, rotation(base, 90)));
+        out.add(warp("perspective_mild", base, keystone(base, 0.10f)));
+        out.add(warp("perspective_strong", base, keystone(base, 0.25f)));
+        out.add(map("blur_1", base, boxBlur(base, 1)));
+        out.add(map("blur_3", base, boxBlur(base, 3)));
+        out.add(map("noise_20", base, noise(base, 20, 11)));
+        out.add(map("noise_45", base, noise(base, 45, 12)));
+        out.add(map("contrast_40", base, remap(base, 0xff6e6e6e, 0xff969696)));
+        out.add(map("contrast_20", base, remap(base, 0xff787878, 0xff8c8c8c)));
+        out.add(map("inverted", base, remap(base, WHITE, BLACK)));
+
+        Case high = clean("base_h", text, ErrorCorrectionLevel.H);
+        out.add(map("brand_orange_on_blue", high, remap(high, 0xffe06020, 0xffb0d0f0)));
+        out.add(map("brand_red_on_green", high, remap(high, 0xffd03030, 0xff40a040)));
+        out.add(map("brand_logo", high, logo(high, 0.22f, 0xff1060c0)));
+
+        out.add(small("small_in_large", base, 2000, 3));
+        return out;
+    }
+
+    static String payload(int length, long seed) {
+        Random random = new Random(seed);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~:/?#@!$&()*+,;=";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    static Case clean(String name, String payload, ErrorCorrectionLevel level) {
+        BitMatrix matrix;
+        try {
+            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+            hints.put(EncodeHintType.ERROR_CORRECTION, level);
+            hints.put(EncodeHintType.MARGIN, 0);
+            matrix = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, 0, 0, hints);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        final int modules = matrix.getWidth();
+        final int side = (modules + 2 * QUIET_MODULES) * MODULE_PX;
+        int[] argb = new int[side * side];
+        for (int y = 0; y < side; y++) {
+            int my = y / MODULE_PX - QUIET_MODULES;
+            for (int x = 0; x < side; x++) {
+                int mx = x / MODULE_PX - QUIET_MODULES;
+                boolean dark = mx >= 0 && my >= 0 && mx < modules && my < modules && matrix.get(mx, my);
+                argb[y * side + x] = dark ? BLACK : WHITE;
+            }
+        }
+        return new Case(name, payload, side, side, argb);
+    }
+
+    // ===== Geometric transforms: inverse mapping from output to source pixels =====
+
+    private static Case warp(String name, Case src, PerspectiveTransform outToSrc) {
+        final int w = src.width;
+        final int h = src.height;
+        int[] out = new int[w * h];
+        float[] p = new float[2];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                p[0] = x + 0.5f;
+                p[1] = y + 0.5f;
+                outToSrc.transformPoints(p);
+                out[y * w + x] = sample(src, p[0] - 0.5f, p[1] - 0.5f);
+            }
+        }
+        return new Case(name, src.payload, w, h, out);
+    }
+
+    private static PerspectiveTransform rotation(Case src, double degrees) {
+        final double a = Math.toRadians(degrees);
+        final float cx = src.width / 2f;
+        final float cy = src.height / 2f;
+        // shrink so the rotated code stays inside the canvas
+        final float s = (float) (1.0 / (Math.abs(Math.cos(a)) + Math.abs(Math.sin(a))));
+        float[] q = new float[8];
+        float[][] corners = { { 0, 0 }, { src.width, 0 }, { src.width, src.height }, { 0, src.height } };
+        for (int i = 0; i < 4; i++) {
+            float dx = (corners[i][0] - cx) * s;
+            float dy = (corners[i][1] - cy) * s;
+            q[2 * i] = (float) (cx + dx * Math.cos(a) - dy * Math.sin(a));
+            q[2 * i + 1] = (float) (cy + dx * Math.sin(a) + dy * Math.cos(a));
+        }
+        return PerspectiveTransform.quadrilateralToQuadrilateral(q[0], q[1], q[2], q[3], q[4], q[5], q[6], q[7], 0, 0, src.width, 0, src.width, src.height, 0, src.height);
+    }
+
+    /** Top edge narrower than the bottom by {@code amount} of the width on each side, as if tilted away. */
+    private static PerspectiveTransform keystone(Case src, float amount) {
+        final float w = src.width;
+        final float h = src.height;
+        final float inset = w * amount;
+        final float margin = w * 0.04f;
+        return PerspectiveTransform.quadrilateralToQuadrilateral(
+            inset + margin, margin, w - inset - margin, margin, w - margin, h - margin, margin, h - margin,
+            0, 0, w, 0, w, h, 0, h
+        );
+    }
+
+    private static int sample(Case src, float fx, float fy) {
+        if (fx < 0 || fy < 0 || fx > src.width - 1 || fy > src.height - 1) return WHITE;
+        int x0 = (int) fx;
+        int y0 = (int) fy;
+        int x1 = Math.min(src.width - 1, x0 + 1);
+        int y1 = Math.min(src.height - 1, y0 + 1);
+        float ax = fx - x0;
+        float ay = fy - y0;
+        int c00 = src.argb[y0 * src.width + x0];
+        int c10 = src.argb[y0 * src.width + x1];
+        int c01 = src.argb[y1 * src.width + x0];
+        int c11 = src.argb[y1 * src.width + x1];
+        int out = 0xff000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            float top = ((c00 >> shift) & 0xff) * (1 - ax) + ((c10 >> shift) & 0xff) * ax;
+            float bottom = ((c01 >> shift) & 0xff) * (1 - ax) + ((c11 >> shift) & 0xff) * ax;
+            out |= Math.round(top * (1 - ay) + bottom * ay) << shift;
+        }
+        return out;
+    }
+
+    // ===== Photometric transforms =====
+
+    private static Case map(String name, Case src, int[] argb) {
+        return new Case(name, src.payload, src.width, src.height, argb);
+    }
+
+    /** Separable box blur of {@code radius} pixels. */
+    private static int[] boxBlur(Case src, int radius) {
+        final int w = src.width;
+        final int h = src.height;
+        int[] tmp = new int[w * h];
+        int[] out = new int[w * h];
+        for (int shift = 0; shift <= 16; shift += 8) {
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int sum = 0;
+                    int n = 0;
+                    for (int k = Math.max(0, x - radius); k <= Math.min(w - 1, x + radius); k++, n++) sum += (src.argb[y * w + k] >> shift) & 0xff;
+                    tmp[y * w + x] = sum / n;
+                }
+            }
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int sum = 0;
+                    int n = 0;
+                    for (int k = Math.max(0, y - radius); k <= Math.min(h - 1, y + radius); k++, n++) sum += tmp[k * w + x];
+                    out[y * w + x] |= (sum / n) << shift;
+                }
+            }
+        }
+        for (int i = 0; i < out.length; i++) out[i] |= 0xff000000;
+        return out;
+    }
+
+    /** Gaussian noise with standard deviation {@code sigma}, the same on all channels. */
+    private static int[] noise(Case src, int sigma, long seed) {
+        Random random = new Random(seed);
+        int[] out = new int[src.argb.length];
+        for (int i = 0; i < out.length; i++) {
+            int delta = (int) Math.round(random.nextGaussian() * sigma);
+            int c = src.argb[i];
+            int r = clamp(((c >> 16) & 0xff) + delta);
+            int g = clamp(((c >> 8) & 0xff) + delta);
+            int b = clamp((c & 0xff) + delta);
+            out[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+        return out;
+    }
+
+    /** Repaints black modules with {@code dark} and the background with {@code light}. */
+    private static int[] remap(Case src, int dark, int light) {
+        int[] out = new int[src.argb.length];
+        for (int i = 0; i < out.length; i++) out[i] = src.argb[i] == BLACK ? dark : light;
+        return out;
+    }
+
+    /** A solid logo over the centre covering {@code fraction} of each side; relies on H-level correction. */
+    private static int[] logo(Case src, float fraction, int color) {
+        int[] out = src.argb.clone();
+        final int size = Math.round(src.width * fraction);
+        final int left = (src.width - size) / 2;
+        final int top = (src.height - size) / 2;
+        for (int y = top; y < top + size; y++) {
+            for (int x = left; x < left + size; x++) out[y * src.width + x] = color;
+        }
+        return out;
+    }
+
+    /** The code shrunk by {@code factor} (box average) and placed off-centre on a large white canvas. */
+    private static Case small(String name, Case src, int canvas, int factor) {
+        int[] out = new int[canvas * canvas];
+        Arrays.fill(out, WHITE);
+        final int w = src.width / factor;
+        final int h = src.height / factor;
+        final int left = canvas / 5;
+        final int top = canvas * 3 / 5;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int sum = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    for (int dx = 0; dx < factor; dx++) sum += src.argb[(y * factor + dy) * src.width + x * factor + dx] & 0xff;
+                }
+                int v = sum / (factor * factor);
+                out[(top + y) * canvas + left + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return new Case(name, src.payload, canvas, canvas, out);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(255, v);
+    }
+}
@@ -0,0 +1,139 @@
+package com.bakai.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bytes per {@code barcodesScanned} event and mapping plus serialization time for a few
+ * {@code fields} selections. Not a unit test; run {@link #main} on a JVM, e.g. from the IDE.
+ *
+ * ML Kit barcodes and {@code JSObject} need a device, so a typical URL QR code is fed through
+ * {@link ResultFields#write}, the selection {@link BarcodeMapper} uses, into maps and lists, and
+ * serialized the way the bridge does, as one JSON string.
+ */
+public final class ResultFieldsBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int ROUNDS = 200_000;
+
+    private static final String URL = "https://logistics.example.com/track?id=" + QrCorpus.payload(80, 3);
+    private static final byte[] RAW_BYTES = new byte[URL.length() + 3];
+    private static final int[][] CORNERS = { { 212, 340 }, { 618, 352 }, { 606, 760 }, { 201, 748 } };
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        Arrays.fill(RAW_BYTES, (byte) 0x41);
+        String[][] selections = { null, { "rawValue" }, { "rawValue", "format", "cornerPoints" }, { "displayValue", "rawValue", "format", "valueType" } };
+
+        for (String[] selection : selections) {
+            final ResultFields fields = ResultFields.parse(selection != null ? Arrays.asList(selection) : null);
+            final int bytes = serialize(event(fields)).getBytes(StandardCharsets.UTF_8).length;
+
+            for (int i = 0; i < WARMUP; i++) sink += serialize(event(fields)).length();
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) sink += serialize(event(fields)).length();
+            double micros = (System.nanoTime() - start) / 1e3 / ROUNDS;
+
+            System.out.println(String.format(Locale.US, "%-44s %5d bytes/event %6.2f us/event", fields.key(), bytes, micros));
+        }
+    }
+
+    /** The event {@link BarcodeMapper} builds for one barcode. */
+    private static Map<String, Object> event(ResultFields fields) {
+        final Map<String, Object> o = new LinkedHashMap<>();
+        fields.write(URL_CODE, o::put);
+
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("barcodes", Arrays.asList(o));
+        return event;
+    }
+
+    private static final ResultFields.Source URL_CODE = new ResultFields.Source() {
+        @Override
+        public String displayValue() {
+            return URL;
+        }
+
+        @Override
+        public String rawValue() {
+            return URL;
+        }
+
+        @Override
+        public String format() {
+            return "QR_CODE";
+        }
+
+        @Override
+        public String valueType() {
+            return "URL";
+        }
+
+        @Override
+        public Object bytes() {
+            List<Object> bytes = new ArrayList<>(RAW_BYTES.length);
+            for (byte b : RAW_BYTES) bytes.add(b & 0xff);
+            return bytes;
+        }
+
+        @Override
+        public Object cornerPoints() {
+            List<Object> corners = new ArrayList<>(4);
+            for (int[] p : CORNERS) corners.add(Arrays.asList(p[0], p[1]));
+            return corners;
+        }
+
+        @Override
+        public int detailField() {
+            return ResultFields.URL_BOOKMARK;
+        }
+
+        @Override
+        public Object detail() {
+            Map<String, Object> url = new LinkedHashMap<>();
+            url.put("url", URL);
+            url.put("title", "");
+            return url;
+        }
+    };
+
+    private static String serialize(Object value) {
+        StringBuilder sb = new StringBuilder(256);
+        write(sb, value);
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(StringBuilder sb, Object value) {
+        if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                sb.append('"').append(e.getKey()).append("\":");
+                write(sb, e.getValue());
+            }
+            sb.append('}');
+        } else if (value instanceof List) {
+            sb.append('[');
+            List<Object> list = (List<Object>) value;
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) sb.append(',');
+                write(sb, list.get(i));
+            }
+            sb.append(']');
+        } else if (value instanceof String) {
+            // org.json escapes '/' as well
+            sb.append('"').append(((String) value).replace("/", "\\/")).append('"');
+        } else {
+            sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ResultFieldsTest {
+
+    @Test
+    public void noSelectionMeansEverything() {
+        assertSame(ResultFields.ALL, ResultFields.parse(null));
+        assertSame(ResultFields.ALL, ResultFields.parse(Arrays.asList(ResultFields.NAMES)));
+        assertEquals("all", ResultFields.ALL.key());
+    }
+
+    @Test
+    public void selectsOnlyTheNamedFields() {
+        ResultFields fields = ResultFields.parse(Arrays.asList("rawValue", "cornerPoints"));
+        assertTrue(fields.has(ResultFields.RAW_VALUE));
+        assertTrue(fields.has(ResultFields.CORNER_POINTS));
+        assertFalse(fields.has(ResultFields.DISPLAY_VALUE));
+        assertFalse(fields.has(ResultFields.BYTES));
+        assertFalse(fields.has(ResultFields.TYPE_DETAILS));
+        assertFalse(fields.isAll());
+    }
+
+    @Test
+    public void keyIsIndependentOfOrder() {
+        assertEquals(
+            ResultFields.parse(Arrays.asList("wifi", "rawValue", "rawValue")).key(),
+            ResultFields.parse(Arrays.asList("rawValue", "wifi")).key()
+        );
+        assertEquals("rawValue,wifi", ResultFields.parse(Arrays.asList("wifi", "rawValue")).key());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySelectionIsRejected() {
+        ResultFields.parse(Collections.emptyList());
+    }
+
+    @Test
+    public void writeEmitsOnlySelectedFieldsInEventOrder() {
+        final Map<String, Object> out = new LinkedHashMap<>();
+        ResultFields.parse(Arrays.asList("urlBookmark", "bytes", "rawValue", "wifi")).write(new Code(), out::put);
+        // no raw bytes: the key is left out rather than sent empty
+        assertEquals(Arrays.asList("rawValue", "urlBookmark"), new ArrayList<>(out.keySet()));
+
+        out.clear();
+        Code code = new Code();
+        ResultFields.parse(Arrays.asList("rawValue", "wifi")).write(code, out::put);
+        assertEquals(Arrays.asList("rawValue"), new ArrayList<>(out.keySet()));
+        assertEquals(Arrays.asList("rawValue", "detailField"), code.read);
+
+        out.clear();
+        ResultFields.ALL.write(new Code(), out::put);
+        assertEquals(Arrays.asList("displayValue", "rawValue", "format", "valueType", "cornerPoints", "urlBookmark"), new ArrayList<>(out.keySet()));
+    }
+
+    /** A URL code without raw bytes that records which getters were called. */
+    private static final class Code implements ResultFields.Source {
+
+        final List<String> read = new ArrayList<>();
+
+        @Override
+        public String displayValue() {
+            read.add("displayValue");
+            return "https://example.com";
+        }
+
+        @Override
+        public String rawValue() {
+            read.add("rawValue");
+            return "https://example.com";
+        }
+
+        @Override
+        public String format() {
+            read.add("format");
+            return "QR_CODE";
+        }
+
+        @Override
+        public String valueType() {
+            read.add("valueType");
+            return "URL";
+        }
+
+        @Override
+        public Object bytes() {
+            read.add("bytes");
+            return null;
+        }
+
+        @Override
+        public Object cornerPoints() {
+            read.add("cornerPoints");
+            return Arrays.asList(0, 0);
+        }
+
+        @Override
+        public int detailField() {
+            read.add("detailField");
+            return ResultFields.URL_BOOKMARK;
+        }
+
+        @Override
+        public Object detail() {
+            read.add("detail");
+            return "bookmark";
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFieldsAreRejected() {
+        ResultFields.parse(Arrays.asList("rawValue", "rawvalue"));
+    }
+}
@@ -0,0 +1,166 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanJournalTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+    private static final int QR = 256;
+    // header plus a 6-byte payload such as "code-1"
+    private static final int RECORD_BYTES = 28 + 6;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private File segment(long id) {
+        return new File(dir, String.format(Locale.US, "segment-%08d.qrj", id));
+    }
+
+    @Test
+    public void appendCountsEarlierOccurrences() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        assertEquals(0, journal.append(1L, QR, bytes("code-1")));
+        assertEquals(0, journal.append(2L, QR, bytes("code-2")));
+        assertEquals(1, journal.append(3L, QR, bytes("code-1")));
+        assertEquals(2, journal.countDuplicates(bytes("code-1")));
+        assertEquals(0, journal.countDuplicates(bytes("code-3")));
+        assertEquals(3L, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void queryFiltersByTimeAndPayloadInAppendOrder() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 10; i++) journal.append(i, QR, bytes("code-" + (i % 3)));
+
+        List<ScanJournal.Entry> window = journal.query(3L, 6L, null, 0);
+        assertEquals(4, window.size());
+        assertEquals(3L, window.get(0).timestampMs);
+        assertEquals("code-0", window.get(0).payloadAsString());
+
+        List<ScanJournal.Entry> same = journal.query(Long.MIN_VALUE, Long.MAX_VALUE, bytes("code-1"), 0);
+        assertEquals(3, same.size());
+        assertEquals(1L, same.get(0).timestampMs);
+        assertEquals(7L, same.get(2).timestampMs);
+        assertEquals(2, journal.query(Long.MIN_VALUE, Long.MAX_VALUE, bytes("code-1"), 2).size());
+        assertTrue(journal.query(Long.MIN_VALUE, Long.MAX_VALUE, bytes("nope"), 0).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void reopenRebuildsRecordsAndIndex() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 250; i++) journal.append(i, QR, bytes("code-" + (i % 5)));
+        journal.close();
+
+        ScanJournal reopened = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        assertEquals(250L, reopened.size());
+        assertEquals(50, reopened.countDuplicates(bytes("code-4")));
+        // appends continue after the last record
+        assertEquals(50, reopened.append(250L, QR, bytes("code-0")));
+        List<ScanJournal.Entry> all = reopened.query(Long.MIN_VALUE, Long.MAX_VALUE, null, 0);
+        assertEquals(251, all.size());
+        assertEquals(250L, all.get(250).timestampMs);
+        reopened.close();
+    }
+
+    @Test
+    public void rotationDropsTheOldestSegmentAndItsIndexEntries() throws Exception {
+        int perSegment = (SEGMENT_BYTES - 8) / RECORD_BYTES;
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 2);
+        // three segments' worth: the first one is dropped
+        int total = perSegment * 3;
+        for (int i = 0; i < total; i++) journal.append(i, QR, bytes(i < perSegment ? "first1" : "later1"));
+
+        assertEquals(total - perSegment, journal.size());
+        assertEquals(0, journal.countDuplicates(bytes("first1")));
+        assertEquals(total - perSegment, journal.countDuplicates(bytes("later1")));
+        List<ScanJournal.Entry> all = journal.query(Long.MIN_VALUE, Long.MAX_VALUE, null, 0);
+        assertEquals((long) perSegment, all.get(0).timestampMs);
+        assertFalse(segment(0).exists());
+        journal.close();
+    }
+
+    @Test
+    public void tornLastRecordIsSkippedAndOverwritten() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        journal.append(1L, QR, bytes("code-1"));
+        journal.append(2L, QR, bytes("code-2"));
+        journal.close();
+
+        // a third record whose length was written but whose payload length was not
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            int at = 4 + 2 * RECORD_BYTES;
+            file.seek(at);
+            file.write(new byte[] { RECORD_BYTES, 0, 0, 0 });
+        }
+
+        ScanJournal reopened = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        assertEquals(2L, reopened.size());
+        reopened.append(3L, QR, bytes("code-3"));
+        List<ScanJournal.Entry> all = reopened.query(Long.MIN_VALUE, Long.MAX_VALUE, null, 0);
+        assertEquals(3, all.size());
+        assertEquals("code-3", all.get(2).payloadAsString());
+        reopened.close();
+    }
+
+    @Test
+    public void truncatedSegmentKeepsTheRecordsBeforeTheCut() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        for (int i = 0; i < 5; i++) journal.append(i, QR, bytes("code-" + i));
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            file.setLength(4 + 3 * RECORD_BYTES + 10);
+        }
+
+        ScanJournal reopened = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        assertEquals(3L, reopened.size());
+        assertEquals(3, reopened.query(Long.MIN_VALUE, Long.MAX_VALUE, null, 0).size());
+        reopened.close();
+    }
+
+    @Test
+    public void exportWritesOneJsonObjectPerLine() throws Exception {
+        ScanJournal journal = new ScanJournal(dir, SEGMENT_BYTES, 4);
+        journal.append(5L, QR, bytes("a\"b"));
+        journal.append(6L, 1, bytes("c"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2L, journal.exportJsonLines(out, format -> format == QR ? "QR_CODE" : "UNKNOWN"));
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(
+            "{\"timestamp\":5,\"format\":\"QR_CODE\",\"payloadHash\":\"" + Long.toHexString(ScanJournal.hashPayload(bytes("a\"b"))) + "\",\"rawValue\":\"a\\\"b\"}",
+            lines[0]
+        );
+        assertTrue(lines[1].contains("\"format\":\"UNKNOWN\""));
+        journal.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class ScanTimelineTest {
+
+    private long now = 0L;
+
+    @Test
+    public void milestonesAreOffsetsFromBegin() {
+        ScanTimeline timeline = new ScanTimeline(() -> now);
+        now = 5_000_000L;
+        timeline.begin();
+
+        now = 17_000_000L;
+        assertTrue(timeline.mark(ScanTimeline.PROVIDER_READY));
+        now = 45_500_000L;
+        assertTrue(timeline.mark(ScanTimeline.USE_CASES_BOUND));
+
+        Map<String, Double> ms = timeline.toMillis();
+        assertEquals(12.0, ms.get(ScanTimeline.PROVIDER_READY), 1e-9);
+        assertEquals(40.5, ms.get(ScanTimeline.USE_CASES_BOUND), 1e-9);
+        assertFalse(ms.containsKey(ScanTimeline.FIRST_BARCODE));
+    }
+
+    @Test
+    public void eachMilestoneIsRecordedOnce() {
+        ScanTimeline timeline = new ScanTimeline(() -> now);
+        timeline.begin();
+
+        now = 10_000_000L;
+        assertTrue(timeline.mark(ScanTimeline.FIRST_ANALYZED_FRAME));
+        now = 90_000_000L;
+        assertFalse(timeline.mark(ScanTimeline.FIRST_ANALYZED_FRAME));
+        assertEquals(10.0, timeline.toMillis().get(ScanTimeline.FIRST_ANALYZED_FRAME), 1e-9);
+    }
+
+    @Test
+    public void nothingIsRecordedBeforeBeginAndBeginResets() {
+        ScanTimeline timeline = new ScanTimeline(() -> now);
+        assertFalse(timeline.mark(ScanTimeline.PROVIDER_READY));
+        assertFalse(timeline.isStarted());
+
+        timeline.begin();
+        timeline.mark(ScanTimeline.PROVIDER_READY);
+        timeline.begin();
+        assertTrue(timeline.toMillis().isEmpty());
+        assertTrue(timeline.mark(ScanTimeline.PROVIDER_READY));
+    }
+}
@@ -0,0 +1,74 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class SceneChangeDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    /** A desk-like scene: smooth gradient with a few dark objects, plus per-pixel sensor noise. */
+    private static byte[] scene(long noiseSeed, int brightness, int squareX) {
+        Random noise = new Random(noiseSeed);
+        byte[] plane = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = 60 + x / 8 + y / 12 + brightness + noise.nextInt(7) - 3;
+                if (x >= 100 && x < 180 && y >= 300 && y < 420) v -= 40;
+                if (squareX >= 0 && x >= squareX && x < squareX + 120 && y >= 160 && y < 280) v = 240;
+                plane[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return plane;
+    }
+
+    private static boolean update(SceneChangeDetector detector, byte[] plane) {
+        return detector.update(ByteBuffer.wrap(plane), WIDTH, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void staticSceneWithSensorNoiseIsNotAChange() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        assertTrue(update(detector, scene(1, 0, -1)));
+        for (int i = 2; i < 30; i++) assertFalse(update(detector, scene(i, 0, -1)));
+        assertEquals(1L, detector.changes());
+        assertEquals(29L, detector.frames());
+    }
+
+    @Test
+    public void exposureShiftIsNotAChange() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        update(detector, scene(1, 0, -1));
+        assertFalse(update(detector, scene(2, 25, -1)));
+    }
+
+    @Test
+    public void objectEnteringOrMovingIsAChange() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        update(detector, scene(1, 0, -1));
+        assertTrue(update(detector, scene(2, 0, 400)));
+        assertFalse(update(detector, scene(3, 0, 400)));
+        // a small shift of the held code still counts
+        assertTrue(update(detector, scene(4, 0, 360)));
+    }
+
+    @Test
+    public void rowPaddingIsIgnoredAndSizeChangeIsAChange() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        byte[] plane = scene(1, 0, -1);
+        update(detector, plane);
+
+        int stride = WIDTH + 64;
+        byte[] padded = new byte[stride * HEIGHT];
+        Arrays.fill(padded, (byte) 255);
+        for (int y = 0; y < HEIGHT; y++) System.arraycopy(plane, y * WIDTH, padded, y * stride, WIDTH);
+        assertFalse(detector.update(ByteBuffer.wrap(padded), stride, WIDTH, HEIGHT));
+
+        assertTrue(detector.update(ByteBuffer.wrap(plane), HEIGHT, HEIGHT, WIDTH));
+    }
+}
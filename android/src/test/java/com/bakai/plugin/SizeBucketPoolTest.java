@@ -0,0 +1,76 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class SizeBucketPoolTest {
+
+    @Test
+    public void bucketCapacityCoversRequestWithBoundedWaste() {
+        for (long bytes = 5; bytes < 1_000_000; bytes = bytes * 3 / 2 + 1) {
+            long capacity = SizeBucketPool.bucketCapacity(SizeBucketPool.bucketFor(bytes));
+            assertTrue(capacity >= bytes);
+            assertTrue(capacity <= bytes * 5 / 4 + 1);
+        }
+        assertEquals(640L, SizeBucketPool.bucketCapacity(SizeBucketPool.bucketFor(640L)));
+        assertEquals(768L, SizeBucketPool.bucketCapacity(SizeBucketPool.bucketFor(641L)));
+    }
+
+    @Test
+    public void returnedObjectIsReusedAndCounted() {
+        SizeBucketPool pool = new SizeBucketPool(10_000, (kind, value) -> {});
+        Object buffer = new Object();
+
+        assertNull(pool.take(0, 1000));
+        pool.give(0, buffer, 1000);
+        assertSame(buffer, pool.take(0, 900));
+        assertNull(pool.take(0, 900));
+
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void kindsAndTooSmallEntriesAreNotMixed() {
+        SizeBucketPool pool = new SizeBucketPool(10_000, (kind, value) -> {});
+        pool.give(1, new int[10], 1000);
+        assertNull(pool.take(0, 1000));
+
+        // same bucket as 1000 but smaller than requested
+        pool.give(0, new Object(), 900);
+        assertNull(pool.take(0, 1000));
+        // the next bucket always fits
+        Object larger = new Object();
+        pool.give(0, larger, 1200);
+        assertSame(larger, pool.take(0, 1000));
+    }
+
+    @Test
+    public void budgetEvictsOldestFirst() {
+        final List<Object> evicted = new ArrayList<>();
+        SizeBucketPool pool = new SizeBucketPool(2500, (kind, value) -> evicted.add(value));
+        Object a = new Object();
+        Object b = new Object();
+        Object c = new Object();
+
+        pool.give(0, a, 1000);
+        pool.give(0, b, 1000);
+        pool.give(0, c, 1000);
+
+        assertEquals(1, evicted.size());
+        assertSame(a, evicted.get(0));
+        assertEquals(2000, pool.getIdleBytes());
+        assertEquals(1, pool.getEvictions());
+
+        pool.give(0, new Object(), 5000);
+        assertEquals(2, evicted.size());
+
+        pool.clear();
+        assertEquals(4, evicted.size());
+        assertEquals(0, pool.getIdleBytes());
+    }
+}
@@ -0,0 +1,89 @@
+package com.bakai.plugin;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class StructuredAppendBufferTest {
+
+    private static final String[] PARTS = { "LOT-2041;", "PALLET-17;", "DEST-KZ-ALA" };
+    private static final int PARITY = StructuredAppendBuffer.parityOf(String.join("", PARTS).getBytes(StandardCharsets.ISO_8859_1));
+
+    /** Data codewords as a QR encoder writes them: the header, then a byte-mode segment. */
+    private static byte[] raw(int index, int total, int parity) {
+        return new byte[] { (byte) (0x30 | index), (byte) (((total - 1) << 4) | (parity >> 4)), (byte) (((parity & 0x0f) << 4) | 0x4), 0x0b };
+    }
+
+    private static StructuredAppendBuffer.Header header(int index) {
+        return StructuredAppendBuffer.parse(raw(index, PARTS.length, PARITY));
+    }
+
+    @Test
+    public void parsesTheHeader() {
+        StructuredAppendBuffer.Header header = StructuredAppendBuffer.parse(raw(2, 5, 0xa7));
+        assertEquals(2, header.index);
+        assertEquals(5, header.total);
+        assertEquals(0xa7, header.parity);
+    }
+
+    @Test
+    public void ordinaryCodesHaveNoHeader() {
+        // byte mode
+        assertNull(StructuredAppendBuffer.parse(new byte[] { 0x40, 0x56, 0x16 }));
+        assertNull(StructuredAppendBuffer.parse(new byte[] { 0x30 }));
+        assertNull(StructuredAppendBuffer.parse(null));
+        // index out of range
+        assertNull(StructuredAppendBuffer.parse(raw(3, 3, 0)));
+    }
+
+    @Test
+    public void partsInAnyOrderAndRepeatedCompleteOnce() {
+        StructuredAppendBuffer buffer = new StructuredAppendBuffer(1000L);
+        assertNull(buffer.offer(header(2), PARTS[2], 0L));
+        assertNull(buffer.offer(header(0), PARTS[0], 10L));
+        assertNull(buffer.offer(header(0), PARTS[0], 20L));
+        assertEquals(1, buffer.pendingSets());
+
+        StructuredAppendBuffer.Completed completed = buffer.offer(header(1), PARTS[1], 30L);
+        assertEquals(String.join("", PARTS), completed.payload);
+        assertEquals(PARTS.length, completed.total);
+        assertTrue(completed.parityMatches);
+        assertEquals(0, buffer.pendingSets());
+        assertEquals(1L, buffer.completedSets());
+    }
+
+    @Test
+    public void wrongParityIsReported() {
+        StructuredAppendBuffer buffer = new StructuredAppendBuffer(1000L);
+        buffer.offer(StructuredAppendBuffer.parse(raw(0, 2, PARITY ^ 0x01)), "A", 0L);
+        assertFalse(buffer.offer(StructuredAppendBuffer.parse(raw(1, 2, PARITY ^ 0x01)), "B", 0L).parityMatches);
+    }
+
+    @Test
+    public void staleSetsTimeOut() {
+        StructuredAppendBuffer buffer = new StructuredAppendBuffer(1000L);
+        buffer.offer(header(0), PARTS[0], 0L);
+        buffer.offer(header(1), PARTS[1], 500L);
+        // the timeout counts from the last part seen
+        buffer.expire(1400L);
+        assertEquals(1, buffer.pendingSets());
+
+        assertNull(buffer.offer(header(2), PARTS[2], 1500L));
+        assertEquals(1L, buffer.expiredSets());
+    }
+
+    @Test
+    public void setCountIsBounded() {
+        StructuredAppendBuffer buffer = new StructuredAppendBuffer(60_000L);
+        for (int parity = 0; parity < StructuredAppendBuffer.MAX_SETS + 2; parity++) {
+            buffer.offer(StructuredAppendBuffer.parse(raw(0, 2, parity)), "x", parity);
+        }
+        assertEquals(StructuredAppendBuffer.MAX_SETS, buffer.pendingSets());
+        assertEquals(2L, buffer.expiredSets());
+
+        // the least recently seen sets went first
+        assertNull(buffer.offer(StructuredAppendBuffer.parse(raw(1, 2, 0)), "y", 100L));
+        assertNotNull(buffer.offer(StructuredAppendBuffer.parse(raw(1, 2, StructuredAppendBuffer.MAX_SETS + 1)), "y", 100L));
+    }
+}
@@ -1,12 +1,61 @@
 import type { PermissionState, PluginListenerHandle } from '@capacitor/core';
 
 export interface QrCodeScannerPlugin {
+  /**
+   * Android only. Requests the camera provider, starts the analysis thread and loads the detector
+   * model, so a following `startScan` only has to bind the camera. Set the `prepareOnLoad` plugin
+   * config key to do this when the plugin loads.
+   */
+  prepare(options?: PrepareOptions): Promise<PrepareResult>;
   startScan(options?: StartScanOptions): Promise<void>;
   stopScan(): Promise<void>;
   pauseScan(): Promise<void>;
   resumeScan(): Promise<void>;
 
   readBarcodesFromImage(options: ReadBarcodesFromImageOptions): Promise<ReadBarcodesFromImageResult>;
+  /**
+   * Android only. Cancels a running `readBarcodesFromImage` or `readBarcodesFromPdf` started with
+   * the same `requestId`, or all running ones when no id is given.
+   */
+  cancelReadBarcodes(options?: CancelReadBarcodesOptions): Promise<CancelReadBarcodesResult>;
+
+  /**
+   * Android only. Pages are rendered and decoded one after another; each finished page is
+   * also reported through the `pdfPageScanned` event.
+   */
+  readBarcodesFromPdf(options: ReadBarcodesFromPdfOptions): Promise<ReadBarcodesFromPdfResult>;
+
+  /**
+   * Android only.
+   */
+  queryScanJournal(options?: QueryScanJournalOptions): Promise<QueryScanJournalResult>;
+  /**
+   * Android only. Writes the journal as JSON lines.
+   */
+  exportScanJournal(options?: ExportScanJournalOptions): Promise<ExportScanJournalResult>;
+  /**
+   * Android only. Reuse counters of the bitmap pool shared by still-image and PDF reads.
+   * The budget comes from the `imagePoolMegabytes` plugin config key.
+   */
+  getImagePoolStats(): Promise<ImagePoolStats>;
+  /**
+   * Android only. Result-handling counters of the running camera scan; rejects when no scan is running.
+   */
+  getScanStats(): Promise<ScanStats>;
+  /**
+   * Android only. Acknowledges `barcodesScanned` events up to `eventId` (all when omitted) when the
+   * scan was started with `maxUnacknowledged`; rejects when no scan is running.
+   */
+  ackBarcodes(options?: AckBarcodesOptions): Promise<AckBarcodesResult>;
+  /**
+   * Android only. Records the luma plane of every analysis frame of the running scan, with its
+   * timestamp, rotation and zoom, to a file in the app's files directory for offline replay.
+   */
+  startFrameRecording(options?: StartFrameRecordingOptions): Promise<StartFrameRecordingResult>;
+  /**
+   * Android only. Finishes the recording started by `startFrameRecording`.
+   */
+  stopFrameRecording(): Promise<StopFrameRecordingResult>;
 
   scan(options?: ScanOptions): Promise<ScanResult>;
 
@@ -38,6 +87,33 @@ export interface QrCodeScannerPlugin {
 
   addListener(eventName: 'scanError', listenerFunc: (event: ScanErrorEvent) => void): Promise<PluginListenerHandle>;
 
+  addListener(
+    eventName: 'pdfPageScanned',
+    listenerFunc: (event: PdfPageScannedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Android only. Fired once the camera is bound with `scanProfile: true`.
+   */
+  addListener(
+    eventName: 'scanProfileApplied',
+    listenerFunc: (event: ScanProfileAppliedEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Android only. Fired once per `startScan`, when the first barcode is emitted.
+   */
+  addListener(eventName: 'scanTimeline', listenerFunc: (event: ScanTimelineEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Android only. Fired when every part of a structured-append set has been read, across frames
+   * and images, with `structuredAppend: true`.
+   */
+  addListener(
+    eventName: 'structuredAppendComplete',
+    listenerFunc: (event: StructuredAppendCompleteEvent) => void,
+  ): Promise<PluginListenerHandle>;
+
   addListener(
     eventName: 'googleBarcodeScannerModuleInstallProgress',
     listenerFunc: (event: GoogleBarcodeScannerModuleInstallProgressEvent) => void,
@@ -49,17 +125,225 @@ export interface QrCodeScannerPlugin {
 /**
  * Options
  */
+export interface PrepareOptions {
+  /**
+   * Warm up again after every `stopScan`, so each scan opens warm. Default true.
+   */
+  keepWarm?: boolean;
+}
+
+export interface PrepareResult {
+  /**
+   * Time the warm-up took, in milliseconds.
+   */
+  warmupMs: number;
+}
+
 export interface StartScanOptions {
   formats?: BarcodeFormat[];
   lensFacing?: LensFacing;
   resolution?: Resolution;
   enableMultitaskingCameraAccess?: boolean;
   videoElement?: HTMLVideoElement;
+  /**
+   * Append every emitted barcode to the native scan journal (Android only).
+   */
+  journal?: boolean;
+  /**
+   * Look for codes on a downscaled frame and decode only the matching full-resolution crop,
+   * with a full-frame pass every few frames. Default true (Android only).
+   */
+  twoStage?: boolean;
+  /**
+   * Tune the camera for scanning instead of photos: fixed 30 fps, barcode scene mode, continuous AF,
+   * fast noise reduction and edge enhancement, no video stabilization. Only settings the camera
+   * supports are used; see the `scanProfileApplied` event. Default false (Android only).
+   */
+  scanProfile?: boolean;
+  /**
+   * Frames that may be in the detector at once, 1 to 3. Each frame slot has its own detector
+   * instance, so frames are decoded in parallel and analyzed `depth` times as often. That costs
+   * memory, CPU and battery. Results of frames overtaken by a newer answer are dropped.
+   * Default 1 (Android only).
+   */
+  pipelineDepth?: number;
+  /**
+   * Flow control: at most this many `barcodesScanned` events may wait for `ackBarcodes`. While the
+   * limit is reached only the latest result is kept, and it is sent with the next ack. Default 0,
+   * off (Android only).
+   */
+  maxUnacknowledged?: number;
+  /**
+   * What the analyzer does while `maxUnacknowledged` is reached: `stop` decoding until an ack, or
+   * keep decoding at a `slow` rate of about two frames per second. Default `stop` (Android only).
+   */
+  whenUnacknowledged?: 'stop' | 'slow';
+  /**
+   * Collect the parts of structured-append (multi-symbol) QR codes natively instead of sending each
+   * one; a `structuredAppendComplete` event carries the joined payload. Sets not completed within
+   * the `structuredAppendTimeoutMs` plugin config (default 30000) are dropped. Default false (Android only).
+   */
+  structuredAppend?: boolean;
+  /**
+   * Barcode keys to include in `barcodesScanned` events; the others are never computed or sent,
+   * even though the `Barcode` type lists them. Omit for all; an empty list is rejected (Android only).
+   */
+  fields?: BarcodeField[];
+  /**
+   * Only emit codes whose raw value is a well-formed EMV merchant-presented payment payload with
+   * a matching CRC; other reads are dropped and scanning continues. Kept codes carry the parsed
+   * payload in `emv` (Android only).
+   */
+  payloadFormat?: 'emv';
+  /**
+   * Compare each frame with the previous one and, once the scene has not changed for 1.5 s,
+   * analyze only one frame per second until something moves again. Meant for always-on kiosks.
+   * Default false (Android only).
+   */
+  idleWhenStatic?: boolean;
+}
+
+export type BarcodeField =
+  | 'displayValue'
+  | 'rawValue'
+  | 'format'
+  | 'valueType'
+  | 'bytes'
+  | 'cornerPoints'
+  | 'urlBookmark'
+  | 'wifi'
+  | 'email'
+  | 'phone'
+  | 'geoPoint'
+  | 'sms';
+
+export interface AckBarcodesOptions {
+  /**
+   * The `eventId` of the last event handled; earlier events are acknowledged with it.
+   */
+  eventId?: number;
+}
+
+export interface AckBarcodesResult {
+  unacknowledged: number;
 }
 
 export interface ReadBarcodesFromImageOptions {
   formats?: BarcodeFormat[];
   path: string;
+  /**
+   * Append decoded barcodes to the native scan journal (Android only).
+   */
+  journal?: boolean;
+  /**
+   * Collect structured-append parts in the buffer shared with `startScan`. Parts are still
+   * returned; a set completed by this image is also in `structuredAppend` (Android only).
+   */
+  structuredAppend?: boolean;
+  /**
+   * Barcode keys to include in the result, as for `startScan` (Android only).
+   */
+  fields?: BarcodeField[];
+  /**
+   * Only return EMV payment payloads with a matching CRC, as for `startScan` (Android only).
+   */
+  payloadFormat?: 'emv';
+  /**
+   * Decode the image in overlapping full-resolution tiles and return every code found,
+   * instead of downscaling it first. Meant for very large scans holding many small codes (Android only).
+   */
+  tiled?: boolean;
+  /**
+   * Tile edge in pixels for `tiled` mode. Default 1536.
+   */
+  tileSize?: number;
+  /**
+   * Try preprocessing variants in the order that has worked best on this device, skipping ones that
+   * rarely succeed. Default true (Android only).
+   */
+  adaptiveOrder?: boolean;
+  /**
+   * Result cache for repeated reads of the same image. `disk` also keeps results across app restarts.
+   * Default `memory` (Android only).
+   */
+  cache?: 'memory' | 'disk' | 'none';
+  /**
+   * Give up after this many milliseconds and resolve with what was found so far (Android only).
+   */
+  timeoutMs?: number;
+  /**
+   * Caller-chosen id used by `cancelReadBarcodes` (Android only).
+   */
+  requestId?: string;
+  /**
+   * Order among requests waiting for a decoder thread. Pool size and queueing come from the
+   * `imageThreads`, `imageQueuePolicy` (`queue` | `reject`) and `imageQueueCapacity` plugin config
+   * keys. Default `normal` (Android only).
+   */
+  priority?: ImageWorkPriority;
+}
+
+export type ImageWorkPriority = 'low' | 'normal' | 'high';
+
+export interface CancelReadBarcodesOptions {
+  requestId?: string;
+}
+
+export interface ReadBarcodesFromPdfOptions {
+  path: string;
+  /**
+   * Zero-based page indexes. All pages when omitted.
+   */
+  pages?: number[];
+  /**
+   * Render resolution. Default 200.
+   */
+  dpi?: number;
+  /**
+   * Append decoded barcodes to the native scan journal.
+   */
+  journal?: boolean;
+  /**
+   * Stop after this many milliseconds; the pages being read finish and the call resolves with the
+   * pages read so far.
+   */
+  timeoutMs?: number;
+  /**
+   * Caller-chosen id used by `cancelReadBarcodes`.
+   */
+  requestId?: string;
+  /**
+   * See `ReadBarcodesFromImageOptions.priority`.
+   */
+  priority?: ImageWorkPriority;
+}
+
+export interface QueryScanJournalOptions {
+  /**
+   * Epoch milliseconds, inclusive.
+   */
+  since?: number;
+  /**
+   * Epoch milliseconds, inclusive.
+   */
+  until?: number;
+  /**
+   * Only return entries with this payload (uses the payload-hash index).
+   */
+  rawValue?: string;
+  /**
+   * Default 100, 0 for no limit.
+   */
+  limit?: number;
+}
+
+export interface ExportScanJournalOptions {
+  /**
+   * Target: a file inside the app's files or cache directories, or a writable `content://` URI
+   * (e.g. from a document picker). Other paths are rejected. Defaults to a new file in the cache
+   * directory.
+   */
+  path?: string;
 }
 
 export interface ScanOptions {
@@ -72,12 +356,155 @@ export interface ScanOptions {
  */
 export interface ReadBarcodesFromImageResult {
   barcodes: Barcode[];
+  /**
+   * Set when the result came from the result cache.
+   */
+  cached?: boolean;
+  /**
+   * False when the decode was cut short by `timeoutMs` or `cancelReadBarcodes`.
+   */
+  completed?: boolean;
+  reason?: 'timeout' | 'cancelled';
+  structuredAppend?: StructuredAppendCompleteEvent;
+}
+
+export interface CancelReadBarcodesResult {
+  cancelled: boolean;
 }
 
 export interface ScanResult {
   barcodes: Barcode[];
 }
 
+export interface ReadBarcodesFromPdfResult {
+  pageCount: number;
+  /**
+   * Pages on which at least one barcode was found, or that failed with an `error`.
+   */
+  pages: PdfPageScannedEvent[];
+  /**
+   * False when reading was cut short by `timeoutMs` or `cancelReadBarcodes`.
+   */
+  completed?: boolean;
+  reason?: 'timeout' | 'cancelled';
+}
+
+export interface ScanJournalEntry {
+  timestamp: number;
+  format: BarcodeFormat;
+  rawValue: string;
+  payloadHash: string;
+}
+
+export interface QueryScanJournalResult {
+  entries: ScanJournalEntry[];
+  total: number;
+  /**
+   * How many times `rawValue` was journaled, when it was given.
+   */
+  occurrences?: number;
+}
+
+export interface ExportScanJournalResult {
+  path: string;
+  count: number;
+}
+
+export interface ImagePoolStats {
+  hits: number;
+  misses: number;
+  evictions: number;
+  /**
+   * Bytes currently held by idle pooled bitmaps and buffers.
+   */
+  pooledBytes: number;
+  budgetBytes: number;
+  /**
+   * Bytes all concurrent `readBarcodesFromImage` calls may hold at once, from the heap size and
+   * memory class, or the `imageMemoryMegabytes` plugin config key.
+   */
+  memoryBudgetBytes: number;
+  memoryReservedBytes: number;
+  /**
+   * Calls that ran with only the gray and inverted planes to stay within the budget.
+   */
+  lumaOnlyDecodes: number;
+  /**
+   * Calls that decoded at a smaller working size than usual to stay within the budget.
+   */
+  reducedDecodes: number;
+}
+
+export interface ScanStats {
+  /**
+   * Detector results handled since the scan started.
+   */
+  resultTasks: number;
+  /**
+   * Time spent handling results (filtering, frame release, event delivery) on the analysis
+   * thread, which the main thread no longer spends.
+   */
+  resultHandlingMs: number;
+  averageResultMs: number;
+  /**
+   * Results dropped because a newer frame had already been delivered.
+   */
+  staleResultsDiscarded: number;
+  pipelineDepth: number;
+  unacknowledgedEvents: number;
+  /**
+   * Frames not analyzed because `maxUnacknowledged` was reached in `stop` mode.
+   */
+  framesSkippedUnacknowledged: number;
+  /**
+   * Results replaced by a newer one while waiting for an ack.
+   */
+  resultsCoalesced: number;
+  /**
+   * Reads dropped by `payloadFormat` because they were not a valid payment payload.
+   */
+  paymentPayloadsRejected: number;
+  /**
+   * Whether `idleWhenStatic` currently has the analyzer at the idle rate.
+   */
+  sceneIdle: boolean;
+  sceneChanges: number;
+  /**
+   * Frames not analyzed because the scene was static.
+   */
+  framesSkippedIdle: number;
+}
+
+export interface StartFrameRecordingOptions {
+  /**
+   * File name without extension. Default `frames-<timestamp>`.
+   */
+  name?: string;
+  /**
+   * Keep only the centered part of each frame, as a fraction of each side (0.1 to 1). Default 1.
+   */
+  cropFraction?: number;
+  /**
+   * Stop recording after this many frames; 0 records until `stopFrameRecording`. Default 0.
+   */
+  maxFrames?: number;
+}
+
+export interface StartFrameRecordingResult {
+  path: string;
+}
+
+export interface StopFrameRecordingResult {
+  path: string;
+  frames: number;
+  /**
+   * Frames skipped because the writer fell behind the camera.
+   */
+  droppedFrames: number;
+  bytes: number;
+  error?: string;
+}
+
 export interface IsSupportedResult {
   supported: boolean;
 }
@@ -124,17 +551,84 @@ export interface PermissionStatus {
  */
 export interface BarcodesScannedEvent {
   barcodes: Barcode[];
+  /**
+   * Set when the scan uses `maxUnacknowledged`; pass it to `ackBarcodes`.
+   */
+  eventId?: number;
+}
+
+export interface StructuredAppendCompleteEvent {
+  payload: string;
+  /**
+   * Number of symbols the payload was split over.
+   */
+  parts: number;
+  parity: number;
+  /**
+   * Whether the payload's XOR checksum matches the parity the symbols carry.
+   */
+  parityMatches: boolean;
 }
 
 export interface ScanErrorEvent {
   message: string;
 }
 
+/**
+ * Settings the camera accepted; unsupported ones are absent.
+ */
+export interface ScanProfileAppliedEvent {
+  fpsRange?: string;
+  sceneMode?: 'barcode';
+  afMode?: 'continuous-picture' | 'continuous-video';
+  noiseReduction?: 'fast';
+  edgeMode?: 'fast';
+  videoStabilization?: 'off';
+}
+
+/**
+ * Milliseconds from `startScan` to each startup milestone, from a monotonic clock. The same
+ * milestones are recorded as `QrScan.<milestone>` async trace sections (Android 10+), so they line
+ * up with Perfetto captures.
+ */
+export interface ScanTimelineEvent {
+  providerReady?: number;
+  useCasesBound?: number;
+  firstPreviewFrame?: number;
+  firstAnalyzedFrame?: number;
+  firstDetectorResult?: number;
+  firstBarcode: number;
+  /**
+   * The scan used a scanner warmed up by `prepare()`.
+   */
+  warm: boolean;
+  scanProfile: boolean;
+  twoStage: boolean;
+  pipelineDepth: number;
+}
+
+export interface PdfPageScannedEvent {
+  /**
+   * Zero-based page index.
+   */
+  page: number;
+  pageCount: number;
+  barcodes: Barcode[];
+  /**
+   * Set when the page could not be rendered or decoded; `barcodes` is then empty.
+   */
+  error?: string;
+}
+
 export interface GoogleBarcodeScannerModuleInstallProgressEvent {
   state: GoogleBarcodeScannerModuleInstallState;
   progress?: number;
 }
 
+export interface BarcodeEmvPayload {
+  [id: string]: string | { [id: string]: string };
+}
+
 /**
  * Barcode model
  */
@@ -150,6 +644,11 @@ export interface Barcode {
 
   driverLicense?: BarcodeDriverLicense;
   email?: BarcodeEmail;
+  /**
+   * Parsed EMV payload when `payloadFormat: 'emv'` was requested: two-digit id to value,
+   * templates (ids 26-51, 62, 64, 80-99) as nested objects (Android only).
+   */
+  emv?: BarcodeEmvPayload;
 
   format: BarcodeFormat;
 
@@ -5,6 +5,23 @@ import type {
   PermissionStatus,
   ReadBarcodesFromImageOptions,
   ReadBarcodesFromImageResult,
+  CancelReadBarcodesOptions,
+  CancelReadBarcodesResult,
+  ReadBarcodesFromPdfOptions,
+  ReadBarcodesFromPdfResult,
+  ImagePoolStats,
+  ScanStats,
+  AckBarcodesOptions,
+  AckBarcodesResult,
+  StartFrameRecordingOptions,
+  StartFrameRecordingResult,
+  StopFrameRecordingResult,
+  PrepareOptions,
+  PrepareResult,
+  QueryScanJournalOptions,
+  QueryScanJournalResult,
+  ExportScanJournalOptions,
+  ExportScanJournalResult,
   ScanOptions,
   ScanResult,
   IsSupportedResult,
@@ -19,6 +36,10 @@ import type {
 } from './definitions';
 
 export class QrCodeScannerWeb extends WebPlugin implements QrCodeScannerPlugin {
+  async prepare(_options?: PrepareOptions): Promise<PrepareResult> {
+    throw this.unavailable('prepare not supported on web');
+  }
+
   async startScan(_options?: StartScanOptions): Promise<void> {
     throw this.unavailable('Camera preview not available on web');
   }
@@ -39,6 +60,42 @@ export class QrCodeScannerWeb extends WebPlugin implements QrCodeScannerPlugin {
     throw this.unavailable('readBarcodesFromImage not supported on web');
   }
 
+  async cancelReadBarcodes(_options?: CancelReadBarcodesOptions): Promise<CancelReadBarcodesResult> {
+    return { cancelled: false };
+  }
+
+  async readBarcodesFromPdf(_options: ReadBarcodesFromPdfOptions): Promise<ReadBarcodesFromPdfResult> {
+    throw this.unavailable('readBarcodesFromPdf not supported on web');
+  }
+
+  async queryScanJournal(_options?: QueryScanJournalOptions): Promise<QueryScanJournalResult> {
+    throw this.unavailable('queryScanJournal not supported on web');
+  }
+
+  async exportScanJournal(_options?: ExportScanJournalOptions): Promise<ExportScanJournalResult> {
+    throw this.unavailable('exportScanJournal not supported on web');
+  }
+
+  async getImagePoolStats(): Promise<ImagePoolStats> {
+    throw this.unavailable('getImagePoolStats not supported on web');
+  }
+
+  async getScanStats(): Promise<ScanStats> {
+    throw this.unavailable('getScanStats not supported on web');
+  }
+
+  async ackBarcodes(_options?: AckBarcodesOptions): Promise<AckBarcodesResult> {
+    throw this.unavailable('ackBarcodes not supported on web');
+  }
+
+  async startFrameRecording(_options?: StartFrameRecordingOptions): Promise<StartFrameRecordingResult> {
+    throw this.unavailable('startFrameRecording not supported on web');
+  }
+
+  async stopFrameRecording(): Promise<StopFrameRecordingResult> {
+    throw this.unavailable('stopFrameRecording not supported on web');
+  }
+
   async scan(_options?: ScanOptions): Promise<ScanResult> {
     throw this.unavailable('scan not supported on web');
   }